@@ -47,4 +47,12 @@ public interface AccessSdk {
      * @return an instance of BluetoothCommunicationManager
      */
     CommandFactory commandFactory();
+
+    /**
+     * Releases the threads held by this sdk instance.
+     * <p>
+     * Resources are acquired again if the sdk is used after shutdown.
+     */
+    default void shutdown() {
+    }
 }
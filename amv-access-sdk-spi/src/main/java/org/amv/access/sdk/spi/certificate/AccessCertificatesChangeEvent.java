@@ -0,0 +1,39 @@
+package org.amv.access.sdk.spi.certificate;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An interface representing a change of the locally stored access certificates.
+ * <p>
+ * The first event emitted to a subscriber is the initial event containing all stored
+ * access certificates as added. Subsequent events only contain the changes.
+ */
+public interface AccessCertificatesChangeEvent {
+
+    /**
+     * @return true if this event is the initial snapshot of all stored access certificates
+     */
+    boolean isInitial();
+
+    /**
+     * @return access certificates stored with an id not present before
+     */
+    List<AccessCertificatePair> getAddedAccessCertificates();
+
+    /**
+     * @return access certificates that replaced a stored access certificate with the same id
+     */
+    List<AccessCertificatePair> getUpdatedAccessCertificates();
+
+    /**
+     * @return ids of removed access certificates
+     */
+    Set<String> getRemovedAccessCertificateIds();
+
+    default boolean isEmpty() {
+        return getAddedAccessCertificates().isEmpty()
+                && getUpdatedAccessCertificates().isEmpty()
+                && getRemovedAccessCertificateIds().isEmpty();
+    }
+}
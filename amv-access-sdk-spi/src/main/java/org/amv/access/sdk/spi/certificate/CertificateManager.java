@@ -3,6 +3,9 @@ package org.amv.access.sdk.spi.certificate;
 
 import com.google.common.base.Optional;
 
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
 import io.reactivex.Observable;
 
 public interface CertificateManager {
@@ -27,6 +30,41 @@ public interface CertificateManager {
      */
     Observable<Optional<AccessCertificatePair>> getAccessCertificateById(String id);
 
+    /**
+     * Retrieve all locally stored access certificates granting access to the given vehicle.
+     *
+     * @return an observable emitting all access certificates for the vehicle
+     */
+    default Observable<AccessCertificatePair> getAccessCertificatesForVehicle(SerialNumber vehicleSerial) {
+        String vehicleSerialHex = vehicleSerial.getSerialNumberHex();
+
+        return getAccessCertificates()
+                .filter(pair -> vehicleSerialHex.equalsIgnoreCase(pair.getDeviceAccessCertificate()
+                        .getGainerSerial()
+                        .getSerialNumberHex()));
+    }
+
+    /**
+     * Observe the locally stored access certificates.
+     * <p>
+     * Emits an initial event with all stored access certificates followed by an event for
+     * every change. Changes happening while the initial event is assembled may be contained in
+     * both, so consumers should apply events idempotently.
+     * Implementations not able to track changes only emit the initial event.
+     *
+     * @return an observable emitting the stored access certificates and changes to them
+     */
+    default Observable<AccessCertificatesChangeEvent> observeAccessCertificates() {
+        return getAccessCertificates()
+                .toList()
+                .map(accessCertificates -> SimpleAccessCertificatesChangeEvent.builder()
+                        .initial(true)
+                        .addedAccessCertificates(accessCertificates)
+                        .build())
+                .cast(AccessCertificatesChangeEvent.class)
+                .toObservable();
+    }
+
     /**
      * Download access certificates from remote and store them locally on the device.
      *
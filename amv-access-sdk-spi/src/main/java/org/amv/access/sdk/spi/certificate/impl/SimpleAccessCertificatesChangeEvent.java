@@ -0,0 +1,23 @@
+package org.amv.access.sdk.spi.certificate.impl;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+
+import java.util.List;
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+
+@Value
+@Builder
+public class SimpleAccessCertificatesChangeEvent implements AccessCertificatesChangeEvent {
+    private final boolean initial;
+    @Singular
+    private final List<AccessCertificatePair> addedAccessCertificates;
+    @Singular
+    private final List<AccessCertificatePair> updatedAccessCertificates;
+    @Singular
+    private final Set<String> removedAccessCertificateIds;
+}
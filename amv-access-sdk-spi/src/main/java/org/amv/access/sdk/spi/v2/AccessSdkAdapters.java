@@ -0,0 +1,383 @@
+package org.amv.access.sdk.spi.v2;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.AccessSdk;
+import org.amv.access.sdk.spi.bluetooth.BluetoothCommunicationManager;
+import org.amv.access.sdk.spi.bluetooth.BroadcastStateChangeEvent;
+import org.amv.access.sdk.spi.bluetooth.ConnectionStateChangeEvent;
+import org.amv.access.sdk.spi.bluetooth.IncomingCommandEvent;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.CertificateManager;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.communication.Command;
+import org.amv.access.sdk.spi.communication.CommandFactory;
+import org.amv.access.sdk.spi.communication.CommunicationManagerFactory;
+import org.amv.access.sdk.spi.error.AccessSdkException;
+import org.amv.access.sdk.spi.identity.Identity;
+import org.amv.access.sdk.spi.identity.IdentityManager;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+import org.amv.access.sdk.spi.vehicle.VehicleState;
+
+import java.util.List;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Converts between the v1 interfaces (e.g. {@link AccessSdk}) and the v2 interfaces
+ * (e.g. {@link AccessSdkV2}).
+ * <p>
+ * Converting an adapter back returns the instance it wraps. Streams are converted to
+ * flowables buffering all items the consumer has not requested yet.
+ */
+public final class AccessSdkAdapters {
+
+    private AccessSdkAdapters() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static AccessSdkV2 toV2(AccessSdk accessSdk) {
+        checkNotNull(accessSdk);
+
+        if (accessSdk instanceof V1AccessSdk) {
+            return ((V1AccessSdk) accessSdk).delegate;
+        }
+        return new V2AccessSdk(accessSdk);
+    }
+
+    public static AccessSdk toV1(AccessSdkV2 accessSdk) {
+        checkNotNull(accessSdk);
+
+        if (accessSdk instanceof V2AccessSdk) {
+            return ((V2AccessSdk) accessSdk).delegate;
+        }
+        return new V1AccessSdk(accessSdk);
+    }
+
+    public static IdentityManagerV2 toV2(IdentityManager identityManager) {
+        checkNotNull(identityManager);
+
+        return () -> identityManager.findIdentity().firstOrError();
+    }
+
+    public static IdentityManager toV1(IdentityManagerV2 identityManager) {
+        checkNotNull(identityManager);
+
+        return () -> identityManager.findIdentity().toObservable();
+    }
+
+    public static CertificateManagerV2 toV2(CertificateManager certificateManager) {
+        checkNotNull(certificateManager);
+
+        if (certificateManager instanceof V1CertificateManager) {
+            return ((V1CertificateManager) certificateManager).delegate;
+        }
+        return new V2CertificateManager(certificateManager);
+    }
+
+    public static CertificateManager toV1(CertificateManagerV2 certificateManager) {
+        checkNotNull(certificateManager);
+
+        if (certificateManager instanceof V2CertificateManager) {
+            return ((V2CertificateManager) certificateManager).delegate;
+        }
+        return new V1CertificateManager(certificateManager);
+    }
+
+    public static BluetoothCommunicationManagerV2 toV2(BluetoothCommunicationManager communicationManager) {
+        checkNotNull(communicationManager);
+
+        if (communicationManager instanceof V1BluetoothCommunicationManager) {
+            return ((V1BluetoothCommunicationManager) communicationManager).delegate;
+        }
+        return new V2BluetoothCommunicationManager(communicationManager);
+    }
+
+    public static BluetoothCommunicationManager toV1(BluetoothCommunicationManagerV2 communicationManager) {
+        checkNotNull(communicationManager);
+
+        if (communicationManager instanceof V2BluetoothCommunicationManager) {
+            return ((V2BluetoothCommunicationManager) communicationManager).delegate;
+        }
+        return new V1BluetoothCommunicationManager(communicationManager);
+    }
+
+    private static <T> Flowable<T> toFlowable(Observable<T> observable) {
+        return observable.toFlowable(BackpressureStrategy.BUFFER);
+    }
+
+    private static class V2AccessSdk implements AccessSdkV2 {
+        private final AccessSdk delegate;
+
+        private V2AccessSdk(AccessSdk delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Completable initialize() {
+            return delegate.initialize().ignoreElements();
+        }
+
+        @Override
+        public IdentityManagerV2 identityManager() {
+            return toV2(delegate.identityManager());
+        }
+
+        @Override
+        public CertificateManagerV2 certificateManager() {
+            return toV2(delegate.certificateManager());
+        }
+
+        @Override
+        public BluetoothCommunicationManagerV2 createBluetoothCommunicationManager() {
+            return toV2(delegate.bluetoothCommunicationManagerFactory().createCommunicationManager());
+        }
+
+        @Override
+        public CommandFactory commandFactory() {
+            return delegate.commandFactory();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+
+    private static class V1AccessSdk implements AccessSdk {
+        private final AccessSdkV2 delegate;
+
+        private V1AccessSdk(AccessSdkV2 delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Observable<AccessSdk> initialize() {
+            return delegate.initialize()
+                    .toSingleDefault((AccessSdk) this)
+                    .toObservable();
+        }
+
+        @Override
+        public IdentityManager identityManager() {
+            return toV1(delegate.identityManager());
+        }
+
+        @Override
+        public CertificateManager certificateManager() {
+            return toV1(delegate.certificateManager());
+        }
+
+        @Override
+        public CommunicationManagerFactory<BluetoothCommunicationManager> bluetoothCommunicationManagerFactory() {
+            return () -> toV1(delegate.createBluetoothCommunicationManager());
+        }
+
+        @Override
+        public CommandFactory commandFactory() {
+            return delegate.commandFactory();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+    }
+
+    private static class V2CertificateManager implements CertificateManagerV2 {
+        private final CertificateManager delegate;
+
+        private V2CertificateManager(CertificateManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Single<DeviceCertificate> getDeviceCertificate() {
+            return delegate.getDeviceCertificate().firstOrError();
+        }
+
+        @Override
+        public Single<List<AccessCertificatePair>> getAccessCertificates() {
+            return delegate.getAccessCertificates().toList();
+        }
+
+        @Override
+        public Maybe<AccessCertificatePair> getAccessCertificateById(String id) {
+            return delegate.getAccessCertificateById(id)
+                    .firstElement()
+                    .filter(Optional::isPresent)
+                    .map(Optional::get);
+        }
+
+        @Override
+        public Single<List<AccessCertificatePair>> getAccessCertificatesForVehicle(SerialNumber vehicleSerial) {
+            return delegate.getAccessCertificatesForVehicle(vehicleSerial).toList();
+        }
+
+        @Override
+        public Flowable<AccessCertificatesChangeEvent> observeAccessCertificates() {
+            return toFlowable(delegate.observeAccessCertificates());
+        }
+
+        @Override
+        public Single<List<AccessCertificatePair>> refreshAccessCertificates() {
+            return delegate.refreshAccessCertificates().toList();
+        }
+
+        @Override
+        public Single<Boolean> revokeAccessCertificate(AccessCertificatePair certificatePair) {
+            return delegate.revokeAccessCertificate(certificatePair).firstOrError();
+        }
+    }
+
+    private static class V1CertificateManager implements CertificateManager {
+        private final CertificateManagerV2 delegate;
+
+        private V1CertificateManager(CertificateManagerV2 delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Observable<DeviceCertificate> getDeviceCertificate() {
+            return delegate.getDeviceCertificate().toObservable();
+        }
+
+        @Override
+        public Observable<AccessCertificatePair> getAccessCertificates() {
+            return delegate.getAccessCertificates().flattenAsObservable(accessCertificates -> accessCertificates);
+        }
+
+        @Override
+        public Observable<Optional<AccessCertificatePair>> getAccessCertificateById(String id) {
+            return delegate.getAccessCertificateById(id)
+                    .map(Optional::of)
+                    .toSingle(Optional.absent())
+                    .toObservable();
+        }
+
+        @Override
+        public Observable<AccessCertificatePair> getAccessCertificatesForVehicle(SerialNumber vehicleSerial) {
+            return delegate.getAccessCertificatesForVehicle(vehicleSerial)
+                    .flattenAsObservable(accessCertificates -> accessCertificates);
+        }
+
+        @Override
+        public Observable<AccessCertificatesChangeEvent> observeAccessCertificates() {
+            return delegate.observeAccessCertificates().toObservable();
+        }
+
+        @Override
+        public Observable<AccessCertificatePair> refreshAccessCertificates() {
+            return delegate.refreshAccessCertificates().flattenAsObservable(accessCertificates -> accessCertificates);
+        }
+
+        @Override
+        public Observable<Boolean> revokeAccessCertificate(AccessCertificatePair certificatePair) {
+            return delegate.revokeAccessCertificate(certificatePair).toObservable();
+        }
+    }
+
+    private static class V2BluetoothCommunicationManager implements BluetoothCommunicationManagerV2 {
+        private final BluetoothCommunicationManager delegate;
+
+        private V2BluetoothCommunicationManager(BluetoothCommunicationManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Completable startConnecting(AccessCertificatePair accessCertificatePair) {
+            return delegate.startConnecting(accessCertificatePair).ignoreElements();
+        }
+
+        @Override
+        public Flowable<VehicleState> observeVehicleState() {
+            return toFlowable(delegate.observeVehicleState());
+        }
+
+        @Override
+        public Completable sendCommand(Command command) {
+            return delegate.sendCommand(command).ignoreElements();
+        }
+
+        @Override
+        public Completable terminate() {
+            return delegate.terminate().ignoreElements();
+        }
+
+        @Override
+        public Flowable<BroadcastStateChangeEvent> observeBroadcastState() {
+            return toFlowable(delegate.observeBroadcastState());
+        }
+
+        @Override
+        public Flowable<ConnectionStateChangeEvent> observeConnectionState() {
+            return toFlowable(delegate.observeConnectionState());
+        }
+
+        @Override
+        public Flowable<IncomingCommandEvent> observeIncomingCommands() {
+            return toFlowable(delegate.observeIncomingCommands());
+        }
+
+        @Override
+        public Flowable<AccessSdkException> observeIncomingFailureMessages() {
+            return toFlowable(delegate.observeIncomingFailureMessages());
+        }
+    }
+
+    private static class V1BluetoothCommunicationManager implements BluetoothCommunicationManager {
+        private final BluetoothCommunicationManagerV2 delegate;
+
+        private V1BluetoothCommunicationManager(BluetoothCommunicationManagerV2 delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Observable<Boolean> startConnecting(AccessCertificatePair accessCertificatePair) {
+            return delegate.startConnecting(accessCertificatePair).toSingleDefault(true).toObservable();
+        }
+
+        @Override
+        public Observable<VehicleState> observeVehicleState() {
+            return delegate.observeVehicleState().toObservable();
+        }
+
+        @Override
+        public Observable<Boolean> sendCommand(Command command) {
+            return delegate.sendCommand(command).toSingleDefault(true).toObservable();
+        }
+
+        @Override
+        public Observable<Boolean> terminate() {
+            return delegate.terminate().toSingleDefault(true).toObservable();
+        }
+
+        @Override
+        public Observable<BroadcastStateChangeEvent> observeBroadcastState() {
+            return delegate.observeBroadcastState().toObservable();
+        }
+
+        @Override
+        public Observable<ConnectionStateChangeEvent> observeConnectionState() {
+            return delegate.observeConnectionState().toObservable();
+        }
+
+        @Override
+        public Observable<IncomingCommandEvent> observeIncomingCommands() {
+            return delegate.observeIncomingCommands().toObservable();
+        }
+
+        @Override
+        public Observable<AccessSdkException> observeIncomingFailureMessages() {
+            return delegate.observeIncomingFailureMessages().toObservable();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.amv.access.sdk.spi.v2;
+
+import org.amv.access.sdk.spi.AccessSdk;
+import org.amv.access.sdk.spi.communication.CommandFactory;
+
+import io.reactivex.Completable;
+
+/**
+ * The {@link AccessSdk} with operations typed by the number of items they produce.
+ * <p>
+ * Use {@link AccessSdkAdapters} to convert between both interfaces.
+ */
+public interface AccessSdkV2 {
+    /**
+     * Initialization routine for the setting up the sdk.
+     *
+     * @return a completable that completes on successful initialization
+     */
+    Completable initialize();
+
+    IdentityManagerV2 identityManager();
+
+    CertificateManagerV2 certificateManager();
+
+    /**
+     * Creates a manager for handling the lifecycle of bluetooth communications with a connected device.
+     *
+     * @return a new instance of BluetoothCommunicationManagerV2
+     */
+    BluetoothCommunicationManagerV2 createBluetoothCommunicationManager();
+
+    CommandFactory commandFactory();
+
+    /**
+     * Releases the threads held by this sdk instance.
+     * <p>
+     * Resources are acquired again if the sdk is used after shutdown.
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,23 @@
+package org.amv.access.sdk.spi.v2;
+
+import org.amv.access.sdk.spi.bluetooth.BluetoothCommunicationManager;
+import org.amv.access.sdk.spi.bluetooth.BroadcastStateChangeEvent;
+import org.amv.access.sdk.spi.bluetooth.ConnectionStateChangeEvent;
+import org.amv.access.sdk.spi.bluetooth.IncomingCommandEvent;
+import org.amv.access.sdk.spi.error.AccessSdkException;
+
+import io.reactivex.Flowable;
+
+/**
+ * See {@link BluetoothCommunicationManager}.
+ */
+public interface BluetoothCommunicationManagerV2 extends CommunicationManagerV2 {
+
+    Flowable<BroadcastStateChangeEvent> observeBroadcastState();
+
+    Flowable<ConnectionStateChangeEvent> observeConnectionState();
+
+    Flowable<IncomingCommandEvent> observeIncomingCommands();
+
+    Flowable<AccessSdkException> observeIncomingFailureMessages();
+}
@@ -0,0 +1,59 @@
+package org.amv.access.sdk.spi.v2;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.CertificateManager;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.util.List;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+/**
+ * See {@link CertificateManager}.
+ */
+public interface CertificateManagerV2 {
+    /**
+     * @return a single emitting the locally stored device certificate
+     */
+    Single<DeviceCertificate> getDeviceCertificate();
+
+    /**
+     * @return a single emitting all locally present access certificates
+     */
+    Single<List<AccessCertificatePair>> getAccessCertificates();
+
+    /**
+     * @return a maybe emitting the access certificate or completing if it does not exist
+     */
+    Maybe<AccessCertificatePair> getAccessCertificateById(String id);
+
+    /**
+     * @return a single emitting all access certificates for the vehicle
+     */
+    Single<List<AccessCertificatePair>> getAccessCertificatesForVehicle(SerialNumber vehicleSerial);
+
+    /**
+     * See {@link CertificateManager#observeAccessCertificates()}.
+     *
+     * @return a flowable emitting the stored access certificates and changes to them
+     */
+    Flowable<AccessCertificatesChangeEvent> observeAccessCertificates();
+
+    /**
+     * Download access certificates from remote and store them locally on the device.
+     *
+     * @return a single emitting all locally present access certificates after successful execution
+     */
+    Single<List<AccessCertificatePair>> refreshAccessCertificates();
+
+    /**
+     * Revoke a given access certificate pair from the remote exchange and from the device.
+     *
+     * @return a single emitting true if it has been revoked and removed from the device
+     */
+    Single<Boolean> revokeAccessCertificate(AccessCertificatePair certificatePair);
+}
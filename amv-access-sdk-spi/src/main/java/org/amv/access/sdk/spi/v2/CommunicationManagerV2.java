@@ -0,0 +1,41 @@
+package org.amv.access.sdk.spi.v2;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.communication.Command;
+import org.amv.access.sdk.spi.communication.CommunicationManager;
+import org.amv.access.sdk.spi.vehicle.VehicleState;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+
+/**
+ * See {@link CommunicationManager}.
+ */
+public interface CommunicationManagerV2 {
+
+    /**
+     * See {@link CommunicationManager#startConnecting(AccessCertificatePair)}.
+     *
+     * @return a completable that completes when looking for devices started successfully
+     */
+    Completable startConnecting(AccessCertificatePair accessCertificatePair);
+
+    /**
+     * @return a flowable emitting vehicle states until the communication ends
+     */
+    Flowable<VehicleState> observeVehicleState();
+
+    /**
+     * See {@link CommunicationManager#sendCommand(Command)}.
+     *
+     * @return a completable that completes when the command has been successfully sent
+     */
+    Completable sendCommand(Command command);
+
+    /**
+     * See {@link CommunicationManager#terminate()}.
+     *
+     * @return a completable that completes when disconnecting has been successful
+     */
+    Completable terminate();
+}
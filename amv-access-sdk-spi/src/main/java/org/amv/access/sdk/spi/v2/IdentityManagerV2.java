@@ -0,0 +1,17 @@
+package org.amv.access.sdk.spi.v2;
+
+import org.amv.access.sdk.spi.identity.Identity;
+import org.amv.access.sdk.spi.identity.IdentityManager;
+
+import io.reactivex.Single;
+
+/**
+ * See {@link IdentityManager}.
+ */
+public interface IdentityManagerV2 {
+
+    /**
+     * @return a single emitting the loaded identity
+     */
+    Single<Identity> findIdentity();
+}
@@ -0,0 +1,92 @@
+package org.amv.access.sdk.spi.v2;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.bluetooth.BluetoothCommunicationManager;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.CertificateManager;
+import org.amv.access.sdk.spi.communication.Command;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class AccessSdkAdaptersTest {
+
+    @Test
+    public void itShouldAdaptV1CertificateManager() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = mock(AccessCertificatePair.class);
+        AccessCertificatePair accessCertificatePair2 = mock(AccessCertificatePair.class);
+
+        CertificateManager certificateManager = mock(CertificateManager.class);
+        doReturn(Observable.just(accessCertificatePair1, accessCertificatePair2))
+                .when(certificateManager).getAccessCertificates();
+        doReturn(Observable.just(Optional.of(accessCertificatePair1)))
+                .when(certificateManager).getAccessCertificateById("id1");
+        doReturn(Observable.just(Optional.absent()))
+                .when(certificateManager).getAccessCertificateById("id2");
+
+        CertificateManagerV2 sut = AccessSdkAdapters.toV2(certificateManager);
+
+        List<AccessCertificatePair> accessCertificates = sut.getAccessCertificates().blockingGet();
+        assertThat(accessCertificates, is(Arrays.asList(accessCertificatePair1, accessCertificatePair2)));
+
+        sut.getAccessCertificateById("id1").test().assertResult(accessCertificatePair1);
+        sut.getAccessCertificateById("id2").test().assertResult();
+    }
+
+    @Test
+    public void itShouldAdaptV2CertificateManager() throws Exception {
+        AccessCertificatePair accessCertificatePair = mock(AccessCertificatePair.class);
+
+        CertificateManagerV2 certificateManager = mock(CertificateManagerV2.class);
+        doReturn(Single.just(Collections.singletonList(accessCertificatePair)))
+                .when(certificateManager).getAccessCertificates();
+        doReturn(Maybe.empty())
+                .when(certificateManager).getAccessCertificateById(anyString());
+
+        CertificateManager sut = AccessSdkAdapters.toV1(certificateManager);
+
+        sut.getAccessCertificates().test().assertResult(accessCertificatePair);
+        sut.getAccessCertificateById("id").test().assertResult(Optional.absent());
+    }
+
+    @Test
+    public void itShouldAdaptBluetoothCommunicationManager() throws Exception {
+        BluetoothCommunicationManagerV2 communicationManager = mock(BluetoothCommunicationManagerV2.class);
+        doReturn(Completable.complete())
+                .when(communicationManager).sendCommand(any());
+        doReturn(Completable.error(new IllegalStateException()))
+                .when(communicationManager).terminate();
+
+        BluetoothCommunicationManager sut = AccessSdkAdapters.toV1(communicationManager);
+
+        sut.sendCommand(mock(Command.class)).test().assertResult(true);
+        sut.terminate().test().assertError(IllegalStateException.class);
+    }
+
+    @Test
+    public void itShouldUnwrapAdapters() throws Exception {
+        CertificateManager certificateManager = mock(CertificateManager.class);
+        BluetoothCommunicationManagerV2 communicationManager = mock(BluetoothCommunicationManagerV2.class);
+
+        assertThat(AccessSdkAdapters.toV1(AccessSdkAdapters.toV2(certificateManager)),
+                is(sameInstance(certificateManager)));
+        assertThat(AccessSdkAdapters.toV2(AccessSdkAdapters.toV1(communicationManager)),
+                is(sameInstance(communicationManager)));
+    }
+}
@@ -0,0 +1,356 @@
+package org.amv.access.sdk.hm;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The schedulers a single sdk instance runs its work on.
+ * <p>
+ * Each scheduler is either supplied by the integrator (as {@link Scheduler} or {@link Executor})
+ * or backed by a thread pool owned by this instance. Owned pools are created lazily, terminated
+ * by {@link #shutdown()} and recreated on first use afterwards. Supplied schedulers and executors
+ * are never shut down.
+ * <p>
+ * Mutations of local storage are always run on {@link #storageWriteScheduler()} which is
+ * single-threaded unless supplied explicitly - this allows reads to use a pool of any size.
+ * <p>
+ * CPU-heavy cryptographic work (key generation, signing) is run on {@link #cryptoScheduler()} so
+ * it does not delay bluetooth events or storage access. Stored values are encrypted on the storage
+ * thread itself: no pool ever waits for another one.
+ * <p>
+ * Owned pools and supplied executors are instrumented: see {@link #statistics()},
+ * {@link Builder#metricsListener(SchedulerMetricsListener)} and
+ * {@link Builder#slowTaskThreshold(long, TimeUnit)}. Schedulers obtained with a label
+ * (e.g. {@link #storageScheduler(String)}) report their tasks under that label.
+ */
+public final class AccessSdkSchedulers {
+    public static final String DEFAULT = "default";
+    public static final String REMOTE = "remote";
+    public static final String STORAGE = "storage";
+    public static final String STORAGE_WRITE = "storage-write";
+    public static final String CRYPTO = "crypto";
+
+    private static final int DEFAULT_POOL_SIZE = 1;
+
+    public static AccessSdkSchedulers create() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final Scheduler defaultScheduler;
+    private final Scheduler remoteScheduler;
+    private final Scheduler storageScheduler;
+    private final Scheduler storageWriteScheduler;
+    private final Scheduler cryptoScheduler;
+    private final Map<String, SchedulerStatisticsRecorder> statisticsRecorders = new LinkedHashMap<>();
+
+    private AccessSdkSchedulers(Builder builder) {
+        this.defaultScheduler = build(builder, DEFAULT, builder.defaultPool);
+        this.remoteScheduler = build(builder, REMOTE, builder.remotePool);
+        this.storageScheduler = build(builder, STORAGE, builder.storagePool);
+
+        boolean storageIsSingleThreadPool = builder.storagePool.isOwned() &&
+                builder.storagePool.poolSize == 1;
+        boolean reuseStorageScheduler = storageIsSingleThreadPool && builder.storageWritePool.isOwned();
+        this.storageWriteScheduler = reuseStorageScheduler ? storageScheduler :
+                build(builder, STORAGE_WRITE, builder.storageWritePool);
+
+        this.cryptoScheduler = build(builder, CRYPTO, builder.cryptoPool);
+    }
+
+    private Scheduler build(Builder builder, String name, PoolSpec poolSpec) {
+        if (poolSpec.scheduler != null) {
+            return poolSpec.scheduler;
+        }
+
+        SchedulerStatisticsRecorder statisticsRecorder = new SchedulerStatisticsRecorder(name,
+                builder.metricsListener, builder.slowTaskThresholdInNanos);
+        statisticsRecorders.put(name, statisticsRecorder);
+
+        if (poolSpec.executor != null) {
+            return Schedulers.from(statisticsRecorder.instrument(poolSpec.executor));
+        }
+        return new ThreadPoolScheduler("amv-access-sdk-" + name + "-%d", poolSpec.poolSize, statisticsRecorder);
+    }
+
+    public Scheduler defaultScheduler() {
+        return defaultScheduler;
+    }
+
+    public Scheduler defaultScheduler(String label) {
+        return new LabeledScheduler(defaultScheduler, label);
+    }
+
+    public Scheduler remoteScheduler() {
+        return remoteScheduler;
+    }
+
+    public Scheduler remoteScheduler(String label) {
+        return new LabeledScheduler(remoteScheduler, label);
+    }
+
+    public Scheduler storageScheduler() {
+        return storageScheduler;
+    }
+
+    public Scheduler storageScheduler(String label) {
+        return new LabeledScheduler(storageScheduler, label);
+    }
+
+    public Scheduler storageWriteScheduler() {
+        return storageWriteScheduler;
+    }
+
+    public Scheduler storageWriteScheduler(String label) {
+        return new LabeledScheduler(storageWriteScheduler, label);
+    }
+
+    public Scheduler cryptoScheduler() {
+        return cryptoScheduler;
+    }
+
+    public Scheduler cryptoScheduler(String label) {
+        return new LabeledScheduler(cryptoScheduler, label);
+    }
+
+    /**
+     * @return statistics of the crypto scheduler or empty if it has been supplied as {@link Scheduler}
+     */
+    public Optional<SchedulerStatistics> cryptoStatistics() {
+        return Optional.fromNullable(statisticsRecorders.get(CRYPTO))
+                .transform(SchedulerStatisticsRecorder::snapshot);
+    }
+
+    /**
+     * @return statistics of all instrumented schedulers by name (e.g. {@link #DEFAULT})
+     */
+    public Map<String, SchedulerStatistics> statistics() {
+        ImmutableMap.Builder<String, SchedulerStatistics> statistics = ImmutableMap.builder();
+        for (Map.Entry<String, SchedulerStatisticsRecorder> entry : statisticsRecorders.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return statistics.build();
+    }
+
+    /**
+     * Terminates all thread pools owned by this instance. Pools are recreated when work is
+     * scheduled again - e.g. by an sdk instance that was kept around.
+     */
+    public void shutdown() {
+        shutdown(defaultScheduler);
+        shutdown(remoteScheduler);
+        shutdown(storageScheduler);
+        shutdown(storageWriteScheduler);
+        shutdown(cryptoScheduler);
+    }
+
+    private static void shutdown(Scheduler scheduler) {
+        if (scheduler instanceof ThreadPoolScheduler) {
+            scheduler.shutdown();
+        }
+    }
+
+    public static class Builder {
+        private final PoolSpec defaultPool = new PoolSpec();
+        private final PoolSpec remotePool = new PoolSpec();
+        private final PoolSpec storagePool = new PoolSpec();
+        private final PoolSpec storageWritePool = new PoolSpec();
+        private final PoolSpec cryptoPool = new PoolSpec();
+        private SchedulerMetricsListener metricsListener;
+        private long slowTaskThresholdInNanos;
+
+        private Builder() {
+        }
+
+        public Builder defaultScheduler(Scheduler scheduler) {
+            defaultPool.scheduler(scheduler);
+            return this;
+        }
+
+        public Builder defaultExecutor(Executor executor) {
+            defaultPool.executor(executor);
+            return this;
+        }
+
+        public Builder defaultPoolSize(int poolSize) {
+            defaultPool.poolSize(poolSize);
+            return this;
+        }
+
+        public Builder remoteScheduler(Scheduler scheduler) {
+            remotePool.scheduler(scheduler);
+            return this;
+        }
+
+        public Builder remoteExecutor(Executor executor) {
+            remotePool.executor(executor);
+            return this;
+        }
+
+        public Builder remotePoolSize(int poolSize) {
+            remotePool.poolSize(poolSize);
+            return this;
+        }
+
+        public Builder storageScheduler(Scheduler scheduler) {
+            storagePool.scheduler(scheduler);
+            return this;
+        }
+
+        public Builder storageExecutor(Executor executor) {
+            storagePool.executor(executor);
+            return this;
+        }
+
+        public Builder storagePoolSize(int poolSize) {
+            storagePool.poolSize(poolSize);
+            return this;
+        }
+
+        /**
+         * @param scheduler a scheduler that runs tasks one at a time in submission order
+         */
+        public Builder storageWriteScheduler(Scheduler scheduler) {
+            storageWritePool.scheduler(scheduler);
+            return this;
+        }
+
+        public Builder cryptoScheduler(Scheduler scheduler) {
+            cryptoPool.scheduler(scheduler);
+            return this;
+        }
+
+        public Builder cryptoExecutor(Executor executor) {
+            cryptoPool.executor(executor);
+            return this;
+        }
+
+        public Builder cryptoPoolSize(int poolSize) {
+            cryptoPool.poolSize(poolSize);
+            return this;
+        }
+
+        /**
+         * @param metricsListener notified on the pool thread after every task of an instrumented scheduler
+         */
+        public Builder metricsListener(SchedulerMetricsListener metricsListener) {
+            this.metricsListener = checkNotNull(metricsListener);
+            return this;
+        }
+
+        /**
+         * Logs a warning for every task that occupies a pool thread for longer than the given threshold.
+         */
+        public Builder slowTaskThreshold(long threshold, TimeUnit unit) {
+            checkArgument(threshold > 0, "Threshold must be positive");
+            this.slowTaskThresholdInNanos = unit.toNanos(threshold);
+            return this;
+        }
+
+        public AccessSdkSchedulers build() {
+            return new AccessSdkSchedulers(this);
+        }
+    }
+
+    private static class PoolSpec {
+        private Scheduler scheduler;
+        private Executor executor;
+        private int poolSize = DEFAULT_POOL_SIZE;
+
+        private void scheduler(Scheduler scheduler) {
+            checkState(executor == null, "Either a scheduler or an executor can be set");
+            this.scheduler = scheduler;
+        }
+
+        private void executor(Executor executor) {
+            checkState(scheduler == null, "Either a scheduler or an executor can be set");
+            this.executor = executor;
+        }
+
+        private void poolSize(int poolSize) {
+            checkArgument(poolSize > 0, "Pool size must be positive");
+            this.poolSize = poolSize;
+        }
+
+        private boolean isOwned() {
+            return scheduler == null && executor == null;
+        }
+    }
+
+    /**
+     * A scheduler backed by a fixed thread pool that can be shut down and started again.
+     * Workers always run on the pool that is current when they are created.
+     */
+    private static class ThreadPoolScheduler extends Scheduler {
+        private final String nameFormat;
+        private final int poolSize;
+        private final SchedulerStatisticsRecorder statisticsRecorder;
+
+        private ExecutorService executorService;
+        private Scheduler delegate;
+
+        private ThreadPoolScheduler(String nameFormat, int poolSize, SchedulerStatisticsRecorder statisticsRecorder) {
+            this.nameFormat = nameFormat;
+            this.poolSize = poolSize;
+            this.statisticsRecorder = statisticsRecorder;
+        }
+
+        @Override
+        public Disposable scheduleDirect(Runnable run) {
+            return current().scheduleDirect(run);
+        }
+
+        @Override
+        public Disposable scheduleDirect(Runnable run, long delay, TimeUnit unit) {
+            return current().scheduleDirect(run, delay, unit);
+        }
+
+        @Override
+        public Worker createWorker() {
+            return current().createWorker();
+        }
+
+        @Override
+        public synchronized void start() {
+            current();
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            if (executorService != null) {
+                executorService.shutdown();
+                executorService = null;
+                delegate = null;
+            }
+        }
+
+        private synchronized Scheduler current() {
+            if (delegate == null) {
+                executorService = Executors.newFixedThreadPool(poolSize, new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .build());
+                delegate = Schedulers.from(statisticsRecorder.instrument(executorService));
+            }
+            return delegate;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.amv.access.sdk.hm;
 import android.content.Context;
 import android.util.Log;
 
+import com.google.common.base.Optional;
 import com.highmobility.crypto.value.PrivateKey;
 import com.highmobility.crypto.value.PublicKey;
 import com.highmobility.hmkit.HMKit;
@@ -12,12 +13,16 @@ import com.highmobility.value.Bytes;
 import org.amv.access.sdk.hm.bluetooth.BluetoothBroadcaster;
 import org.amv.access.sdk.hm.bluetooth.HmBluetoothBroadcaster;
 import org.amv.access.sdk.hm.bluetooth.HmBluetoothCommunicationManager;
+import org.amv.access.sdk.hm.certificate.AccessCertificateRefreshScheduler;
 import org.amv.access.sdk.hm.certificate.HmCertificateManager;
 import org.amv.access.sdk.hm.certificate.LocalStorage;
 import org.amv.access.sdk.hm.communication.HmCommandFactory;
 import org.amv.access.sdk.hm.config.AccessSdkOptions;
 import org.amv.access.sdk.hm.config.AccessSdkOptionsImpl;
 import org.amv.access.sdk.hm.identity.HmIdentityManager;
+import org.amv.access.sdk.hm.secure.SharedPreferencesStorage;
+import org.amv.access.sdk.hm.secure.Storage;
+import org.amv.access.sdk.hm.util.SingleFlight;
 import org.amv.access.sdk.spi.AccessSdk;
 import org.amv.access.sdk.spi.bluetooth.BluetoothCommunicationManager;
 import org.amv.access.sdk.spi.certificate.CertificateManager;
@@ -50,36 +55,60 @@ public class AmvAccessSdk implements AccessSdk {
 
     private final Context context;
     private final AccessSdkOptions accessSdkOptions;
+    private final AccessSdkSchedulers schedulers;
     private final HMKit manager;
+    private final Storage storage;
     private final LocalStorage localStorage;
     private final HmIdentityManager identityManager;
     private final HmCertificateManager certificateManager;
     private final HmCommandFactory commandFactory;
+    private final Optional<AccessCertificateRefreshScheduler> refreshScheduler;
+    private final SingleFlight<String, AccessSdk> initializeFlight = new SingleFlight<>();
 
     AmvAccessSdk(Context context,
                  AccessSdkOptions accessSdkOptions,
+                 AccessSdkSchedulers schedulers,
                  HMKit manager,
+                 Storage storage,
                  LocalStorage localStorage,
                  HmIdentityManager identityManager,
                  HmCertificateManager certificateManager,
-                 HmCommandFactory commandFactory) {
+                 HmCommandFactory commandFactory,
+                 Optional<AccessCertificateRefreshScheduler> refreshScheduler) {
         this.context = checkNotNull(context);
         this.accessSdkOptions = checkNotNull(accessSdkOptions);
+        this.schedulers = checkNotNull(schedulers);
         this.manager = checkNotNull(manager);
+        this.storage = checkNotNull(storage);
         this.identityManager = checkNotNull(identityManager);
         this.localStorage = checkNotNull(localStorage);
         this.certificateManager = checkNotNull(certificateManager);
         this.commandFactory = checkNotNull(commandFactory);
+        this.refreshScheduler = checkNotNull(refreshScheduler);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Concurrent calls share one initialization.
+     */
     @Override
     public Observable<AccessSdk> initialize() {
+        return initializeFlight.execute(TAG, this::doInitialize);
+    }
+
+    private Observable<AccessSdk> doInitialize() {
         return Observable.just(1)
                 .doOnNext(foo -> {
                     Log.d(TAG, "initialize");
                 })
                 .flatMap(foo -> certificateManager.initialize(context, accessSdkOptions))
                 .flatMap(foo -> initializeHmManager())
+                .doOnNext(foo -> {
+                    if (refreshScheduler.isPresent()) {
+                        refreshScheduler.get().start();
+                    }
+                })
                 .map(foo -> this)
                 .cast(AccessSdk.class)
                 .doOnNext(foo -> Log.d(TAG, "initialize finished"));
@@ -105,8 +134,32 @@ public class AmvAccessSdk implements AccessSdk {
         return commandFactory;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes kept back by a storage write delay are committed before the schedulers are shut down.
+     */
+    @Override
+    public void shutdown() {
+        Log.d(TAG, "shutdown");
+        if (refreshScheduler.isPresent()) {
+            refreshScheduler.get().stop();
+        }
+        if (storage instanceof SharedPreferencesStorage) {
+            // delayed writes are applied on the storage write scheduler which is shut down below
+            boolean flushed = ((SharedPreferencesStorage) storage).flush()
+                    .onErrorReturnItem(false)
+                    .blockingFirst();
+            if (!flushed) {
+                Log.w(TAG, "Writing pending storage writes on shutdown failed");
+            }
+        }
+        schedulers.shutdown();
+    }
+
     private BluetoothBroadcaster createBluetoothBroadcaster() {
-        return new HmBluetoothBroadcaster(commandFactory, manager.getBroadcaster());
+        return new HmBluetoothBroadcaster(commandFactory, manager.getBroadcaster(),
+                schedulers.defaultScheduler());
     }
 
     private Observable<Boolean> initializeHmManager() {
@@ -14,14 +14,22 @@ import com.google.common.base.Optional;
 import com.highmobility.hmkit.HMKit;
 import com.highmobility.hmkit.Manager;
 
+import org.amv.access.sdk.hm.certificate.AccessApiClientFactory;
+import org.amv.access.sdk.hm.certificate.AccessCertificateRefreshScheduler;
 import org.amv.access.sdk.hm.certificate.AmvHmRemote;
+import org.amv.access.sdk.hm.certificate.CachingLocalStorage;
 import org.amv.access.sdk.hm.certificate.HmCertificateManager;
 import org.amv.access.sdk.hm.certificate.HmLocalStorage;
 import org.amv.access.sdk.hm.certificate.LocalStorage;
 import org.amv.access.sdk.hm.certificate.Remote;
+import org.amv.access.sdk.hm.certificate.RemoteResiliencePolicy;
+import org.amv.access.sdk.hm.certificate.ResilientRemote;
+import org.amv.access.sdk.hm.certificate.SqliteLocalStorage;
 import org.amv.access.sdk.hm.communication.HmCommandFactory;
 import org.amv.access.sdk.hm.config.AccessSdkOptions;
+import org.amv.access.sdk.hm.config.StorageBackend;
 import org.amv.access.sdk.hm.identity.HmIdentityManager;
+import org.amv.access.sdk.hm.secure.AppendOnlyFileStorage;
 import org.amv.access.sdk.hm.secure.ConcealCodec;
 import org.amv.access.sdk.hm.secure.PlaintextCodec;
 import org.amv.access.sdk.hm.secure.SecureStorage;
@@ -34,7 +42,9 @@ import org.amv.access.sdk.spi.crypto.Keys;
 import org.amv.access.sdk.spi.identity.Identity;
 import org.amv.access.sdk.spi.identity.SerialNumber;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 import static android.content.Context.MODE_PRIVATE;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -42,31 +52,46 @@ import static com.google.common.base.Preconditions.checkNotNull;
 class AmvAccessSdkConfiguration {
     private static final String TAG = "AmvAccessSdkConfig";
     private static final String DEFAULT_SHARED_PREFS_NAME = "HM_SHARED_PREFS_ALIAS";
+    private static final String DEFAULT_STORAGE_FILE_NAME = "amv-access-sdk-storage.log";
 
     private final Context context;
     private final AccessSdkOptions accessSdkOptions;
+    private final AccessSdkSchedulers schedulers;
 
     AmvAccessSdkConfiguration(Context context, AccessSdkOptions accessSdkOptions) {
         this.context = checkNotNull(context);
         this.accessSdkOptions = checkNotNull(accessSdkOptions);
+        this.schedulers = accessSdkOptions.getSchedulers().or(AccessSdkSchedulers::create);
     }
 
     AmvAccessSdk amvAccessSdk() {
-        Remote remote = accessSdkOptions.getRemote().or(this::remote);
-        LocalStorage localStorage = localStorage();
+        Remote remote = resilientRemote(accessSdkOptions.getRemote().or(this::remote));
+        Storage storage = storage();
+        LocalStorage localStorage = localStorage(storage);
 
         HmCertificateManager certificateManager = certificateManager(localStorage, remote);
         HmIdentityManager identityManager = identityManager(localStorage, certificateManager);
         HMKit manager = manager();
         HmCommandFactory commandFactory = commandFactory();
+        Optional<AccessCertificateRefreshScheduler> refreshScheduler = refreshScheduler(certificateManager, localStorage);
 
         return new AmvAccessSdk(context,
                 accessSdkOptions,
+                schedulers,
                 manager,
+                storage,
                 localStorage,
                 identityManager,
                 certificateManager,
-                commandFactory);
+                commandFactory,
+                refreshScheduler);
+    }
+
+    private Optional<AccessCertificateRefreshScheduler> refreshScheduler(CertificateManager certificateManager,
+                                                                         LocalStorage localStorage) {
+        return accessSdkOptions.getAccessCertificateRefreshPolicy()
+                .transform(policy -> new AccessCertificateRefreshScheduler(certificateManager, localStorage, policy,
+                        schedulers.remoteScheduler("refreshAccessCertificatesInBackground")));
     }
 
     private HMKit manager() {
@@ -82,35 +107,81 @@ class AmvAccessSdkConfiguration {
     }
 
     private HmCertificateManager certificateManager(LocalStorage localStorage, Remote remote) {
-        return new HmCertificateManager(localStorage, remote);
+        return new HmCertificateManager(localStorage, remote, schedulers,
+                remoteResiliencePolicy().getErrorClassifier());
+    }
+
+    private Remote resilientRemote(Remote remote) {
+        return new ResilientRemote(remote, remoteResiliencePolicy(), schedulers.remoteScheduler());
+    }
+
+    private RemoteResiliencePolicy remoteResiliencePolicy() {
+        return accessSdkOptions.getRemoteResiliencePolicy()
+                .or(RemoteResiliencePolicy::defaults);
     }
 
     private Remote remote() {
-        return new AmvHmRemote(accessSdkOptions.getAccessApiContext());
+        return new AmvHmRemote(accessSdkOptions.getAccessApiContext(), schedulers,
+                accessSdkOptions.getAccessApiClientFactory().or(AccessApiClientFactory::simple),
+                accessSdkOptions.getAccessCertificateDownloadConcurrency().or(AmvHmRemote.DEFAULT_PAGE_CONCURRENCY));
     }
 
-    private LocalStorage localStorage() {
-        SharedPreferences sharedPreferences = getSharedPreferences();
-        SharedPreferencesStorage sharedPreferencesStorage = sharedPreferencesStorage(sharedPreferences);
-        SecureStorage secureStorage = secureStorage(sharedPreferencesStorage);
-        Storage plainStorage = plainStorage(sharedPreferencesStorage);
-        HmLocalStorage hmLocalStorage = new HmLocalStorage(secureStorage, plainStorage);
+    private LocalStorage localStorage(Storage storage) {
+        SecureStorage secureStorage = secureStorage(storage);
+        Storage plainStorage = plainStorage(storage);
+        HmLocalStorage hmLocalStorage = new HmLocalStorage(secureStorage, plainStorage, schedulers);
+
+        if (getStorageBackend() == StorageBackend.SQLITE) {
+            // access certificates are queried from the database - only keys and certificates are cached
+            SqliteLocalStorage sqliteLocalStorage = new SqliteLocalStorage(context,
+                    SqliteLocalStorage.DEFAULT_DATABASE_NAME,
+                    new CachingLocalStorage(hmLocalStorage),
+                    schedulers);
+
+            resetSharedPreferencesOnMismatchingIdentity(sqliteLocalStorage);
+
+            return sqliteLocalStorage;
+        }
 
         resetSharedPreferencesOnMismatchingIdentity(hmLocalStorage);
 
-        return hmLocalStorage;
+        return new CachingLocalStorage(hmLocalStorage);
+    }
+
+    private StorageBackend getStorageBackend() {
+        return accessSdkOptions.getStorageBackend()
+                .or(StorageBackend.SHARED_PREFERENCES);
+    }
+
+    private Storage storage() {
+        switch (getStorageBackend()) {
+            case APPEND_ONLY_FILE:
+                return appendOnlyFileStorage();
+            case SQLITE:
+            case SHARED_PREFERENCES:
+            default:
+                return sharedPreferencesStorage(getSharedPreferences());
+        }
+    }
+
+    private Storage plainStorage(Storage storage) {
+        return new SingleCodecSecureStorage(storage, new PlaintextCodec());
     }
 
-    private Storage plainStorage(SharedPreferencesStorage sharedPreferencesStorage) {
-        return new SingleCodecSecureStorage(sharedPreferencesStorage, new PlaintextCodec());
+    private SecureStorage secureStorage(Storage storage) {
+        return new SingleCodecSecureStorage(storage, this.concealCodec());
     }
 
-    private SecureStorage secureStorage(SharedPreferencesStorage sharedPreferencesStorage) {
-        return new SingleCodecSecureStorage(sharedPreferencesStorage, this.concealCodec());
+    private AppendOnlyFileStorage appendOnlyFileStorage() {
+        return new AppendOnlyFileStorage(new File(context.getFilesDir(), DEFAULT_STORAGE_FILE_NAME),
+                AppendOnlyFileStorage.DEFAULT_COMPACTION_THRESHOLD_IN_BYTES,
+                schedulers.storageWriteScheduler());
     }
 
     private SharedPreferencesStorage sharedPreferencesStorage(SharedPreferences sharedPreferences) {
-        return new SharedPreferencesStorage(sharedPreferences);
+        long writeDelayInMillis = accessSdkOptions.getStorageWriteDelayInMillis().or(0L);
+        return new SharedPreferencesStorage(sharedPreferences, writeDelayInMillis, TimeUnit.MILLISECONDS,
+                schedulers.storageWriteScheduler());
     }
 
     private SharedPreferences getSharedPreferences() {
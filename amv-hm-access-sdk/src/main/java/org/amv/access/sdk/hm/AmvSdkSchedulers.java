@@ -1,39 +1,28 @@
 package org.amv.access.sdk.hm;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
-import java.util.concurrent.Executors;
-
 import io.reactivex.Scheduler;
-import io.reactivex.schedulers.Schedulers;
 
+/**
+ * Schedulers shared by all components that are not given an {@link AccessSdkSchedulers} instance.
+ */
 public final class AmvSdkSchedulers {
 
-    private static final Scheduler DEFAULT_SCHEDULER = Schedulers.from(Executors
-            .newFixedThreadPool(1, new ThreadFactoryBuilder()
-                    .setNameFormat("amv-access-sdk-default-%d")
-                    .build()));
+    private static final AccessSdkSchedulers SHARED_SCHEDULERS = AccessSdkSchedulers.create();
 
-    private static final Scheduler REMOTE_SCHEDULER = Schedulers.from(Executors
-            .newFixedThreadPool(1, new ThreadFactoryBuilder()
-                    .setNameFormat("amv-access-sdk-remote-%d")
-                    .build()));
-
-    private static final Scheduler STORAGE_SCHEDULER = Schedulers.from(Executors
-            .newFixedThreadPool(1, new ThreadFactoryBuilder()
-                    .setNameFormat("amv-access-sdk-storage-%d")
-                    .build()));
+    public static AccessSdkSchedulers shared() {
+        return SHARED_SCHEDULERS;
+    }
 
     public static Scheduler defaultScheduler() {
-        return DEFAULT_SCHEDULER;
+        return SHARED_SCHEDULERS.defaultScheduler();
     }
 
     public static Scheduler remoteScheduler() {
-        return REMOTE_SCHEDULER;
+        return SHARED_SCHEDULERS.remoteScheduler();
     }
 
     public static Scheduler storageScheduler() {
-        return STORAGE_SCHEDULER;
+        return SHARED_SCHEDULERS.storageScheduler();
     }
 
     private AmvSdkSchedulers() {
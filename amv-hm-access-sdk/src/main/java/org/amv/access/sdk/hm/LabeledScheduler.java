@@ -0,0 +1,81 @@
+package org.amv.access.sdk.hm;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tags every action scheduled on the delegate with a label that instrumented pools report
+ * their tasks under. If a pool task runs several actions, the label of the last one is used.
+ */
+class LabeledScheduler extends Scheduler {
+    private static final ThreadLocal<String> CURRENT_LABEL = new ThreadLocal<>();
+
+    static String currentLabel() {
+        return CURRENT_LABEL.get();
+    }
+
+    static void clearCurrentLabel() {
+        CURRENT_LABEL.remove();
+    }
+
+    private final Scheduler delegate;
+    private final String label;
+
+    LabeledScheduler(Scheduler delegate, String label) {
+        this.delegate = checkNotNull(delegate);
+        this.label = checkNotNull(label);
+    }
+
+    @Override
+    public long now(TimeUnit unit) {
+        return delegate.now(unit);
+    }
+
+    @Override
+    public Disposable scheduleDirect(Runnable run) {
+        return delegate.scheduleDirect(labeled(run));
+    }
+
+    @Override
+    public Disposable scheduleDirect(Runnable run, long delay, TimeUnit unit) {
+        return delegate.scheduleDirect(labeled(run), delay, unit);
+    }
+
+    @Override
+    public Worker createWorker() {
+        Worker worker = delegate.createWorker();
+
+        return new Worker() {
+            @Override
+            public long now(TimeUnit unit) {
+                return worker.now(unit);
+            }
+
+            @Override
+            public Disposable schedule(Runnable run, long delay, TimeUnit unit) {
+                return worker.schedule(labeled(run), delay, unit);
+            }
+
+            @Override
+            public void dispose() {
+                worker.dispose();
+            }
+
+            @Override
+            public boolean isDisposed() {
+                return worker.isDisposed();
+            }
+        };
+    }
+
+    private Runnable labeled(Runnable run) {
+        return () -> {
+            CURRENT_LABEL.set(label);
+            run.run();
+        };
+    }
+}
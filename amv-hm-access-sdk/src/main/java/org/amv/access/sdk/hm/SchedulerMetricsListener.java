@@ -0,0 +1,10 @@
+package org.amv.access.sdk.hm;
+
+/**
+ * Receives the metrics of every task run by an instrumented sdk scheduler.
+ * <p>
+ * Called on the pool thread that ran the task - implementations must return quickly.
+ */
+public interface SchedulerMetricsListener {
+    void onTaskExecuted(TaskMetrics taskMetrics);
+}
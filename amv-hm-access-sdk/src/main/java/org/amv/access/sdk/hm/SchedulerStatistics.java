@@ -0,0 +1,21 @@
+package org.amv.access.sdk.hm;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A snapshot of the tasks run by an instrumented scheduler.
+ */
+@Value
+@Builder
+public class SchedulerStatistics {
+    /**
+     * Tasks submitted but not yet started.
+     */
+    private int queueDepth;
+    private long completedTaskCount;
+    private long totalWaitTimeInNanos;
+    private long maxWaitTimeInNanos;
+    private long totalExecutionTimeInNanos;
+    private long maxExecutionTimeInNanos;
+}
@@ -0,0 +1,120 @@
+package org.amv.access.sdk.hm;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records queue depth, wait time and execution time of tasks run by executors wrapped via
+ * {@link #instrument(Executor)}.
+ */
+class SchedulerStatisticsRecorder {
+    private static final String TAG = "AccessSdkSchedulers";
+
+    private final String schedulerName;
+    private final SchedulerMetricsListener metricsListener;
+    private final long slowTaskThresholdInNanos;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong completedTaskCount = new AtomicLong();
+    private final AtomicLong totalWaitTimeInNanos = new AtomicLong();
+    private final AtomicLong maxWaitTimeInNanos = new AtomicLong();
+    private final AtomicLong totalExecutionTimeInNanos = new AtomicLong();
+    private final AtomicLong maxExecutionTimeInNanos = new AtomicLong();
+
+    /**
+     * @param metricsListener          the listener to notify or null
+     * @param slowTaskThresholdInNanos the execution time above which tasks are logged or 0 to disable logging
+     */
+    SchedulerStatisticsRecorder(String schedulerName,
+                                SchedulerMetricsListener metricsListener,
+                                long slowTaskThresholdInNanos) {
+        this.schedulerName = checkNotNull(schedulerName);
+        this.metricsListener = metricsListener;
+        this.slowTaskThresholdInNanos = slowTaskThresholdInNanos;
+    }
+
+    Executor instrument(Executor executor) {
+        checkNotNull(executor);
+
+        return task -> {
+            int queueDepthOnSubmit = queueDepth.incrementAndGet();
+            long submitTime = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    queueDepth.decrementAndGet();
+                    LabeledScheduler.clearCurrentLabel();
+                    long startTime = System.nanoTime();
+                    try {
+                        task.run();
+                    } finally {
+                        long executionTime = System.nanoTime() - startTime;
+                        String label = LabeledScheduler.currentLabel();
+                        LabeledScheduler.clearCurrentLabel();
+
+                        recordExecution(label != null ? label : schedulerName, queueDepthOnSubmit,
+                                startTime - submitTime, executionTime);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // rejected tasks never leave the queue
+                queueDepth.decrementAndGet();
+                throw e;
+            }
+        };
+    }
+
+    SchedulerStatistics snapshot() {
+        return SchedulerStatistics.builder()
+                .queueDepth(queueDepth.get())
+                .completedTaskCount(completedTaskCount.get())
+                .totalWaitTimeInNanos(totalWaitTimeInNanos.get())
+                .maxWaitTimeInNanos(maxWaitTimeInNanos.get())
+                .totalExecutionTimeInNanos(totalExecutionTimeInNanos.get())
+                .maxExecutionTimeInNanos(maxExecutionTimeInNanos.get())
+                .build();
+    }
+
+    private void recordExecution(String label, int queueDepthOnSubmit, long waitTimeInNanos, long executionTimeInNanos) {
+        completedTaskCount.incrementAndGet();
+        totalWaitTimeInNanos.addAndGet(waitTimeInNanos);
+        updateMax(maxWaitTimeInNanos, waitTimeInNanos);
+        totalExecutionTimeInNanos.addAndGet(executionTimeInNanos);
+        updateMax(maxExecutionTimeInNanos, executionTimeInNanos);
+
+        if (slowTaskThresholdInNanos > 0 && executionTimeInNanos > slowTaskThresholdInNanos) {
+            Log.w(TAG, String.format(Locale.US, "Task '%s' blocked scheduler '%s' for %d ms (waited %d ms, queue depth %d)",
+                    label, schedulerName,
+                    TimeUnit.NANOSECONDS.toMillis(executionTimeInNanos),
+                    TimeUnit.NANOSECONDS.toMillis(waitTimeInNanos),
+                    queueDepthOnSubmit));
+        }
+
+        if (metricsListener != null) {
+            try {
+                metricsListener.onTaskExecuted(TaskMetrics.builder()
+                        .schedulerName(schedulerName)
+                        .label(label)
+                        .queueDepth(queueDepthOnSubmit)
+                        .waitTimeInNanos(waitTimeInNanos)
+                        .executionTimeInNanos(executionTimeInNanos)
+                        .build());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Metrics listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        do {
+            current = max.get();
+        } while (value > current && !max.compareAndSet(current, value));
+    }
+}
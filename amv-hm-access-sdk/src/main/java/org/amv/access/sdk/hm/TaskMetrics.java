@@ -0,0 +1,23 @@
+package org.amv.access.sdk.hm;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class TaskMetrics {
+    /**
+     * The name of the scheduler, e.g. {@link AccessSdkSchedulers#DEFAULT}.
+     */
+    private String schedulerName;
+    /**
+     * The label the task was scheduled with or the name of the scheduler.
+     */
+    private String label;
+    /**
+     * Tasks waiting in the queue when this task was submitted, including itself.
+     */
+    private int queueDepth;
+    private long waitTimeInNanos;
+    private long executionTimeInNanos;
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.subjects.PublishSubject;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -41,6 +42,7 @@ public class HmBluetoothBroadcaster implements BluetoothBroadcaster {
 
     private final CommandFactory commandFactory;
     private final Broadcaster broadcaster;
+    private final Scheduler scheduler;
     private final PublishSubject<BroadcastStateChangeEvent> broadcasterStateSubject;
     private final PublishSubject<BluetoothConnectionEvent> connectionSubject;
 
@@ -49,8 +51,13 @@ public class HmBluetoothBroadcaster implements BluetoothBroadcaster {
     private final AtomicReference<AccessCertificatePair> currentAccessCertificatePair = new AtomicReference<>();
 
     public HmBluetoothBroadcaster(CommandFactory commandFactory, Broadcaster broadcaster) {
+        this(commandFactory, broadcaster, AmvSdkSchedulers.defaultScheduler());
+    }
+
+    public HmBluetoothBroadcaster(CommandFactory commandFactory, Broadcaster broadcaster, Scheduler scheduler) {
         this.commandFactory = checkNotNull(commandFactory);
         this.broadcaster = checkNotNull(broadcaster);
+        this.scheduler = checkNotNull(scheduler);
 
         this.broadcasterStateSubject = PublishSubject.create();
         this.connectionSubject = PublishSubject.create();
@@ -107,19 +114,17 @@ public class HmBluetoothBroadcaster implements BluetoothBroadcaster {
                     stopBroadcasting();
                 }
             }, broadcastConfig);
-        }).subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        }).subscribeOn(scheduler);
     }
 
     @Override
     public Observable<BroadcastStateChangeEvent> observeBroadcastStateChanges() {
-        return broadcasterStateSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return broadcasterStateSubject.share();
     }
 
     @Override
     public Observable<BluetoothConnectionEvent> observeConnections() {
-        return connectionSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return connectionSubject.share();
     }
 
     @Override
@@ -132,7 +137,7 @@ public class HmBluetoothBroadcaster implements BluetoothBroadcaster {
             disconnectAllLinks();
             closeStreamsIfNecessary();
             return true;
-        }).subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        }).subscribeOn(scheduler);
     }
 
     private void closeStreamsIfNecessary() {
@@ -243,7 +248,7 @@ public class HmBluetoothBroadcaster implements BluetoothBroadcaster {
                 return;
             }
 
-            BluetoothConnection currentConnection = new HmBluetoothConnection(commandFactory, connectedLink);
+            BluetoothConnection currentConnection = new HmBluetoothConnection(commandFactory, connectedLink, scheduler);
             connectedLinkRef.set(connectedLink);
             bluetoothConnectionRef.set(currentConnection);
 
@@ -7,7 +7,6 @@ import com.highmobility.autoapi.CommandResolver;
 import com.highmobility.autoapi.VehicleStatus;
 import com.highmobility.hmkit.Link;
 
-import org.amv.access.sdk.hm.AmvSdkSchedulers;
 import org.amv.access.sdk.hm.vehicle.HmVehicleState;
 import org.amv.access.sdk.spi.bluetooth.BluetoothCommunicationManager;
 import org.amv.access.sdk.spi.bluetooth.BroadcastStateChangeEvent;
@@ -51,7 +50,6 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
         this.incomingFailureSubject = PublishSubject.create();
 
         this.broadcastConnectionSubscription = this.broadcaster.observeConnections()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
                 .subscribe(next -> {
                     if (next.isDisconnected()) {
                         onDisconnect();
@@ -76,26 +74,22 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
 
     @Override
     public Observable<ConnectionStateChangeEvent> observeConnectionState() {
-        return connectionStateSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return connectionStateSubject.share();
     }
 
     @Override
     public Observable<IncomingCommandEvent> observeIncomingCommands() {
-        return incomingCommandsSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return incomingCommandsSubject.share();
     }
 
     @Override
     public Observable<AccessSdkException> observeIncomingFailureMessages() {
-        return incomingFailureSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return incomingFailureSubject.share();
     }
 
     @Override
     public Observable<VehicleState> observeVehicleState() {
-        return vehicleStatusSubject.share()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return vehicleStatusSubject.share();
     }
 
     @Override
@@ -103,7 +97,6 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
         checkNotNull(command);
 
         return activeConnectionOrErr()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
                 .flatMap(connection -> connection.sendCommand(command));
     }
 
@@ -118,7 +111,6 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
                 .or(Observable.just(true));
 
         return broadcaster.terminate()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
                 .flatMap(foo -> terminateConnectionAndContinueOnError)
                 .doOnError(e -> terminateInternal())
                 .doOnNext(next -> terminateInternal());
@@ -182,12 +174,10 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
 
         Log.d(TAG, "start observing connecting state");
         connectionStateSubscription = connection.observeConnectionState()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
                 .subscribe(connectionStateSubject::onNext);
 
         Log.d(TAG, "start observing incoming commands");
         incomingCommandsSubscription = connection.observeIncomingCommands()
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
                 .doOnNext(incomingCommandsSubject::onNext)
                 .doOnNext(this::transformAndPublish)
                 .subscribe();
@@ -222,14 +212,13 @@ public class HmBluetoothCommunicationManager implements BluetoothCommunicationMa
     }
 
     private Observable<BluetoothConnection> activeConnectionOrErr() {
-        return Observable.just(1)
-                .flatMap(foo -> {
-                    BluetoothConnection bluetoothConnection = connectionRef.get();
-                    if (bluetoothConnection == null) {
-                        return Observable.error(new RuntimeException("No connection present"));
-                    }
-
-                    return Observable.just(bluetoothConnection);
-                }).subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return Observable.defer(() -> {
+            BluetoothConnection bluetoothConnection = connectionRef.get();
+            if (bluetoothConnection == null) {
+                return Observable.error(new RuntimeException("No connection present"));
+            }
+
+            return Observable.just(bluetoothConnection);
+        });
     }
 }
@@ -9,7 +9,6 @@ import com.highmobility.hmkit.error.LinkError;
 import com.highmobility.hmkit.Link;
 import com.highmobility.value.Bytes;
 
-import org.amv.access.sdk.hm.AmvSdkSchedulers;
 import org.amv.access.sdk.spi.bluetooth.ConnectionState;
 import org.amv.access.sdk.spi.bluetooth.ConnectionStateChangeEvent;
 import org.amv.access.sdk.spi.bluetooth.IncomingCommandEvent;
@@ -19,6 +18,7 @@ import org.amv.access.sdk.spi.communication.Command;
 import org.amv.access.sdk.spi.communication.CommandFactory;
 
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.subjects.PublishSubject;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -28,12 +28,14 @@ public class HmBluetoothConnection implements BluetoothConnection {
 
     private final CommandFactory commandFactory;
     private final ConnectedLink connectedLink;
+    private final Scheduler scheduler;
     private final PublishSubject<ConnectionStateChangeEvent> linkStateSubject;
     private final PublishSubject<IncomingCommandEvent> incomingCommandsSubject;
 
-    HmBluetoothConnection(CommandFactory commandFactory, ConnectedLink connectedLink) {
+    HmBluetoothConnection(CommandFactory commandFactory, ConnectedLink connectedLink, Scheduler scheduler) {
         this.commandFactory = checkNotNull(commandFactory);
         this.connectedLink = checkNotNull(connectedLink);
+        this.scheduler = checkNotNull(scheduler);
 
         this.linkStateSubject = PublishSubject.create();
         this.incomingCommandsSubject = PublishSubject.create();
@@ -68,7 +70,7 @@ public class HmBluetoothConnection implements BluetoothConnection {
                     }
                 }
             });
-        }).subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        }).subscribeOn(scheduler);
     }
 
     @Override
@@ -76,17 +78,17 @@ public class HmBluetoothConnection implements BluetoothConnection {
         return Observable.fromCallable(() -> {
             connectedLink.sendCommand(new Bytes(commandFactory.disconnect().getBytes()), new NoopCommandCallback());
             return true;
-        }).subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        }).subscribeOn(scheduler);
     }
 
     @Override
     public Observable<ConnectionStateChangeEvent> observeConnectionState() {
-        return this.linkStateSubject.share().subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return this.linkStateSubject.share();
     }
 
     @Override
     public Observable<IncomingCommandEvent> observeIncomingCommands() {
-        return incomingCommandsSubject.share().subscribeOn(AmvSdkSchedulers.defaultScheduler());
+        return incomingCommandsSubject.share();
     }
 
     private void closeStreamsIfNecessary() {
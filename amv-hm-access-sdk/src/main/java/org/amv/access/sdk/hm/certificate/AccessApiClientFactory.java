@@ -0,0 +1,36 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.client.android.AccessCertClient;
+import org.amv.access.client.android.Clients;
+import org.amv.access.client.android.DeviceCertClient;
+import org.amv.access.sdk.hm.AccessApiContext;
+
+/**
+ * Creates the http clients {@link AmvHmRemote} talks to the access api with.
+ * <p>
+ * Every client is created once per remote and reused for all requests - supply an own
+ * implementation to control connection pooling, keep-alive and timeouts of the clients.
+ */
+public interface AccessApiClientFactory {
+
+    /**
+     * @return a factory creating clients with the default settings of the access api client library
+     */
+    static AccessApiClientFactory simple() {
+        return new AccessApiClientFactory() {
+            @Override
+            public DeviceCertClient createDeviceCertClient(AccessApiContext accessApiContext) {
+                return Clients.simpleDeviceCertClient(accessApiContext.getBaseUrl());
+            }
+
+            @Override
+            public AccessCertClient createAccessCertClient(AccessApiContext accessApiContext) {
+                return Clients.simpleAccessCertClient(accessApiContext.getBaseUrl());
+            }
+        };
+    }
+
+    DeviceCertClient createDeviceCertClient(AccessApiContext accessApiContext);
+
+    AccessCertClient createAccessCertClient(AccessApiContext accessApiContext);
+}
@@ -0,0 +1,57 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatesChangeEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ * Publishes changes of stored access certificates to subscribers of a {@link LocalStorage}.
+ */
+final class AccessCertificateChangePublisher {
+    private final Subject<AccessCertificatesChangeEvent> changeSubject = PublishSubject
+            .<AccessCertificatesChangeEvent>create()
+            .toSerialized();
+
+    Observable<AccessCertificatesChangeEvent> observe() {
+        return changeSubject.hide();
+    }
+
+    void publishStored(AccessCertificatePair certificate, boolean added) {
+        Collection<AccessCertificatePair> changed = Collections.singletonList(certificate);
+        if (added) {
+            publish(changed, Collections.emptyList(), Collections.emptyList());
+        } else {
+            publish(Collections.emptyList(), changed, Collections.emptyList());
+        }
+    }
+
+    void publishRemoved(Collection<String> removedIds) {
+        publish(Collections.emptyList(), Collections.emptyList(), removedIds);
+    }
+
+    /**
+     * @return the created event - it is only published if it contains any change
+     */
+    AccessCertificatesChangeEvent publish(Collection<AccessCertificatePair> added,
+                 Collection<AccessCertificatePair> updated,
+                 Collection<String> removedIds) {
+        AccessCertificatesChangeEvent event = SimpleAccessCertificatesChangeEvent.builder()
+                .initial(false)
+                .addedAccessCertificates(added)
+                .updatedAccessCertificates(updated)
+                .removedAccessCertificateIds(removedIds)
+                .build();
+
+        if (!event.isEmpty()) {
+            changeSubject.onNext(event);
+        }
+        return event;
+    }
+}
@@ -0,0 +1,130 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import io.reactivex.Observable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Streaming json reading and writing of the values kept by {@link HmLocalStorage}.
+ * <p>
+ * Does not rely on reflection and never builds an intermediate object tree.
+ */
+final class AccessCertificateJson {
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_DEVICE_ACCESS_CERTIFICATE = "device_access_certificate";
+    private static final String FIELD_VEHICLE_ACCESS_CERTIFICATE = "vehicle_access_certificate";
+
+    private static final TypeAdapter<SerializableAccessCertificatePair> SERIALIZABLE_ACCESS_CERTIFICATE_PAIR_ADAPTER =
+            new TypeAdapter<SerializableAccessCertificatePair>() {
+                @Override
+                public void write(JsonWriter out, SerializableAccessCertificatePair value) throws IOException {
+                    if (value == null) {
+                        out.nullValue();
+                        return;
+                    }
+                    out.beginObject();
+                    out.name(FIELD_ID).value(value.getId());
+                    out.name(FIELD_DEVICE_ACCESS_CERTIFICATE).value(value.getDeviceAccessCertificate());
+                    out.name(FIELD_VEHICLE_ACCESS_CERTIFICATE).value(value.getVehicleAccessCertificate());
+                    out.endObject();
+                }
+
+                @Override
+                public SerializableAccessCertificatePair read(JsonReader in) throws IOException {
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        return null;
+                    }
+
+                    SerializableAccessCertificatePair value = new SerializableAccessCertificatePair();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String name = in.nextName();
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            continue;
+                        }
+                        switch (name) {
+                            case FIELD_ID:
+                                value.setId(in.nextString());
+                                break;
+                            case FIELD_DEVICE_ACCESS_CERTIFICATE:
+                                value.setDeviceAccessCertificate(in.nextString());
+                                break;
+                            case FIELD_VEHICLE_ACCESS_CERTIFICATE:
+                                value.setVehicleAccessCertificate(in.nextString());
+                                break;
+                            default:
+                                in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    return value;
+                }
+            };
+
+    static List<String> readIds(String json) throws IOException {
+        checkNotNull(json);
+
+        List<String> ids = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ids.add(reader.nextString());
+            }
+            reader.endArray();
+        }
+        return ids;
+    }
+
+    static String writeIds(Collection<String> ids) throws IOException {
+        checkNotNull(ids);
+
+        StringWriter stringWriter = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(stringWriter)) {
+            writer.beginArray();
+            for (String id : ids) {
+                writer.value(id);
+            }
+            writer.endArray();
+        }
+        return stringWriter.toString();
+    }
+
+    /**
+     * Lazily parses a json array of access certificate pairs. Elements are read one at a time
+     * as they are requested - parsing stops as soon as the subscriber is disposed.
+     */
+    static Observable<SerializableAccessCertificatePair> readAccessCertificates(String json) {
+        checkNotNull(json);
+
+        return Observable.generate(() -> {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.beginArray();
+            return reader;
+        }, (reader, emitter) -> {
+            if (reader.hasNext()) {
+                emitter.onNext(SERIALIZABLE_ACCESS_CERTIFICATE_PAIR_ADAPTER.read(reader));
+            } else {
+                reader.endArray();
+                emitter.onComplete();
+            }
+        }, JsonReader::close);
+    }
+
+    private AccessCertificateJson() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,90 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Charsets;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encodes access certificate pairs as compact binary records.
+ * <p>
+ * Layout of a version 1 record (all integers are big-endian):
+ * <pre>
+ * +---------+------------+----------+-------------+-------------+--------------+--------------+
+ * | version | id length  | id       | device cert | device cert | vehicle cert | vehicle cert |
+ * | 1 byte  | 2 bytes    | utf-8    | length 4 b  | raw bytes   | length 4 b   | raw bytes    |
+ * +---------+------------+----------+-------------+-------------+--------------+--------------+
+ * </pre>
+ */
+final class AccessCertificatePairCodec {
+    static final byte VERSION_1 = 1;
+
+    private static final int MAX_ID_LENGTH = 0xFFFF;
+
+    static byte[] encode(AccessCertificatePair accessCertificatePair) {
+        checkNotNull(accessCertificatePair);
+
+        byte[] id = accessCertificatePair.getId().getBytes(Charsets.UTF_8);
+        byte[] deviceAccessCertificate = accessCertificatePair.getDeviceAccessCertificate().toByteArray();
+        byte[] vehicleAccessCertificate = accessCertificatePair.getVehicleAccessCertificate().toByteArray();
+
+        checkArgument(id.length <= MAX_ID_LENGTH, "Id of access certificate pair is too long");
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + id.length
+                + 4 + deviceAccessCertificate.length
+                + 4 + vehicleAccessCertificate.length);
+
+        buffer.put(VERSION_1);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        buffer.putInt(deviceAccessCertificate.length);
+        buffer.put(deviceAccessCertificate);
+        buffer.putInt(vehicleAccessCertificate.length);
+        buffer.put(vehicleAccessCertificate);
+
+        return buffer.array();
+    }
+
+    static AccessCertificatePair decode(byte[] record) {
+        checkNotNull(record);
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+
+            byte version = buffer.get();
+            if (version != VERSION_1) {
+                throw new IllegalArgumentException("Unsupported access certificate record version: " + version);
+            }
+
+            String id = new String(readBytes(buffer, buffer.getShort() & MAX_ID_LENGTH), Charsets.UTF_8);
+            byte[] deviceAccessCertificate = readBytes(buffer, buffer.getInt());
+            byte[] vehicleAccessCertificate = readBytes(buffer, buffer.getInt());
+
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Malformed access certificate record: trailing bytes");
+            }
+
+            return HmAccessCertificatePairs.create(id, deviceAccessCertificate, vehicleAccessCertificate);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed access certificate record: truncated", e);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed access certificate record: invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private AccessCertificatePairCodec() {
+        throw new UnsupportedOperationException();
+    }
+}
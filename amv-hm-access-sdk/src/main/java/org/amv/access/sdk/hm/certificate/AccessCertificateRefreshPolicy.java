@@ -0,0 +1,57 @@
+package org.amv.access.sdk.hm.certificate;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import lombok.Value;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Configures when {@link AccessCertificateRefreshScheduler} refreshes access certificates.
+ * <p>
+ * Access certificates are refreshed every {@link #getRefreshIntervalInMillis()} - or earlier if a
+ * stored access certificate expires within {@link #getRefreshAheadOfExpiryInMillis()}. Refreshes
+ * are never started more often than every {@link #getMinRefreshIntervalInMillis()} - e.g. while
+ * the remote is unreachable or keeps returning an access certificate close to its expiry.
+ */
+@Value
+@Builder
+public class AccessCertificateRefreshPolicy {
+
+    public static AccessCertificateRefreshPolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * Never less than the min refresh interval.
+     */
+    @Builder.Default
+    private long refreshIntervalInMillis = TimeUnit.HOURS.toMillis(6);
+    @Builder.Default
+    private long refreshAheadOfExpiryInMillis = TimeUnit.HOURS.toMillis(24);
+    @Builder.Default
+    private long minRefreshIntervalInMillis = TimeUnit.MINUTES.toMillis(5);
+
+    public long getRefreshIntervalInMillis() {
+        return Math.max(refreshIntervalInMillis, minRefreshIntervalInMillis);
+    }
+
+    public static class AccessCertificateRefreshPolicyBuilder {
+
+        public AccessCertificateRefreshPolicyBuilder refreshInterval(long refreshInterval, TimeUnit unit) {
+            checkArgument(refreshInterval > 0, "Refresh interval must be positive");
+            return refreshIntervalInMillis(unit.toMillis(refreshInterval));
+        }
+
+        public AccessCertificateRefreshPolicyBuilder refreshAheadOfExpiry(long refreshAheadOfExpiry, TimeUnit unit) {
+            checkArgument(refreshAheadOfExpiry >= 0, "Refresh ahead of expiry must not be negative");
+            return refreshAheadOfExpiryInMillis(unit.toMillis(refreshAheadOfExpiry));
+        }
+
+        public AccessCertificateRefreshPolicyBuilder minRefreshInterval(long minRefreshInterval, TimeUnit unit) {
+            checkArgument(minRefreshInterval > 0, "Min refresh interval must be positive");
+            return minRefreshIntervalInMillis(unit.toMillis(minRefreshInterval));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.amv.access.sdk.hm.certificate;
+
+import android.util.Log;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.certificate.CertificateManager;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+
+import lombok.Value;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Refreshes access certificates in the background ahead of their expiry and periodically
+ * otherwise - see {@link AccessCertificateRefreshPolicy}.
+ * <p>
+ * Expiry dates are the ends of validity of the stored device access certificates as found by
+ * {@link LocalStorage#findEarliestValidUntilAfter(long)} and are compared with the time of the
+ * given scheduler. Access certificates are refreshed ahead of each end date only once. Failed refreshes are logged and tried again with the next
+ * refresh. Nothing is refreshed until {@link #start()} is called.
+ */
+public class AccessCertificateRefreshScheduler {
+    private static final String TAG = "AccessCertificateRefreshScheduler";
+
+    private final CertificateManager certificateManager;
+    private final LocalStorage localStorage;
+    private final AccessCertificateRefreshPolicy policy;
+    private final Scheduler scheduler;
+
+    private final Set<Long> refreshedAheadOfExpiry = new HashSet<>();
+
+    private Disposable subscription;
+
+    public AccessCertificateRefreshScheduler(CertificateManager certificateManager,
+                                             LocalStorage localStorage,
+                                             AccessCertificateRefreshPolicy policy,
+                                             Scheduler scheduler) {
+        this.certificateManager = checkNotNull(certificateManager);
+        this.localStorage = checkNotNull(localStorage);
+        this.policy = checkNotNull(policy);
+        checkArgument(policy.getMinRefreshIntervalInMillis() > 0, "Min refresh interval must be positive");
+        this.scheduler = checkNotNull(scheduler);
+    }
+
+    /**
+     * Starts refreshing unless already started. The first refresh is run right away if a stored
+     * access certificate is about to expire.
+     */
+    public synchronized void start() {
+        if (subscription != null) {
+            return;
+        }
+
+        Log.d(TAG, "start");
+        this.subscription = refreshAfterDelay(0)
+                .andThen(refreshAfterDelay(policy.getMinRefreshIntervalInMillis()).repeat())
+                .subscribe();
+    }
+
+    public synchronized void stop() {
+        if (subscription != null) {
+            Log.d(TAG, "stop");
+            subscription.dispose();
+            subscription = null;
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return subscription != null;
+    }
+
+    private Completable refreshAfterDelay(long minDelayInMillis) {
+        return nextRefresh(minDelayInMillis)
+                .flatMapCompletable(nextRefresh -> {
+                    Log.d(TAG, "next refresh in " + nextRefresh.getDelayInMillis() + "ms");
+                    return Completable.timer(nextRefresh.getDelayInMillis(), TimeUnit.MILLISECONDS, scheduler)
+                            .doOnComplete(() -> markRefreshedAheadOfExpiry(nextRefresh.getAheadOfExpiry()))
+                            .andThen(refresh());
+                });
+    }
+
+    private Completable refresh() {
+        return certificateManager.refreshAccessCertificates()
+                .ignoreElements()
+                .doOnComplete(() -> Log.d(TAG, "refresh finished"))
+                .doOnError(e -> Log.w(TAG, "refresh failed: " + e.getMessage()))
+                .onErrorComplete();
+    }
+
+    private Single<NextRefresh> nextRefresh(long minDelayInMillis) {
+        return Single.defer(() -> {
+            long now = scheduler.now(TimeUnit.MILLISECONDS);
+            forgetRefreshedAheadOfExpiryBefore(now);
+
+            return earliestExpiryAfter(now)
+                    .onErrorReturnItem(Optional.absent())
+                    .map(earliestExpiry -> {
+                        long delay = policy.getRefreshIntervalInMillis();
+                        Optional<Long> aheadOfExpiry = Optional.absent();
+
+                        if (earliestExpiry.isPresent()) {
+                            long delayUntilAheadOfExpiry = earliestExpiry.get()
+                                    - policy.getRefreshAheadOfExpiryInMillis() - now;
+                            if (delayUntilAheadOfExpiry < delay) {
+                                delay = delayUntilAheadOfExpiry;
+                                aheadOfExpiry = earliestExpiry;
+                            }
+                        }
+                        return new NextRefresh(Math.max(delay, minDelayInMillis), aheadOfExpiry);
+                    });
+        });
+    }
+
+    /**
+     * Access certificates that already expired are ignored - they are not renewed by the remote,
+     * refreshing them ahead of the periodic refresh would only repeat the same request. The same
+     * holds for end dates that have already been refreshed ahead of once: if the remote did not
+     * issue a renewed access certificate, it is refreshed periodically again.
+     */
+    private Single<Optional<Long>> earliestExpiryAfter(long time) {
+        return localStorage.findEarliestValidUntilAfter(time)
+                .first(Optional.absent())
+                .flatMap(expiry -> expiry.isPresent() && isRefreshedAheadOfExpiry(expiry.get()) ?
+                        earliestExpiryAfter(expiry.get()) :
+                        Single.just(expiry));
+    }
+
+    private synchronized boolean isRefreshedAheadOfExpiry(long expiry) {
+        return refreshedAheadOfExpiry.contains(expiry);
+    }
+
+    private synchronized void markRefreshedAheadOfExpiry(Optional<Long> expiry) {
+        if (expiry.isPresent()) {
+            refreshedAheadOfExpiry.add(expiry.get());
+        }
+    }
+
+    private synchronized void forgetRefreshedAheadOfExpiryBefore(long now) {
+        Iterator<Long> expiries = refreshedAheadOfExpiry.iterator();
+        while (expiries.hasNext()) {
+            if (expiries.next() <= now) {
+                expiries.remove();
+            }
+        }
+    }
+
+    @Value
+    private static class NextRefresh {
+        private long delayInMillis;
+        /**
+         * The end date this refresh is run ahead of or absent for a periodic refresh.
+         */
+        private Optional<Long> aheadOfExpiry;
+    }
+}
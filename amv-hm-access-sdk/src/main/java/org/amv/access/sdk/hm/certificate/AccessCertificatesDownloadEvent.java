@@ -0,0 +1,55 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An event of a conditional access certificate download - see
+ * {@link Remote#downloadAccessCertificatePages(org.amv.access.sdk.spi.crypto.Keys,
+ * org.amv.access.sdk.spi.certificate.DeviceCertificate, Optional)}.
+ * <p>
+ * A download either emits {@link Type#PAGE} events followed by a single {@link Type#COMPLETED}
+ * event or - if the access certificates match the watermark of a previous download - a single
+ * {@link Type#NOT_MODIFIED} event.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AccessCertificatesDownloadEvent {
+
+    public enum Type {
+        PAGE,
+        COMPLETED,
+        NOT_MODIFIED
+    }
+
+    public static AccessCertificatesDownloadEvent page(List<AccessCertificatePair> accessCertificates) {
+        return new AccessCertificatesDownloadEvent(Type.PAGE, checkNotNull(accessCertificates), Optional.absent());
+    }
+
+    /**
+     * @param watermark identifies the downloaded access certificates or empty if not supported by the remote
+     */
+    public static AccessCertificatesDownloadEvent completed(Optional<String> watermark) {
+        return new AccessCertificatesDownloadEvent(Type.COMPLETED,
+                Collections.emptyList(), checkNotNull(watermark));
+    }
+
+    public static AccessCertificatesDownloadEvent notModified(String watermark) {
+        return new AccessCertificatesDownloadEvent(Type.NOT_MODIFIED,
+                Collections.emptyList(), Optional.of(watermark));
+    }
+
+    private final Type type;
+    private final List<AccessCertificatePair> accessCertificates;
+    private final Optional<String> watermark;
+}
@@ -2,27 +2,39 @@ package org.amv.access.sdk.hm.certificate;
 
 import android.util.Log;
 
-import com.highmobility.crypto.Crypto;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.highmobility.utils.Base64;
 import com.highmobility.value.Bytes;
 
 import org.amv.access.client.android.AccessApiException;
 import org.amv.access.client.android.AccessCertClient;
-import org.amv.access.client.android.Clients;
 import org.amv.access.client.android.DeviceCertClient;
+import org.amv.access.client.android.model.AccessCertificateDto;
 import org.amv.access.client.android.model.CreateDeviceCertificateRequestDto;
 import org.amv.access.client.android.model.DeviceCertificateDto;
 import org.amv.access.client.android.model.ErrorResponseDto;
 import org.amv.access.sdk.hm.AccessApiContext;
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
 import org.amv.access.sdk.hm.AmvSdkSchedulers;
 import org.amv.access.sdk.hm.error.CertificateRevokeException;
+import org.amv.access.sdk.hm.util.SingleFlight;
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
 import org.amv.access.sdk.spi.crypto.Keys;
 import org.amv.access.sdk.spi.identity.SerialNumber;
 
 import java.net.UnknownHostException;
-import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
 
@@ -30,12 +42,62 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class AmvHmRemote implements Remote {
+    public static final int DEFAULT_PAGE_CONCURRENCY = 1;
+
     private static final String TAG = "AmvHmRemote";
+    private static final int FIRST_PAGE = 1;
+    private static final int SIGNED_NONCE_POOL_SIZE = 4;
+    private static final long SIGNED_NONCE_MAX_AGE_IN_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     private final AccessApiContext accessApiContext;
+    private final AccessSdkSchedulers schedulers;
+    private final Supplier<DeviceCertClient> deviceCertClient;
+    private final Supplier<AccessCertClient> accessCertClient;
+    private final int pageConcurrency;
+    private final SingleFlight<String, DeviceCertificateWithIssuerKey> downloadDeviceCertificateFlight =
+            new SingleFlight<>();
+    private final SignedNoncePool signedNoncePool;
 
     public AmvHmRemote(AccessApiContext accessApiContext) {
+        this(accessApiContext, AmvSdkSchedulers.shared());
+    }
+
+    public AmvHmRemote(AccessApiContext accessApiContext, AccessSdkSchedulers schedulers) {
+        this(accessApiContext, schedulers, AccessApiClientFactory.simple());
+    }
+
+    public AmvHmRemote(AccessApiContext accessApiContext,
+                       AccessSdkSchedulers schedulers,
+                       AccessApiClientFactory clientFactory) {
+        this(accessApiContext, schedulers, clientFactory, DEFAULT_PAGE_CONCURRENCY);
+    }
+
+    /**
+     * @param pageConcurrency the number of access certificate pages requested at once after the
+     *                        first one - it is also bounded by the size of the remote scheduler
+     */
+    public AmvHmRemote(AccessApiContext accessApiContext,
+                       AccessSdkSchedulers schedulers,
+                       AccessApiClientFactory clientFactory,
+                       int pageConcurrency) {
+        checkArgument(pageConcurrency > 0, "Page concurrency must be positive");
         this.accessApiContext = checkNotNull(accessApiContext);
+        this.schedulers = checkNotNull(schedulers);
+        this.pageConcurrency = pageConcurrency;
+        checkNotNull(clientFactory);
+
+        this.signedNoncePool = new SignedNoncePool(SIGNED_NONCE_POOL_SIZE, SIGNED_NONCE_MAX_AGE_IN_MILLIS,
+                schedulers.cryptoScheduler("createNonceAndSignature"),
+                schedulers.remoteScheduler("createNonceAndSignature"));
+
+        // clients keep their connection pool and tls sessions - they are created once and reused
+        this.deviceCertClient = Suppliers.memoize(() -> clientFactory.createDeviceCertClient(accessApiContext));
+        this.accessCertClient = Suppliers.memoize(() -> clientFactory.createAccessCertClient(accessApiContext));
+    }
+
+    @Override
+    public void prepare(Keys keys) {
+        signedNoncePool.prefill(checkNotNull(keys));
     }
 
     @Override
@@ -43,15 +105,13 @@ public class AmvHmRemote implements Remote {
         checkNotNull(keys);
 
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.remoteScheduler())
+                .subscribeOn(schedulers.remoteScheduler("createDeviceCertificate"))
                 .doOnNext(foo -> Log.d(TAG, "createDeviceCertificate"))
                 .flatMap(foo -> {
-                    DeviceCertClient deviceCertClient = Clients.simpleDeviceCertClient(accessApiContext.getBaseUrl());
-
                     CreateDeviceCertificateRequestDto body = new CreateDeviceCertificateRequestDto();
                     body.device_public_key = Base64.encode(keys.getPublicKey());
 
-                    return deviceCertClient.createDeviceCertificate(
+                    return deviceCertClient.get().createDeviceCertificate(
                             accessApiContext.getAppId(), accessApiContext.getApiKey(), body);
                 })
                 .onErrorResumeNext(e -> {
@@ -64,23 +124,29 @@ public class AmvHmRemote implements Remote {
                 .doOnNext(foo -> Log.d(TAG, "createDeviceCertificate finished"));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Concurrent calls for the same device serial and keys share one request.
+     */
     @Override
     public Observable<DeviceCertificateWithIssuerKey> downloadDeviceCertificate(Keys keys,
                                                                                 SerialNumber deviceSerial) {
         checkNotNull(deviceSerial);
         checkNotNull(keys);
 
+        String key = deviceSerial.getSerialNumberHex() + ":" + keys.getPublicKeyHex();
+        return downloadDeviceCertificateFlight.execute(key, () -> doDownloadDeviceCertificate(keys, deviceSerial));
+    }
+
+    private Observable<DeviceCertificateWithIssuerKey> doDownloadDeviceCertificate(Keys keys,
+                                                                                   SerialNumber deviceSerial) {
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.remoteScheduler())
+                .subscribeOn(schedulers.remoteScheduler("downloadDeviceCertificate"))
                 .doOnNext(foo -> Log.d(TAG, "downloadDeviceCertificate"))
-                .flatMap(foo -> {
-                    DeviceCertClient deviceCertClient = Clients.simpleDeviceCertClient(accessApiContext.getBaseUrl());
-
-                    String[] nonce = createNonceAndSignature(keys);
-
-                    return deviceCertClient.fetchDeviceCertificate(
-                            nonce[0], nonce[1], deviceSerial.getSerialNumberHex());
-                })
+                .flatMap(foo -> createNonceAndSignature(keys))
+                .flatMap(nonce -> deviceCertClient.get().fetchDeviceCertificate(
+                        nonce[0], nonce[1], deviceSerial.getSerialNumberHex()))
                 .onErrorResumeNext(e -> {
                     String errorMessage = getErrorMessage(e);
                     return Observable.error(new RuntimeException(errorMessage, e));
@@ -93,29 +159,137 @@ public class AmvHmRemote implements Remote {
 
     @Override
     public Observable<AccessCertificatePair> downloadAccessCertificates(Keys keys, DeviceCertificate deviceCertificate) {
+        return downloadAccessCertificatePages(keys, deviceCertificate)
+                .flatMapIterable(page -> page);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Responses carry no page count: pages are requested until one is empty or only contains
+     * access certificates of previous pages. Pages after the first one are requested
+     * concurrently but emitted in order.
+     */
+    @Override
+    public Observable<List<AccessCertificatePair>> downloadAccessCertificatePages(Keys keys,
+                                                                                  DeviceCertificate deviceCertificate) {
         checkNotNull(keys);
         checkNotNull(deviceCertificate);
 
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.remoteScheduler())
-                .doOnNext(foo -> Log.d(TAG, "downloadAccessCertificates"))
-                .flatMap(foo -> {
-                    AccessCertClient client = Clients.simpleAccessCertClient(accessApiContext.getBaseUrl());
+        return fetchAccessCertificatePages(keys, deviceCertificate)
+                .map(AmvHmRemote::toAccessCertificatePairs);
+    }
 
-                    String[] nonce = createNonceAndSignature(keys);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The access api does not support conditional requests: the watermark is a digest of the
+     * downloaded access certificates. Without a watermark every page is emitted as soon as it
+     * arrives. With a watermark the raw pages are kept until the digest is known so that unchanged
+     * access certificates are neither parsed nor stored.
+     */
+    @Override
+    public Observable<AccessCertificatesDownloadEvent> downloadAccessCertificatePages(Keys keys,
+                                                                                      DeviceCertificate deviceCertificate,
+                                                                                      Optional<String> watermark) {
+        checkNotNull(keys);
+        checkNotNull(deviceCertificate);
+        checkNotNull(watermark);
+
+        return Observable.defer(() -> {
+            Hasher hasher = Hashing.sha256().newHasher()
+                    .putUnencodedChars(deviceCertificate.getDeviceSerial().getSerialNumberHex()).putChar('\n');
+            Observable<List<AccessCertificateDto>> pages = fetchAccessCertificatePages(keys, deviceCertificate)
+                    .doOnNext(page -> putAccessCertificates(hasher, page));
+
+            if (!watermark.isPresent()) {
+                return pages
+                        .map(page -> AccessCertificatesDownloadEvent.page(toAccessCertificatePairs(page)))
+                        .concatWith(Observable.fromCallable(() -> AccessCertificatesDownloadEvent
+                                .completed(Optional.of(hasher.hash().toString()))));
+            }
 
-                    String serialNumberHex = deviceCertificate
-                            .getDeviceSerial().getSerialNumberHex();
-                    return client.fetchAccessCertificates(nonce[0], nonce[1], serialNumberHex, 1);
-                })
+            return pages
+                    .toList()
+                    .flatMapObservable(rawPages -> {
+                        String currentWatermark = hasher.hash().toString();
+                        if (currentWatermark.equals(watermark.get())) {
+                            Log.d(TAG, "downloadAccessCertificates not modified");
+                            return Observable.just(AccessCertificatesDownloadEvent.notModified(currentWatermark));
+                        }
+
+                        return Observable.fromIterable(rawPages)
+                                .map(page -> AccessCertificatesDownloadEvent.page(toAccessCertificatePairs(page)))
+                                .concatWith(Observable.just(AccessCertificatesDownloadEvent
+                                        .completed(Optional.of(currentWatermark))));
+                    });
+        });
+    }
+
+    private Observable<List<AccessCertificateDto>> fetchAccessCertificatePages(Keys keys,
+                                                                                DeviceCertificate deviceCertificate) {
+        String serialNumberHex = deviceCertificate.getDeviceSerial().getSerialNumberHex();
+
+        return Observable.defer(() -> {
+            Log.d(TAG, "downloadAccessCertificates");
+
+            Set<String> downloadedIds = new HashSet<>();
+            return fetchAccessCertificatePage(keys, serialNumberHex, FIRST_PAGE)
+                    .concatMap(firstPage -> {
+                        if (firstPage.isEmpty()) {
+                            return Observable.just(firstPage);
+                        }
+
+                        Observable<List<AccessCertificateDto>> nextPages = Observable
+                                .range(FIRST_PAGE + 1, Integer.MAX_VALUE - FIRST_PAGE - 1)
+                                .concatMapEager(page -> fetchAccessCertificatePage(keys, serialNumberHex, page),
+                                        pageConcurrency, 1);
+
+                        return Observable.just(firstPage).concatWith(nextPages);
+                    })
+                    .map(page -> {
+                        List<AccessCertificateDto> accessCertificates = new ArrayList<>(page.size());
+                        for (AccessCertificateDto accessCertificateDto : page) {
+                            if (downloadedIds.add(accessCertificateDto.id)) {
+                                accessCertificates.add(accessCertificateDto);
+                            }
+                        }
+                        return accessCertificates;
+                    })
+                    .takeWhile(accessCertificates -> !accessCertificates.isEmpty())
+                    .doOnComplete(() -> Log.d(TAG, "downloadAccessCertificates finished: "
+                            + downloadedIds.size() + " access certificates"));
+        });
+    }
+
+    private Observable<List<AccessCertificateDto>> fetchAccessCertificatePage(Keys keys, String serialNumberHex, int page) {
+        return createNonceAndSignature(keys)
+                .flatMap(nonce -> accessCertClient.get()
+                        .fetchAccessCertificates(nonce[0], nonce[1], serialNumberHex, page))
                 .onErrorResumeNext(e -> {
                     String errorMessage = getErrorMessage(e);
                     return Observable.error(new RuntimeException(errorMessage, e));
                 })
-                .map(response -> response.access_certificates)
-                .doOnNext(foo -> Log.d(TAG, "downloadAccessCertificates finished"))
-                .flatMapIterable(val -> val)
-                .map(HmAccessCertificatePairs::create);
+                .map(response -> response.access_certificates != null ?
+                        response.access_certificates : Collections.<AccessCertificateDto>emptyList())
+                .doOnNext(accessCertificates -> Log.d(TAG, "downloadAccessCertificates page " + page
+                        + ": " + accessCertificates.size() + " access certificates"));
+    }
+
+    private static List<AccessCertificatePair> toAccessCertificatePairs(List<AccessCertificateDto> page) {
+        List<AccessCertificatePair> accessCertificates = new ArrayList<>(page.size());
+        for (AccessCertificateDto accessCertificateDto : page) {
+            accessCertificates.add(HmAccessCertificatePairs.create(accessCertificateDto));
+        }
+        return accessCertificates;
+    }
+
+    private static void putAccessCertificates(Hasher hasher, List<AccessCertificateDto> page) {
+        for (AccessCertificateDto accessCertificateDto : page) {
+            hasher.putUnencodedChars(Strings.nullToEmpty(accessCertificateDto.id)).putChar('\n')
+                    .putUnencodedChars(Strings.nullToEmpty(accessCertificateDto.device_access_certificate)).putChar('\n')
+                    .putUnencodedChars(Strings.nullToEmpty(accessCertificateDto.vehicle_access_certificate)).putChar('\n');
+        }
     }
 
     @Override
@@ -129,17 +303,12 @@ public class AmvHmRemote implements Remote {
         );
     }
 
-    private String[] createNonceAndSignature(Keys keys) {
-        byte[] nonce = generateNonce();
-        byte[] nonceSignature = Crypto.sign(nonce, keys.getPrivateKey()).getByteArray();
-        return new String[]{Base64.encode(nonce), Base64.encode(nonceSignature)};
-    }
-
-    private byte[] generateNonce() {
-        SecureRandom random = new SecureRandom();
-        byte[] nonce = new byte[64];
-        random.nextBytes(nonce);
-        return nonce;
+    /**
+     * Takes a nonce signed ahead of time - or signs one on the crypto scheduler if none is left -
+     * and emits on the remote scheduler. Each nonce is used for a single request only.
+     */
+    private Observable<String[]> createNonceAndSignature(Keys keys) {
+        return signedNoncePool.take(keys);
     }
 
     private String getErrorMessage(Throwable error) {
@@ -0,0 +1,537 @@
+package org.amv.access.sdk.hm.certificate;
+
+import android.util.Log;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link LocalStorage} decorator holding decoded values in memory.
+ * <p>
+ * The first read of a value is delegated and its result is cached. Subsequent reads
+ * are served from memory without touching the underlying storage. All mutating operations
+ * are written through to the delegate and update the cache after they succeeded.
+ */
+public class CachingLocalStorage implements LocalStorage {
+    private static final String TAG = "CachingLocalStorage";
+
+    private final LocalStorage delegate;
+
+    private final Object lock = new Object();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    // incremented on every mutation to prevent stale reads from populating the cache
+    private long generation = 0L;
+
+    private DeviceCertificate deviceCertificate;
+    private byte[] issuerPublicKey;
+    private Keys keys;
+    private AccessCertificateIndex accessCertificates;
+
+    public CachingLocalStorage(LocalStorage delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    /**
+     * @return the number of reads served from memory
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of reads that had to be delegated
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Drop all cached values. The next read of each value will be delegated.
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            generation++;
+            deviceCertificate = null;
+            issuerPublicKey = null;
+            keys = null;
+            accessCertificates = null;
+        }
+    }
+
+    @Override
+    public Observable<DeviceCertificate> findDeviceCertificate() {
+        return Observable.defer(() -> {
+            DeviceCertificate cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = deviceCertificate;
+                currentGeneration = generation;
+            }
+
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return Observable.just(cached);
+            }
+
+            missCount.incrementAndGet();
+            return delegate.findDeviceCertificate()
+                    .doOnNext(val -> {
+                        synchronized (lock) {
+                            if (generation == currentGeneration) {
+                                deviceCertificate = val;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeDeviceCertificate(DeviceCertificate deviceCertificate) {
+        checkNotNull(deviceCertificate);
+
+        return Observable.defer(() -> {
+            long currentGeneration;
+            synchronized (lock) {
+                this.deviceCertificate = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.storeDeviceCertificate(deviceCertificate)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (success && generation == currentGeneration) {
+                                this.deviceCertificate = deviceCertificate;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<byte[]> findIssuerPublicKey() {
+        return Observable.defer(() -> {
+            byte[] cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = issuerPublicKey;
+                currentGeneration = generation;
+            }
+
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return Observable.just(Arrays.copyOf(cached, cached.length));
+            }
+
+            missCount.incrementAndGet();
+            return delegate.findIssuerPublicKey()
+                    .doOnNext(val -> {
+                        synchronized (lock) {
+                            if (generation == currentGeneration) {
+                                issuerPublicKey = Arrays.copyOf(val, val.length);
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeIssuerPublicKey(byte[] issuerPublicKey) {
+        checkNotNull(issuerPublicKey);
+
+        byte[] issuerPublicKeyCopy = Arrays.copyOf(issuerPublicKey, issuerPublicKey.length);
+
+        return Observable.defer(() -> {
+            long currentGeneration;
+            synchronized (lock) {
+                this.issuerPublicKey = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.storeIssuerPublicKey(issuerPublicKeyCopy)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (success && generation == currentGeneration) {
+                                this.issuerPublicKey = issuerPublicKeyCopy;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeDeviceCertificateWithIssuerKey(DeviceCertificateWithIssuerKey deviceCertificateWithIssuerKey) {
+        checkNotNull(deviceCertificateWithIssuerKey);
+
+        DeviceCertificate deviceCertificate = deviceCertificateWithIssuerKey.getDeviceCertificate();
+        byte[] issuerPublicKey = deviceCertificateWithIssuerKey.getIssuerPublicKey();
+        byte[] issuerPublicKeyCopy = Arrays.copyOf(issuerPublicKey, issuerPublicKey.length);
+
+        return Observable.defer(() -> {
+            long currentGeneration;
+            synchronized (lock) {
+                this.deviceCertificate = null;
+                this.issuerPublicKey = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.storeDeviceCertificateWithIssuerKey(deviceCertificateWithIssuerKey)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (success && generation == currentGeneration) {
+                                this.deviceCertificate = deviceCertificate;
+                                this.issuerPublicKey = issuerPublicKeyCopy;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Keys> findKeys() {
+        return Observable.defer(() -> {
+            Keys cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = keys;
+                currentGeneration = generation;
+            }
+
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return Observable.just(cached);
+            }
+
+            missCount.incrementAndGet();
+            return delegate.findKeys()
+                    .doOnNext(val -> {
+                        synchronized (lock) {
+                            if (generation == currentGeneration) {
+                                keys = val;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeKeys(Keys keys) {
+        checkNotNull(keys);
+
+        return Observable.defer(() -> {
+            long currentGeneration;
+            synchronized (lock) {
+                this.keys = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.storeKeys(keys)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (success && generation == currentGeneration) {
+                                this.keys = keys;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificates(List<AccessCertificatePair> certificates) {
+        return syncAccessCertificates(certificates)
+                .map(foo -> true);
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> syncAccessCertificates(List<AccessCertificatePair> certificates) {
+        checkNotNull(certificates);
+
+        AccessCertificateIndex index = AccessCertificateIndex.of(certificates);
+
+        return Observable.defer(() -> {
+            long currentGeneration;
+            synchronized (lock) {
+                this.accessCertificates = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.syncAccessCertificates(certificates)
+                    .doOnNext(event -> {
+                        synchronized (lock) {
+                            if (generation == currentGeneration) {
+                                this.accessCertificates = index;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> mergeAccessCertificates(List<AccessCertificatePair> certificates) {
+        checkNotNull(certificates);
+
+        return Observable.defer(() -> {
+            AccessCertificateIndex cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = accessCertificates;
+                this.accessCertificates = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.mergeAccessCertificates(certificates)
+                    .doOnNext(event -> {
+                        synchronized (lock) {
+                            if (generation != currentGeneration) {
+                                // a concurrent mutation started from the same snapshot
+                                this.accessCertificates = null;
+                                return;
+                            }
+                            if (cached != null) {
+                                Map<String, AccessCertificatePair> copy = new LinkedHashMap<>(cached.byId);
+                                for (AccessCertificatePair certificate : certificates) {
+                                    copy.put(certificate.getId(), certificate);
+                                }
+                                this.accessCertificates = new AccessCertificateIndex(copy);
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificate(AccessCertificatePair certificate) {
+        checkNotNull(certificate);
+
+        return Observable.defer(() -> {
+            AccessCertificateIndex cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = accessCertificates;
+                this.accessCertificates = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.storeAccessCertificate(certificate)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (generation != currentGeneration) {
+                                // a concurrent mutation started from the same snapshot
+                                this.accessCertificates = null;
+                                return;
+                            }
+                            if (success && cached != null) {
+                                Map<String, AccessCertificatePair> copy = new LinkedHashMap<>(cached.byId);
+                                copy.put(certificate.getId(), certificate);
+                                this.accessCertificates = new AccessCertificateIndex(copy);
+                            } else {
+                                this.accessCertificates = null;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> findAccessCertificates() {
+        return findAccessCertificateIndex()
+                .flatMapIterable(index -> index.byId.values());
+    }
+
+    @Override
+    public Observable<Optional<AccessCertificatePair>> findAccessCertificateById(String accessCertificateId) {
+        checkNotNull(accessCertificateId);
+
+        return findAccessCertificateIndex()
+                .map(index -> Optional.fromNullable(index.byId.get(accessCertificateId)));
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> findAccessCertificatesByVehicleSerial(SerialNumber vehicleSerial) {
+        checkNotNull(vehicleSerial);
+
+        String vehicleSerialKey = HmAccessCertificatePairs.vehicleSerialKey(vehicleSerial);
+
+        return findAccessCertificateIndex()
+                .flatMapIterable(index -> index.findByVehicleSerialKey(vehicleSerialKey));
+    }
+
+    @Override
+    public Observable<Boolean> removeAccessCertificateById(String accessCertificateId) {
+        checkNotNull(accessCertificateId);
+
+        return Observable.defer(() -> {
+            AccessCertificateIndex cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = accessCertificates;
+                this.accessCertificates = null;
+                currentGeneration = ++generation;
+            }
+
+            return delegate.removeAccessCertificateById(accessCertificateId)
+                    .doOnNext(success -> {
+                        synchronized (lock) {
+                            if (generation != currentGeneration) {
+                                // a concurrent mutation started from the same snapshot
+                                this.accessCertificates = null;
+                                return;
+                            }
+                            if (success && cached != null) {
+                                Map<String, AccessCertificatePair> copy = new LinkedHashMap<>(cached.byId);
+                                copy.remove(accessCertificateId);
+                                this.accessCertificates = new AccessCertificateIndex(copy);
+                            } else {
+                                this.accessCertificates = null;
+                            }
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Observable<Optional<Long>> findEarliestValidUntilAfter(long timeInMillis) {
+        return findAccessCertificateIndex()
+                .map(index -> index.findEarliestValidUntilAfter(timeInMillis));
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificatesWatermark(String watermark) {
+        return delegate.storeAccessCertificatesWatermark(watermark);
+    }
+
+    @Override
+    public Observable<Optional<String>> findAccessCertificatesWatermark() {
+        return delegate.findAccessCertificatesWatermark();
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> observeAccessCertificateChanges() {
+        return delegate.observeAccessCertificateChanges();
+    }
+
+    @Override
+    public Observable<Boolean> reset() {
+        return Observable.defer(() -> {
+            invalidate();
+
+            return delegate.reset()
+                    .doOnNext(foo -> invalidate())
+                    .doOnNext(foo -> Log.d(TAG, "reset finished: cache cleared"));
+        });
+    }
+
+    private Observable<AccessCertificateIndex> findAccessCertificateIndex() {
+        return Observable.defer(() -> {
+            AccessCertificateIndex cached;
+            long currentGeneration;
+            synchronized (lock) {
+                cached = accessCertificates;
+                currentGeneration = generation;
+            }
+
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return Observable.just(cached);
+            }
+
+            missCount.incrementAndGet();
+            return delegate.findAccessCertificates()
+                    .toList()
+                    .map(AccessCertificateIndex::of)
+                    .doOnSuccess(val -> {
+                        synchronized (lock) {
+                            if (generation == currentGeneration) {
+                                accessCertificates = val;
+                            }
+                        }
+                    })
+                    .toObservable();
+        });
+    }
+
+    /**
+     * Immutable snapshot of the cached access certificates. Lookups by id are served from
+     * the backing map, the indexes by vehicle serial and end of validity are built on first use.
+     */
+    private static final class AccessCertificateIndex {
+        private final Map<String, AccessCertificatePair> byId;
+        private volatile Map<String, List<AccessCertificatePair>> byVehicleSerialKey;
+        private volatile long[] sortedValidUntil;
+
+        static AccessCertificateIndex of(List<AccessCertificatePair> certificates) {
+            Map<String, AccessCertificatePair> certificatesById = new LinkedHashMap<>();
+            for (AccessCertificatePair certificate : certificates) {
+                certificatesById.put(certificate.getId(), certificate);
+            }
+            return new AccessCertificateIndex(certificatesById);
+        }
+
+        private AccessCertificateIndex(Map<String, AccessCertificatePair> byId) {
+            this.byId = Collections.unmodifiableMap(byId);
+        }
+
+        List<AccessCertificatePair> findByVehicleSerialKey(String vehicleSerialKey) {
+            Map<String, List<AccessCertificatePair>> index = byVehicleSerialKey;
+            if (index == null) {
+                // building the index concurrently is harmless as the result is always the same
+                Map<String, List<AccessCertificatePair>> newIndex = new HashMap<>();
+                for (AccessCertificatePair certificate : byId.values()) {
+                    String key = HmAccessCertificatePairs.vehicleSerialKey(certificate);
+                    List<AccessCertificatePair> certificatesOfVehicle = newIndex.get(key);
+                    if (certificatesOfVehicle == null) {
+                        certificatesOfVehicle = new ArrayList<>(1);
+                        newIndex.put(key, certificatesOfVehicle);
+                    }
+                    certificatesOfVehicle.add(certificate);
+                }
+                index = newIndex;
+                byVehicleSerialKey = index;
+            }
+
+            List<AccessCertificatePair> result = index.get(vehicleSerialKey);
+            return result != null ? Collections.unmodifiableList(result) : Collections.emptyList();
+        }
+
+        Optional<Long> findEarliestValidUntilAfter(long timeInMillis) {
+            long[] index = sortedValidUntil;
+            if (index == null) {
+                // building the index concurrently is harmless as the result is always the same
+                long[] newIndex = new long[byId.size()];
+                int i = 0;
+                for (AccessCertificatePair certificate : byId.values()) {
+                    newIndex[i++] = certificate.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+                }
+                Arrays.sort(newIndex);
+                index = newIndex;
+                sortedValidUntil = index;
+            }
+
+            for (long validUntil : index) {
+                if (validUntil > timeInMillis) {
+                    return Optional.of(validUntil);
+                }
+            }
+            return Optional.absent();
+        }
+    }
+}
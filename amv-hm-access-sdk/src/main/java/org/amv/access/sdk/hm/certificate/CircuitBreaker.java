@@ -0,0 +1,85 @@
+package org.amv.access.sdk.hm.certificate;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts consecutive transient failures and rejects calls for a while once too many occurred.
+ * Time is taken from the given scheduler.
+ */
+class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationInMillis;
+    private final Scheduler scheduler;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int failureThreshold, long openDurationInMillis, Scheduler scheduler) {
+        checkArgument(failureThreshold > 0, "Failure threshold must be positive");
+        checkArgument(openDurationInMillis >= 0, "Open duration must not be negative");
+        this.failureThreshold = failureThreshold;
+        this.openDurationInMillis = openDurationInMillis;
+        this.scheduler = checkNotNull(scheduler);
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if a call may be made - exactly one of {@link #onSuccess()},
+     * {@link #onFailure()} or {@link #onCancel()} must follow
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && now() - openedAt >= openDurationInMillis) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * The remote answered - even an error that is not transient shows it is available.
+     */
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now();
+        }
+        trialInFlight = false;
+    }
+
+    synchronized void onCancel() {
+        trialInFlight = false;
+    }
+
+    private long now() {
+        return scheduler.now(TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,5 +1,8 @@
 package org.amv.access.sdk.hm.certificate;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
 import org.amv.access.sdk.spi.certificate.AccessCertificate;
 import org.amv.access.sdk.spi.identity.SerialNumber;
 import org.amv.access.sdk.spi.identity.impl.SerialNumberImpl;
@@ -12,9 +15,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
 class HmAccessCertificate implements AccessCertificate {
 
     private final com.highmobility.crypto.AccessCertificate delegate;
+    private final Supplier<SerialNumber> providerSerial;
+    private final Supplier<SerialNumber> gainerSerial;
 
     HmAccessCertificate(com.highmobility.crypto.AccessCertificate delegate) {
         this.delegate = checkNotNull(delegate);
+        this.providerSerial = Suppliers.memoize(() -> SerialNumberImpl.builder()
+                .serialNumber(delegate.getProviderSerial().getByteArray())
+                .build());
+        this.gainerSerial = Suppliers.memoize(() -> SerialNumberImpl.builder()
+                .serialNumber(delegate.getGainerSerial().getByteArray())
+                .build());
     }
 
     @Override
@@ -25,16 +36,12 @@ class HmAccessCertificate implements AccessCertificate {
 
     @Override
     public SerialNumber getProviderSerial() {
-        return SerialNumberImpl.builder()
-                .serialNumber(delegate.getProviderSerial().getByteArray())
-                .build();
+        return providerSerial.get();
     }
 
     @Override
     public SerialNumber getGainerSerial() {
-        return SerialNumberImpl.builder()
-                .serialNumber(delegate.getGainerSerial().getByteArray())
-                .build();
+        return gainerSerial.get();
     }
 
     @Override
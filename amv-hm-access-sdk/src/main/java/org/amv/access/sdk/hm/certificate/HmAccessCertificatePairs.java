@@ -7,9 +7,16 @@ import com.highmobility.value.Bytes;
 import org.amv.access.client.android.model.AccessCertificateDto;
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
 import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatePair;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.util.Locale;
 
 final class HmAccessCertificatePairs {
 
+    /**
+     * Creates a pair from certificates stored as json by previous versions. Both certificates are
+     * parsed immediately so that corrupt entries are detected before they are migrated.
+     */
     static AccessCertificatePair create(SerializableAccessCertificatePair accessCertificate) {
         HmAccessCertificate deviceCert = fromBase64OrThrow(accessCertificate.getDeviceAccessCertificate());
         HmAccessCertificate vehicleCert = fromBase64OrThrow(accessCertificate.getVehicleAccessCertificate());
@@ -21,6 +28,10 @@ final class HmAccessCertificatePairs {
                 .build();
     }
 
+    /**
+     * Creates a pair from certificates received from remote. Both certificates are parsed
+     * immediately to reject malformed certificates before they are stored.
+     */
     static AccessCertificatePair create(AccessCertificateDto accessCertificateDto) {
         HmAccessCertificate deviceCert = fromBase64OrThrow(accessCertificateDto.device_access_certificate);
         HmAccessCertificate vehicleCert = fromBase64OrThrow(accessCertificateDto.vehicle_access_certificate);
@@ -32,10 +43,39 @@ final class HmAccessCertificatePairs {
                 .build();
     }
 
+    /**
+     * Creates a pair from previously stored certificates. The certificates are only
+     * parsed when a value requiring it is accessed.
+     */
+    static AccessCertificatePair create(String id, byte[] deviceAccessCertificate, byte[] vehicleAccessCertificate) {
+        LazyAccessCertificate deviceCert = new LazyAccessCertificate(deviceAccessCertificate);
+        LazyAccessCertificate vehicleCert = new LazyAccessCertificate(vehicleAccessCertificate);
+
+        return SimpleAccessCertificatePair.builder()
+                .id(id)
+                .deviceAccessCertificate(deviceCert)
+                .vehicleAccessCertificate(vehicleCert)
+                .build();
+    }
+
+    /**
+     * @return the normalized serial of the vehicle the given access certificate pair grants access to
+     */
+    static String vehicleSerialKey(AccessCertificatePair accessCertificatePair) {
+        return vehicleSerialKey(accessCertificatePair.getDeviceAccessCertificate().getGainerSerial());
+    }
+
+    static String vehicleSerialKey(SerialNumber vehicleSerial) {
+        return vehicleSerial.getSerialNumberHex().toUpperCase(Locale.US);
+    }
+
     private static HmAccessCertificate fromBase64OrThrow(String accessCertificateBase64) {
+        return fromBytesOrThrow(Base64.decode(accessCertificateBase64));
+    }
+
+    private static HmAccessCertificate fromBytesOrThrow(byte[] accessCertificate) {
         try {
-            Bytes accessCertBytes = new Bytes(Base64.decode(accessCertificateBase64));
-            return new HmAccessCertificate(new AccessCertificate(accessCertBytes));
+            return new HmAccessCertificate(new AccessCertificate(new Bytes(accessCertificate)));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
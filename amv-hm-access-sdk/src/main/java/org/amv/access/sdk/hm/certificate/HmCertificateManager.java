@@ -7,6 +7,7 @@ import android.util.Pair;
 import com.google.common.base.Optional;
 import com.highmobility.crypto.Crypto;
 
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
 import org.amv.access.sdk.hm.AmvSdkSchedulers;
 import org.amv.access.sdk.hm.config.AccessSdkOptions;
 import org.amv.access.sdk.hm.error.CertificateDownloadException;
@@ -14,17 +15,24 @@ import org.amv.access.sdk.hm.error.CertificateRevokeException;
 import org.amv.access.sdk.hm.error.CreateKeysFailedException;
 import org.amv.access.sdk.hm.error.InvalidCertificateException;
 import org.amv.access.sdk.hm.identity.HmKeys;
+import org.amv.access.sdk.hm.util.SingleFlight;
 import org.amv.access.sdk.spi.certificate.AccessCertificate;
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
 import org.amv.access.sdk.spi.certificate.CertificateManager;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatesChangeEvent;
 import org.amv.access.sdk.spi.crypto.Keys;
 import org.amv.access.sdk.spi.identity.Identity;
 import org.amv.access.sdk.spi.identity.SerialNumber;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.UnicastSubject;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -33,21 +41,57 @@ public class HmCertificateManager implements CertificateManager {
 
     private final LocalStorage localStorage;
     private final Remote remote;
+    private final AccessSdkSchedulers schedulers;
+    private final RemoteErrorClassifier errorClassifier;
+    private final SingleFlight<AccessSdkOptions, CertificateManager> initializeFlight = new SingleFlight<>();
+    private final SingleFlight<String, AccessCertificatePair> refreshFlight = new SingleFlight<>();
 
     public HmCertificateManager(LocalStorage localStorage, Remote remote) {
+        this(localStorage, remote, AmvSdkSchedulers.shared());
+    }
+
+    public HmCertificateManager(LocalStorage localStorage, Remote remote, AccessSdkSchedulers schedulers) {
+        this(localStorage, remote, schedulers, RemoteErrorClassifier.defaults());
+    }
+
+    /**
+     * @param errorClassifier decides whether local storage is kept if initialization fails -
+     *                        it is only kept on transient errors
+     */
+    public HmCertificateManager(LocalStorage localStorage, Remote remote, AccessSdkSchedulers schedulers,
+                                RemoteErrorClassifier errorClassifier) {
         this.localStorage = checkNotNull(localStorage);
         this.remote = checkNotNull(remote);
+        this.schedulers = checkNotNull(schedulers);
+        this.errorClassifier = checkNotNull(errorClassifier);
     }
 
+    /**
+     * Concurrent calls with equal options share one initialization.
+     */
     public Observable<CertificateManager> initialize(Context context, AccessSdkOptions accessSdkOptions) {
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "initialize"))
-                .flatMap(foo -> findOrCreateKeys(accessSdkOptions))
+        checkNotNull(accessSdkOptions);
+
+        return initializeFlight.execute(accessSdkOptions, () -> doInitialize(accessSdkOptions));
+    }
+
+    private Observable<CertificateManager> doInitialize(AccessSdkOptions accessSdkOptions) {
+        return Observable.defer(() -> {
+            Log.d(TAG, "initialize");
+            return findOrCreateKeys(accessSdkOptions);
+        })
+                .doOnNext(remote::prepare)
                 .flatMap(keys -> findLocallyOrDownloadDeviceCertificateWithIssuerKey(accessSdkOptions, keys))
-                .doOnError(e -> {
+                .onErrorResumeNext((Throwable e) -> {
+                    // keys and device certificate are kept if the remote was merely unreachable
+                    if (errorClassifier.isTransient(e)) {
+                        Log.i(TAG, "Keeping local storage despite transient error during init process");
+                        return Observable.error(e);
+                    }
                     Log.i(TAG, "Resetting local storage because of error during init process");
-                    this.localStorage.reset().blockingFirst();
+                    // composed rather than blocking - the error may be emitted on the storage write scheduler
+                    return this.localStorage.reset()
+                            .flatMap(foo -> Observable.error(e));
                 })
                 .map(foo -> this)
                 .cast(CertificateManager.class)
@@ -56,43 +100,70 @@ public class HmCertificateManager implements CertificateManager {
 
     @Override
     public Observable<DeviceCertificate> getDeviceCertificate() {
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "getDeviceCertificate"))
-                .flatMap(foo -> localStorage.findDeviceCertificate())
-                .doOnNext(foo -> Log.d(TAG, "getDeviceCertificate finished"));
+        return Observable.defer(() -> {
+            Log.d(TAG, "getDeviceCertificate");
+            return localStorage.findDeviceCertificate();
+        }).doOnNext(foo -> Log.d(TAG, "getDeviceCertificate finished"));
     }
 
     @Override
     public Observable<AccessCertificatePair> getAccessCertificates() {
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "getAccessCertificates"))
-                .flatMap(foo -> localStorage.findAccessCertificates())
-                .toList()
-                .doOnSuccess(foo -> Log.d(TAG, "getAccessCertificates finished"))
-                .flatMapObservable(Observable::fromIterable);
+        return Observable.defer(() -> {
+            Log.d(TAG, "getAccessCertificates");
+            return localStorage.findAccessCertificates();
+        }).doOnComplete(() -> Log.d(TAG, "getAccessCertificates finished"));
     }
 
     @Override
     public Observable<Optional<AccessCertificatePair>> getAccessCertificateById(String id) {
         checkNotNull(id);
 
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "getAccessCertificateById"))
-                .flatMap(foo -> localStorage.findAccessCertificateById(id))
-                .doOnNext(foo -> Log.d(TAG, "getAccessCertificateById finished"));
+        return Observable.defer(() -> {
+            Log.d(TAG, "getAccessCertificateById");
+            return localStorage.findAccessCertificateById(id);
+        }).doOnNext(foo -> Log.d(TAG, "getAccessCertificateById finished"));
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> getAccessCertificatesForVehicle(SerialNumber vehicleSerial) {
+        checkNotNull(vehicleSerial);
+
+        return Observable.defer(() -> {
+            Log.d(TAG, "getAccessCertificatesForVehicle");
+            return localStorage.findAccessCertificatesByVehicleSerial(vehicleSerial);
+        }).doOnComplete(() -> Log.d(TAG, "getAccessCertificatesForVehicle finished"));
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> observeAccessCertificates() {
+        return Observable.defer(() -> {
+            // changes are buffered while the initial snapshot is read so none of them is lost
+            UnicastSubject<AccessCertificatesChangeEvent> changes = UnicastSubject.create();
+            Disposable changesSubscription = localStorage.observeAccessCertificateChanges()
+                    .subscribe(changes::onNext, changes::onError, changes::onComplete);
+
+            Observable<AccessCertificatesChangeEvent> initialEvent = getAccessCertificates()
+                    .toList()
+                    .map(accessCertificates -> SimpleAccessCertificatesChangeEvent.builder()
+                            .initial(true)
+                            .addedAccessCertificates(accessCertificates)
+                            .build())
+                    .cast(AccessCertificatesChangeEvent.class)
+                    .toObservable();
+
+            return Observable.concat(initialEvent, changes)
+                    .doFinally(changesSubscription::dispose);
+        });
     }
 
     @Override
     public Observable<Boolean> revokeAccessCertificate(AccessCertificatePair accessCertificatePair) {
         checkNotNull(accessCertificatePair);
 
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "revokeAccessCertificate"))
-                .flatMap(foo -> localStorage.findDeviceCertificate())
+        return Observable.defer(() -> {
+            Log.d(TAG, "revokeAccessCertificate");
+            return localStorage.findDeviceCertificate();
+        })
                 .zipWith(localStorage.findKeys(), Pair::create)
                 .flatMap(pair -> {
                     DeviceCertificate deviceCertificate = pair.first;
@@ -114,22 +185,76 @@ public class HmCertificateManager implements CertificateManager {
                 .doOnNext(foo -> Log.d(TAG, "revokeAccessCertificate finished"));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Access certificates are only parsed and stored if they changed since the last refresh -
+     * otherwise the stored access certificates are emitted. Concurrent calls share one download
+     * and receive the same access certificates.
+     */
     @Override
     public Observable<AccessCertificatePair> refreshAccessCertificates() {
-        return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.defaultScheduler())
-                .doOnNext(foo -> Log.d(TAG, "refreshAccessCertificates"))
-                .flatMap(foo -> localStorage.findDeviceCertificate())
-                .zipWith(localStorage.findKeys(), Pair::create)
-                .flatMap(val -> remote.downloadAccessCertificates(val.second, val.first))
-                .onErrorResumeNext(e -> {
-                    return Observable.error(new CertificateDownloadException(e));
-                })
-                .toList()
-                .doOnSuccess(foo -> Log.d(TAG, "refreshAccessCertificates finished"))
-                .flatMapObservable(accessCertificates -> localStorage
-                        .storeAccessCertificates(accessCertificates)
-                        .flatMap(foo -> localStorage.findAccessCertificates()));
+        return refreshFlight.execute(TAG, this::doRefreshAccessCertificates);
+    }
+
+    private Observable<AccessCertificatePair> doRefreshAccessCertificates() {
+        return Observable.defer(() -> {
+            Log.d(TAG, "refreshAccessCertificates");
+
+            return localStorage.findDeviceCertificate()
+                    .zipWith(localStorage.findKeys(), Pair::create)
+                    .onErrorResumeNext(e -> {
+                        return Observable.error(new CertificateDownloadException(e));
+                    })
+                    .flatMap(val -> localStorage.findAccessCertificatesWatermark()
+                            // a missing watermark merely means the download is not known to be unchanged
+                            .onErrorReturnItem(Optional.absent())
+                            .flatMap(watermark -> remote.downloadAccessCertificatePages(val.second, val.first, watermark))
+                            .onErrorResumeNext(e -> {
+                                return Observable.error(new CertificateDownloadException(e));
+                            })
+                            .concatMap(new DownloadEventHandler()::handle));
+        });
+    }
+
+    /**
+     * Stores and emits every page as soon as it arrives - access certificates not downloaded are
+     * removed at the end and the watermark of the download is stored. The stored list equals the
+     * downloaded list so there is no need to read it again. If nothing changed since the stored
+     * watermark the stored access certificates are emitted without writing anything.
+     */
+    private class DownloadEventHandler {
+        private final List<AccessCertificatePair> downloaded = new ArrayList<>();
+
+        private Observable<AccessCertificatePair> handle(AccessCertificatesDownloadEvent event) {
+            switch (event.getType()) {
+                case PAGE:
+                    return localStorage.mergeAccessCertificates(event.getAccessCertificates())
+                            .flatMapIterable(foo -> {
+                                downloaded.addAll(event.getAccessCertificates());
+                                return event.getAccessCertificates();
+                            });
+                case COMPLETED:
+                    return localStorage.syncAccessCertificates(downloaded)
+                            .flatMap(changes -> {
+                                Log.d(TAG, "refreshAccessCertificates finished: "
+                                        + downloaded.size() + " downloaded, "
+                                        + changes.getRemovedAccessCertificateIds().size() + " removed");
+
+                                if (!event.getWatermark().isPresent()) {
+                                    return Observable.just(true);
+                                }
+                                return localStorage.storeAccessCertificatesWatermark(event.getWatermark().get());
+                            })
+                            .ignoreElements()
+                            .toObservable();
+                case NOT_MODIFIED:
+                    Log.d(TAG, "refreshAccessCertificates finished: not modified");
+                    return localStorage.findAccessCertificates();
+                default:
+                    return Observable.error(new IllegalStateException("Unknown event type " + event.getType()));
+            }
+        }
     }
 
     private Observable<DeviceCertificateWithIssuerKey> findLocallyOrDownloadDeviceCertificateWithIssuerKey(
@@ -170,9 +295,7 @@ public class HmCertificateManager implements CertificateManager {
     private Observable<DeviceCertificateWithIssuerKey> downloadAndStoreDeviceCertificateWithIssuerKey(
             AccessSdkOptions accessSdkOptions, Keys keys) {
         return downloadOrCreateDeviceCertificateWithIssuerKeyRemote(accessSdkOptions, keys)
-                .flatMap(dc -> localStorage.storeDeviceCertificate(dc.getDeviceCertificate())
-                        .map(foo -> dc))
-                .flatMap(dc -> localStorage.storeIssuerPublicKey(dc.getIssuerPublicKey())
+                .flatMap(dc -> localStorage.storeDeviceCertificateWithIssuerKey(dc)
                         .map(foo -> dc));
     }
 
@@ -192,8 +315,7 @@ public class HmCertificateManager implements CertificateManager {
     }
 
     private Observable<Keys> findOrCreateKeys(AccessSdkOptions accessSdkOptions) {
-        return Observable.just(1)
-                .flatMap(foo -> isKeysPresent())
+        return isKeysPresent()
                 .flatMap(keysPresent -> !keysPresent ? createAndStoreKeys(accessSdkOptions) : localStorage.findKeys());
     }
 
@@ -205,11 +327,13 @@ public class HmCertificateManager implements CertificateManager {
     }
 
     private Observable<Keys> createAndStoreKeys(AccessSdkOptions accessSdkOptions) {
-        return Observable.just(1)
-                .doOnNext(foo -> Log.d(TAG, "createKeys"))
-                .map(foo -> accessSdkOptions.getIdentity()
-                        .transform(Identity::getKeys)
-                        .or(() -> HmKeys.create(Crypto.createKeypair())))
+        return Observable.defer(() -> {
+            Log.d(TAG, "createKeys");
+            return accessSdkOptions.getIdentity()
+                    .transform(Identity::getKeys)
+                    .transform(Observable::just)
+                    .or(this::createKeys);
+        })
                 .flatMap(localStorage::storeKeys)
                 .doOnNext(foo -> Log.d(TAG, "createKeys finished"))
                 .onErrorResumeNext(t -> {
@@ -217,4 +341,9 @@ public class HmCertificateManager implements CertificateManager {
                 })
                 .flatMap(foo -> localStorage.findKeys());
     }
+
+    private Observable<Keys> createKeys() {
+        return Observable.fromCallable(() -> HmKeys.create(Crypto.createKeypair()))
+                .subscribeOn(schedulers.cryptoScheduler("createKeys"));
+    }
 }
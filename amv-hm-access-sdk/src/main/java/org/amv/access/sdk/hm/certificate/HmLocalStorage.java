@@ -3,55 +3,85 @@ package org.amv.access.sdk.hm.certificate;
 import android.util.Log;
 
 import com.google.common.base.Optional;
-import com.google.gson.reflect.TypeToken;
 import com.highmobility.utils.Base64;
 import com.highmobility.value.Bytes;
 
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
 import org.amv.access.sdk.hm.AmvSdkSchedulers;
 import org.amv.access.sdk.hm.error.SdkNotInitializedException;
 import org.amv.access.sdk.hm.secure.SecureStorage;
 import org.amv.access.sdk.hm.secure.Storage;
-import org.amv.access.sdk.hm.util.Json;
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
 import org.amv.access.sdk.spi.crypto.Keys;
 import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
-
-import java.lang.reflect.Type;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.functions.BiFunction;
-import io.reactivex.functions.Predicate;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class HmLocalStorage implements LocalStorage {
     private static final String TAG = "HmLocalStorage";
 
-    private static final String KEY_DEVICE_CERTIFICATE = "KEY_DEVICE_CERTIFICATE";
+    private static final String KEY_DEVICE_CERTIFICATE_BYTES = "KEY_DEVICE_CERTIFICATE_BYTES";
+    /**
+     * Key of the json array holding all access certificates in previous versions.
+     * Only read to migrate existing installations.
+     */
     private static final String KEY_ACCESS_CERTIFICATES = "KEY_ACCESS_CERTIFICATES";
+    private static final String KEY_ACCESS_CERTIFICATE_IDS = "KEY_ACCESS_CERTIFICATE_IDS";
+    private static final String KEY_ACCESS_CERTIFICATE_PREFIX = "KEY_ACCESS_CERTIFICATE_";
+    private static final String KEY_ACCESS_CERTIFICATES_WATERMARK = "KEY_ACCESS_CERTIFICATES_WATERMARK";
+    private static final String KEY_PRIVATE_KEY_BYTES = "KEY_PRIVATE_KEY_BYTES";
+    private static final String KEY_PUBLIC_KEY_BYTES = "KEY_PUBLIC_KEY_BYTES";
+    private static final String KEY_ISSUER_PUBLIC_KEY_BYTES = "KEY_ISSUER_PUBLIC_KEY_BYTES";
+
+    // keys of base64 encoded string values written by previous versions - only read as a fallback
+    private static final String KEY_DEVICE_CERTIFICATE = "KEY_DEVICE_CERTIFICATE";
     private static final String KEY_PRIVATE_KEY = "KEY_PRIVATE_KEY";
     private static final String KEY_PUBLIC_KEY = "KEY_PUBLIC_KEY";
     private static final String KEY_ISSUER_PUBLIC_KEY = "KEY_ISSUER_PUBLIC_KEY";
 
     private final Storage storage;
     private final SecureStorage secureStorage;
+    private final AccessSdkSchedulers schedulers;
+    private final AtomicBoolean legacyAccessCertificatesMigrated = new AtomicBoolean(false);
+    private final AccessCertificateChangePublisher changePublisher = new AccessCertificateChangePublisher();
 
     public HmLocalStorage(SecureStorage secureStorage, Storage dataStorage) {
+        this(secureStorage, dataStorage, AmvSdkSchedulers.shared());
+    }
+
+    public HmLocalStorage(SecureStorage secureStorage, Storage dataStorage, AccessSdkSchedulers schedulers) {
         this.secureStorage = checkNotNull(secureStorage);
         this.storage = checkNotNull(dataStorage);
+        this.schedulers = checkNotNull(schedulers);
     }
 
     @Override
     public Observable<DeviceCertificate> findDeviceCertificate() {
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageScheduler("findDeviceCertificate"))
                 .doOnNext(foo -> Log.d(TAG, "findDeviceCertificate"))
-                .flatMap(foo -> storage.findString(KEY_DEVICE_CERTIFICATE))
+                .flatMap(foo -> findBytesOrLegacyBase64(storage, KEY_DEVICE_CERTIFICATE_BYTES, KEY_DEVICE_CERTIFICATE))
                 .flatMap(deviceCertOptional -> deviceCertOptional
-                        .transform(Base64::decode)
                         .transform(Bytes::new)
                         .transform(com.highmobility.crypto.DeviceCertificate::new)
                         .transform(HmDeviceCertificate::new)
@@ -66,22 +96,20 @@ public class HmLocalStorage implements LocalStorage {
         checkNotNull(deviceCertificate);
 
         return Observable.just(deviceCertificate)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageWriteScheduler("storeDeviceCertificate"))
                 .doOnNext(foo -> Log.d(TAG, "storeDeviceCertificate"))
-                .map(val -> Base64.encode(val.toByteArray()))
-                .flatMap(deviceCertificateBase64 -> storage
-                        .storeString(KEY_DEVICE_CERTIFICATE, deviceCertificateBase64))
+                .flatMap(val -> storeBytesAndRemoveLegacy(storage,
+                        KEY_DEVICE_CERTIFICATE_BYTES, KEY_DEVICE_CERTIFICATE, val.toByteArray()))
                 .doOnNext(foo -> Log.d(TAG, "storeDeviceCertificate finished"));
     }
 
     @Override
     public Observable<byte[]> findIssuerPublicKey() {
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageScheduler("findIssuerPublicKey"))
                 .doOnNext(foo -> Log.d(TAG, "findIssuerPublicKey"))
-                .flatMap(foo -> storage.findString(KEY_ISSUER_PUBLIC_KEY))
+                .flatMap(foo -> findBytesOrLegacyBase64(storage, KEY_ISSUER_PUBLIC_KEY_BYTES, KEY_ISSUER_PUBLIC_KEY))
                 .flatMap(issuerKeyOptional -> issuerKeyOptional
-                        .transform(Base64::decode)
                         .transform(Observable::just)
                         .or(() -> Observable.error(new SdkNotInitializedException("No issuer key found in local storage"))))
                 .doOnNext(foo -> Log.d(TAG, "findIssuerPublicKey finished"));
@@ -92,30 +120,45 @@ public class HmLocalStorage implements LocalStorage {
         checkNotNull(issuerPublicKey);
 
         return Observable.just(issuerPublicKey)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageWriteScheduler("storeIssuerPublicKey"))
                 .doOnNext(foo -> Log.d(TAG, "storeIssuerPublicKey"))
-                .map(Base64::encode)
-                .flatMap(issuerKeyBase64 -> storage
-                        .storeString(KEY_ISSUER_PUBLIC_KEY, issuerKeyBase64))
+                .flatMap(val -> storeBytesAndRemoveLegacy(storage,
+                        KEY_ISSUER_PUBLIC_KEY_BYTES, KEY_ISSUER_PUBLIC_KEY, val))
                 .doOnNext(foo -> Log.d(TAG, "storeIssuerPublicKey finished"));
     }
 
+    @Override
+    public Observable<Boolean> storeDeviceCertificateWithIssuerKey(DeviceCertificateWithIssuerKey deviceCertificateWithIssuerKey) {
+        checkNotNull(deviceCertificateWithIssuerKey);
+
+        return Observable.just(deviceCertificateWithIssuerKey)
+                .subscribeOn(schedulers.storageWriteScheduler("storeDeviceCertificateWithIssuerKey"))
+                .doOnNext(foo -> Log.d(TAG, "storeDeviceCertificateWithIssuerKey"))
+                .flatMap(val -> storage.batch()
+                        .putBytes(KEY_DEVICE_CERTIFICATE_BYTES, val.getDeviceCertificate().toByteArray())
+                        .putBytes(KEY_ISSUER_PUBLIC_KEY_BYTES, val.getIssuerPublicKey())
+                        .removeString(KEY_DEVICE_CERTIFICATE)
+                        .removeString(KEY_ISSUER_PUBLIC_KEY)
+                        .commit())
+                .doOnNext(foo -> Log.d(TAG, "storeDeviceCertificateWithIssuerKey finished"));
+    }
+
     @Override
     public Observable<Keys> findKeys() {
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageScheduler("findKeys"))
                 .doOnNext(foo -> Log.d(TAG, "findKeys"))
                 .flatMap(foo -> {
-                    Single<byte[]> getPrivateKeyOrThrow = secureStorage.findString(KEY_PRIVATE_KEY)
+                    Single<byte[]> getPrivateKeyOrThrow = findBytesOrLegacyBase64(secureStorage,
+                            KEY_PRIVATE_KEY_BYTES, KEY_PRIVATE_KEY)
                             .filter(Optional::isPresent)
                             .map(Optional::get)
-                            .map(Base64::decode)
                             .singleOrError();
 
-                    Single<byte[]> getPublicKeyOrThrow = secureStorage.findString(KEY_PUBLIC_KEY)
+                    Single<byte[]> getPublicKeyOrThrow = findBytesOrLegacyBase64(secureStorage,
+                            KEY_PUBLIC_KEY_BYTES, KEY_PUBLIC_KEY)
                             .filter(Optional::isPresent)
                             .map(Optional::get)
-                            .map(Base64::decode)
                             .singleOrError();
 
                     BiFunction<byte[], byte[], KeysImpl> keysZipper = (privateKey, publicKey) ->
@@ -138,31 +181,29 @@ public class HmLocalStorage implements LocalStorage {
         checkNotNull(keys);
 
         return Observable.just(keys)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageWriteScheduler("storeKeys"))
                 .doOnNext(foo -> Log.d(TAG, "storeKeys"))
-                .flatMap(k -> {
-                    Observable<Boolean> storePrivateKey = Observable.just(k.getPrivateKey())
-                            .map(Base64::encode)
-                            .flatMap(privateKeyBase64 -> secureStorage.storeString(KEY_PRIVATE_KEY, privateKeyBase64));
-
-                    Observable<Boolean> storePublicKey = Observable.just(k.getPublicKey())
-                            .map(Base64::encode)
-                            .flatMap(publicKeyBase64 -> secureStorage.storeString(KEY_PUBLIC_KEY, publicKeyBase64));
-
-                    return storePrivateKey.zipWith(storePublicKey, (s1, s2) -> s1 && s2);
-                })
+                .flatMap(k -> secureStorage.batch()
+                        .putBytes(KEY_PRIVATE_KEY_BYTES, k.getPrivateKey())
+                        .putBytes(KEY_PUBLIC_KEY_BYTES, k.getPublicKey())
+                        .removeString(KEY_PRIVATE_KEY)
+                        .removeString(KEY_PUBLIC_KEY)
+                        .commit())
                 .doOnNext(foo -> Log.d(TAG, "storeKeys finished"));
     }
 
     @Override
     public Observable<AccessCertificatePair> findAccessCertificates() {
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificates"))
                 .doOnNext(foo -> Log.d(TAG, "findAccessCertificates"))
-                .flatMap(foo -> findAccessCertificatesWithFilter(cert -> true))
-                .toList()
-                .doOnSuccess(foo -> Log.d(TAG, "findAccessCertificates finished"))
-                .flatMapObservable(Observable::fromIterable);
+                .flatMap(foo -> migrateLegacyAccessCertificatesIfNecessary())
+                .flatMap(foo -> findAccessCertificateIds(storage))
+                .flatMapIterable(ids -> ids)
+                .concatMap(this::findAccessCertificateEntry)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .doOnComplete(() -> Log.d(TAG, "findAccessCertificates finished"));
     }
 
     @Override
@@ -170,73 +211,390 @@ public class HmLocalStorage implements LocalStorage {
         checkNotNull(accessCertificateId);
 
         return Observable.just(1)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificateById"))
                 .doOnNext(foo -> Log.d(TAG, "findAccessCertificateById"))
-                .flatMap(foo -> findAccessCertificatesWithFilter(cert -> accessCertificateId.equals(cert.getId())))
-                .map(Optional::fromNullable)
-                .defaultIfEmpty(Optional.absent())
+                .flatMap(foo -> migrateLegacyAccessCertificatesIfNecessary())
+                .flatMap(foo -> findAccessCertificateEntry(accessCertificateId))
                 .doOnNext(foo -> Log.d(TAG, "findAccessCertificateById finished"));
     }
 
+    @Override
+    public Observable<AccessCertificatePair> findAccessCertificatesByVehicleSerial(SerialNumber vehicleSerial) {
+        checkNotNull(vehicleSerial);
+
+        String vehicleSerialKey = HmAccessCertificatePairs.vehicleSerialKey(vehicleSerial);
+
+        return findAccessCertificates()
+                .filter(pair -> vehicleSerialKey.equals(HmAccessCertificatePairs.vehicleSerialKey(pair)));
+    }
+
     @Override
     public Observable<Boolean> storeAccessCertificates(List<AccessCertificatePair> certificates) {
+        return syncAccessCertificates(certificates)
+                .map(foo -> true);
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> syncAccessCertificates(List<AccessCertificatePair> certificates) {
         checkNotNull(certificates);
 
-        return Observable.fromIterable(certificates)
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
-                .map(SerializableAccessCertificatePair::from)
-                .toList()
-                .doOnSuccess(foo -> Log.d(TAG, "storeAccessCertificates"))
-                .map(Json::toJson)
-                .flatMapObservable(val -> storage.storeString(KEY_ACCESS_CERTIFICATES, val))
-                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificates finished"));
+        return writeAccessCertificates("syncAccessCertificates", certificates, true);
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> mergeAccessCertificates(List<AccessCertificatePair> certificates) {
+        checkNotNull(certificates);
+
+        return writeAccessCertificates("mergeAccessCertificates", certificates, false);
+    }
+
+    /**
+     * @param removeStale whether stored access certificates not contained in the given ones are removed
+     */
+    private Observable<AccessCertificatesChangeEvent> writeAccessCertificates(String operation,
+                                                                              List<AccessCertificatePair> certificates,
+                                                                              boolean removeStale) {
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler(operation))
+                .doOnNext(foo -> Log.d(TAG, operation))
+                .flatMap(foo -> migrateLegacyAccessCertificatesIfNecessary())
+                .flatMap(foo -> findAccessCertificateIds(storage))
+                .flatMap(previousIds -> {
+                    Map<String, AccessCertificatePair> certificatesById = new LinkedHashMap<>();
+                    for (AccessCertificatePair certificate : certificates) {
+                        certificatesById.put(certificate.getId(), certificate);
+                    }
+
+                    Set<String> previousIdSet = new HashSet<>(previousIds);
+                    Set<String> staleIds = new LinkedHashSet<>();
+                    List<String> ids;
+                    if (removeStale) {
+                        ids = new ArrayList<>(certificatesById.keySet());
+                        staleIds.addAll(previousIds);
+                        staleIds.removeAll(certificatesById.keySet());
+                    } else {
+                        // merged access certificates keep their position, new ones are appended
+                        Set<String> mergedIds = new LinkedHashSet<>(previousIds);
+                        mergedIds.addAll(certificatesById.keySet());
+                        ids = new ArrayList<>(mergedIds);
+                    }
+
+                    List<AccessCertificatePair> added = new ArrayList<>();
+                    List<AccessCertificatePair> updated = new ArrayList<>();
+                    Map<String, byte[]> changedRecords = new LinkedHashMap<>();
+
+                    return Observable.fromIterable(certificatesById.values())
+                            .concatMap(certificate -> {
+                                byte[] record = AccessCertificatePairCodec.encode(certificate);
+                                String key = accessCertificateKey(certificate.getId());
+
+                                if (!previousIdSet.contains(certificate.getId())) {
+                                    added.add(certificate);
+                                    changedRecords.put(key, record);
+                                    return Observable.just(certificate);
+                                }
+
+                                // the stored record is compared byte by byte - unchanged entries are not written
+                                return storage.findBytes(key)
+                                        .filter(stored -> !stored.isPresent() || !Arrays.equals(stored.get(), record))
+                                        .doOnNext(stored -> {
+                                            updated.add(certificate);
+                                            changedRecords.put(key, record);
+                                        })
+                                        .map(foo -> certificate);
+                            })
+                            .toList()
+                            .flatMapObservable(foo -> {
+                                boolean idsChanged = !ids.equals(previousIds);
+                                if (changedRecords.isEmpty() && !idsChanged) {
+                                    return Observable.just(true);
+                                }
+
+                                Storage.Batch batch = storage.batch();
+                                for (Map.Entry<String, byte[]> changedRecord : changedRecords.entrySet()) {
+                                    batch.putBytes(changedRecord.getKey(), changedRecord.getValue());
+                                }
+                                if (idsChanged) {
+                                    putAccessCertificateIds(batch, ids);
+                                }
+                                for (String staleId : staleIds) {
+                                    batch.removeBytes(accessCertificateKey(staleId));
+                                }
+                                return batch.commit();
+                            })
+                            .map(success -> {
+                                if (!success) {
+                                    throw new IllegalStateException("Could not write access certificates");
+                                }
+                                return changePublisher.publish(added, updated, staleIds);
+                            });
+                })
+                .doOnNext(event -> Log.d(TAG, operation + " finished: "
+                        + event.getAddedAccessCertificates().size() + " added, "
+                        + event.getUpdatedAccessCertificates().size() + " updated, "
+                        + event.getRemovedAccessCertificateIds().size() + " removed"));
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificate(AccessCertificatePair certificate) {
+        checkNotNull(certificate);
+
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler("storeAccessCertificate"))
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificate"))
+                .flatMap(foo -> migrateLegacyAccessCertificatesIfNecessary())
+                .flatMap(foo -> findAccessCertificateIds(storage))
+                .flatMap(ids -> {
+                    boolean isNew = !ids.contains(certificate.getId());
+
+                    Storage.Batch batch = putAccessCertificateEntry(storage.batch(), certificate);
+                    if (isNew) {
+                        Set<String> newIds = new LinkedHashSet<>(ids);
+                        newIds.add(certificate.getId());
+                        putAccessCertificateIds(batch, newIds);
+                    }
+                    return batch.commit()
+                            .doOnNext(success -> {
+                                if (success) {
+                                    changePublisher.publishStored(certificate, isNew);
+                                }
+                            });
+                })
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificate finished"));
     }
 
     @Override
     public Observable<Boolean> removeAccessCertificateById(String accessCertificateId) {
         checkNotNull(accessCertificateId);
 
-        return findAccessCertificates()
-                .subscribeOn(AmvSdkSchedulers.storageScheduler())
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler("removeAccessCertificateById"))
                 .doOnNext(foo -> Log.d(TAG, "removeAccessCertificateById"))
-                .filter(t -> !accessCertificateId.equals(t.getId()))
-                .toList()
-                .flatMapObservable(this::storeAccessCertificates)
+                .flatMap(foo -> migrateLegacyAccessCertificatesIfNecessary())
+                .flatMap(foo -> findAccessCertificateIds(storage))
+                .flatMap(ids -> {
+                    if (!ids.contains(accessCertificateId)) {
+                        return Observable.just(true);
+                    }
+                    Set<String> newIds = new LinkedHashSet<>(ids);
+                    newIds.remove(accessCertificateId);
+
+                    Storage.Batch batch = storage.batch()
+                            .removeBytes(accessCertificateKey(accessCertificateId));
+                    return putAccessCertificateIds(batch, newIds)
+                            .commit()
+                            .doOnNext(success -> {
+                                if (success) {
+                                    changePublisher.publishRemoved(Collections.singletonList(accessCertificateId));
+                                }
+                            });
+                })
                 .doOnNext(foo -> Log.d(TAG, "removeAccessCertificateById finished"));
     }
 
     @Override
-    public Observable<Boolean> reset() {
-        return Observable.just(true)
-                .doOnNext(foo -> reset(storage))
-                .doOnNext(foo -> reset(secureStorage));
+    public Observable<Optional<Long>> findEarliestValidUntilAfter(long timeInMillis) {
+        // access certificates are not indexed by end of validity - all of them are decoded
+        return findAccessCertificates()
+                .map(accessCertificate -> accessCertificate.getDeviceAccessCertificate()
+                        .getEndDate()
+                        .getTimeInMillis())
+                .filter(validUntil -> validUntil > timeInMillis)
+                .reduce(Math::min)
+                .map(Optional::of)
+                .toSingle(Optional.absent())
+                .toObservable();
     }
 
-    private Observable<AccessCertificatePair> findAccessCertificatesWithFilter(Predicate<SerializableAccessCertificatePair> filter) {
-        checkNotNull(filter);
+    @Override
+    public Observable<Boolean> storeAccessCertificatesWatermark(String watermark) {
+        checkNotNull(watermark);
+
+        return Observable.just(watermark)
+                .subscribeOn(schedulers.storageWriteScheduler("storeAccessCertificatesWatermark"))
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificatesWatermark"))
+                .flatMap(val -> storage.storeString(KEY_ACCESS_CERTIFICATES_WATERMARK, val))
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificatesWatermark finished"));
+    }
 
+    @Override
+    public Observable<Optional<String>> findAccessCertificatesWatermark() {
         return Observable.just(1)
-                .flatMap(foo -> storage.findString(KEY_ACCESS_CERTIFICATES))
-                .map(valueOptional -> valueOptional.or("[]"))
-                .map(accessCertificatesJson -> {
-                    Type type = new TypeToken<List<SerializableAccessCertificatePair>>() {
-                    }.getType();
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificatesWatermark"))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesWatermark"))
+                .flatMap(foo -> storage.findString(KEY_ACCESS_CERTIFICATES_WATERMARK))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesWatermark finished"));
+    }
 
-                    List<SerializableAccessCertificatePair> serializableAccessCerts = Json
-                            .fromJson(accessCertificatesJson, type);
+    @Override
+    public Observable<AccessCertificatesChangeEvent> observeAccessCertificateChanges() {
+        return changePublisher.observe();
+    }
 
-                    return serializableAccessCerts;
-                })
-                .flatMapIterable(i -> i)
-                .filter(filter)
-                .map(HmAccessCertificatePairs::create);
+    @Override
+    public Observable<Boolean> reset() {
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler("reset"))
+                .doOnNext(foo -> Log.d(TAG, "reset"))
+                .flatMap(foo -> reset(storage))
+                .doOnNext(changePublisher::publishRemoved)
+                .flatMap(foo -> reset(secureStorage))
+                .map(foo -> true)
+                .doOnNext(foo -> Log.d(TAG, "reset finished"));
+    }
+
+    /**
+     * Moves access certificates stored as a single json array under {@link #KEY_ACCESS_CERTIFICATES}
+     * by previous versions to the per-certificate layout. Does nothing if no such value exists.
+     */
+    private Observable<Boolean> migrateLegacyAccessCertificatesIfNecessary() {
+        return Observable.defer(() -> {
+            if (legacyAccessCertificatesMigrated.get()) {
+                return Observable.just(true);
+            }
+
+            // the migration writes and must not run concurrently on a multi-threaded storage scheduler
+            return migrateLegacyAccessCertificates()
+                    .subscribeOn(schedulers.storageWriteScheduler("migrateLegacyAccessCertificatesIfNecessary"));
+        });
+    }
+
+    private Observable<Boolean> migrateLegacyAccessCertificates() {
+        return Observable.defer(() -> {
+            if (legacyAccessCertificatesMigrated.get()) {
+                return Observable.just(true);
+            }
+
+            return storage.findString(KEY_ACCESS_CERTIFICATES)
+                    .flatMap(legacyValueOptional -> {
+                        if (!legacyValueOptional.isPresent()) {
+                            return Observable.just(true);
+                        }
+
+                        Log.i(TAG, "Migrating access certificates to per-certificate storage layout");
+
+                        // entries are parsed and written one at a time - the legacy list is never materialized
+                        Set<String> migratedIds = new LinkedHashSet<>();
+                        return AccessCertificateJson.readAccessCertificates(legacyValueOptional.get())
+                                .concatMap(this::parseLegacyAccessCertificate)
+                                .doOnNext(accessCertificate -> migratedIds.add(accessCertificate.getId()))
+                                .concatMap(this::storeAccessCertificateEntry)
+                                .reduce(true, (s1, s2) -> s1 && s2)
+                                .toObservable()
+                                // entries are written first - index and legacy value are swapped in one batch
+                                .flatMap(s1 -> {
+                                    if (!s1) {
+                                        // the legacy value is kept so that the next call retries
+                                        Log.w(TAG, "Migrating access certificates failed - will retry");
+                                        return Observable.just(false);
+                                    }
+                                    return findAccessCertificateIds(storage)
+                                            .flatMap(ids -> {
+                                                Set<String> newIds = new LinkedHashSet<>(ids);
+                                                newIds.addAll(migratedIds);
+
+                                                Storage.Batch batch = storage.batch()
+                                                        .removeString(KEY_ACCESS_CERTIFICATES);
+                                                return putAccessCertificateIds(batch, newIds)
+                                                        .commit();
+                                            });
+                                });
+                    })
+                    .doOnNext(success -> {
+                        if (success) {
+                            legacyAccessCertificatesMigrated.set(true);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * @return an observable emitting the parsed access certificate or nothing if it is corrupt
+     */
+    private Observable<AccessCertificatePair> parseLegacyAccessCertificate(SerializableAccessCertificatePair legacyAccessCert) {
+        try {
+            return Observable.just(HmAccessCertificatePairs.create(legacyAccessCert));
+        } catch (Exception e) {
+            Log.w(TAG, "Skipping corrupt access certificate " + legacyAccessCert.getId() + ": " + e.getMessage());
+            return Observable.empty();
+        }
+    }
+
+    private Observable<List<String>> findAccessCertificateIds(Storage storage) {
+        return storage.findString(KEY_ACCESS_CERTIFICATE_IDS)
+                .map(valueOptional -> valueOptional.isPresent() ?
+                        AccessCertificateJson.readIds(valueOptional.get()) :
+                        Collections.<String>emptyList());
+    }
+
+    private static Storage.Batch putAccessCertificateIds(Storage.Batch batch, Collection<String> ids) throws IOException {
+        return batch.putString(KEY_ACCESS_CERTIFICATE_IDS, AccessCertificateJson.writeIds(ids));
+    }
+
+    private static Storage.Batch putAccessCertificateEntry(Storage.Batch batch, AccessCertificatePair accessCertificate) {
+        return batch.putBytes(accessCertificateKey(accessCertificate.getId()),
+                AccessCertificatePairCodec.encode(accessCertificate));
+    }
+
+    private Observable<Optional<AccessCertificatePair>> findAccessCertificateEntry(String id) {
+        return storage.findBytes(accessCertificateKey(id))
+                .map(valueOptional -> valueOptional
+                        .transform(AccessCertificatePairCodec::decode));
+    }
+
+    private Observable<Boolean> storeAccessCertificateEntry(AccessCertificatePair accessCertificate) {
+        return Observable.just(accessCertificate)
+                .map(AccessCertificatePairCodec::encode)
+                .flatMap(val -> storage.storeBytes(accessCertificateKey(accessCertificate.getId()), val));
+    }
+
+    private Observable<Optional<byte[]>> findBytesOrLegacyBase64(Storage storage, String key, String legacyKey) {
+        return storage.findBytes(key)
+                .flatMap(valueOptional -> {
+                    if (valueOptional.isPresent()) {
+                        return Observable.just(valueOptional);
+                    }
+                    return storage.findString(legacyKey)
+                            .map(legacyValueOptional -> legacyValueOptional.transform(Base64::decode));
+                });
+    }
+
+    private Observable<Boolean> storeBytesAndRemoveLegacy(Storage storage, String key, String legacyKey, byte[] value) {
+        return storage.batch()
+                .putBytes(key, value)
+                .removeString(legacyKey)
+                .commit();
+    }
+
+    private static String accessCertificateKey(String accessCertificateId) {
+        return KEY_ACCESS_CERTIFICATE_PREFIX + accessCertificateId;
+    }
+
+    /**
+     * @return an observable emitting the ids of the removed access certificates
+     */
+    private Observable<List<String>> reset(Storage storage) {
+        return findAccessCertificateIds(storage)
+                .flatMap(accessCertificateIds -> resetBatch(storage, accessCertificateIds)
+                        .commit()
+                        .map(foo -> accessCertificateIds));
     }
 
-    private void reset(Storage storage) {
-        storage.removeString(KEY_DEVICE_CERTIFICATE).blockingFirst();
-        storage.removeString(KEY_ACCESS_CERTIFICATES).blockingFirst();
-        storage.removeString(KEY_PRIVATE_KEY).blockingFirst();
-        storage.removeString(KEY_PUBLIC_KEY).blockingFirst();
-        storage.removeString(KEY_ISSUER_PUBLIC_KEY).blockingFirst();
+    private static Storage.Batch resetBatch(Storage storage, List<String> accessCertificateIds) {
+        Storage.Batch batch = storage.batch();
+        for (String accessCertificateId : accessCertificateIds) {
+            batch.removeBytes(accessCertificateKey(accessCertificateId));
+        }
+        return batch.removeString(KEY_ACCESS_CERTIFICATE_IDS)
+                .removeString(KEY_ACCESS_CERTIFICATES_WATERMARK)
+                .removeBytes(KEY_DEVICE_CERTIFICATE_BYTES)
+                .removeBytes(KEY_PRIVATE_KEY_BYTES)
+                .removeBytes(KEY_PUBLIC_KEY_BYTES)
+                .removeBytes(KEY_ISSUER_PUBLIC_KEY_BYTES)
+                .removeString(KEY_DEVICE_CERTIFICATE)
+                .removeString(KEY_ACCESS_CERTIFICATES)
+                .removeString(KEY_PRIVATE_KEY)
+                .removeString(KEY_PUBLIC_KEY)
+                .removeString(KEY_ISSUER_PUBLIC_KEY);
     }
-}
\ No newline at end of file
+}
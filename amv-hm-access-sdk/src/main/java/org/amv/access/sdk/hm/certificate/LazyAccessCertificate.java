@@ -0,0 +1,66 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificate;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An access certificate holding its raw bytes which are only parsed on first access
+ * of a value that requires it. The parsed certificate is memoized.
+ */
+class LazyAccessCertificate implements AccessCertificate {
+
+    private final byte[] accessCertificate;
+    private final Supplier<HmAccessCertificate> delegate;
+
+    LazyAccessCertificate(byte[] accessCertificate) {
+        checkNotNull(accessCertificate);
+
+        this.accessCertificate = Arrays.copyOf(accessCertificate, accessCertificate.length);
+        this.delegate = Suppliers.memoize(() -> new HmAccessCertificate(
+                new com.highmobility.crypto.AccessCertificate(new Bytes(this.accessCertificate))));
+    }
+
+    @Override
+    public byte[] toByteArray() {
+        return Arrays.copyOf(accessCertificate, accessCertificate.length);
+    }
+
+    @Override
+    public SerialNumber getProviderSerial() {
+        return delegate.get().getProviderSerial();
+    }
+
+    @Override
+    public SerialNumber getGainerSerial() {
+        return delegate.get().getGainerSerial();
+    }
+
+    @Override
+    public Calendar getStartDate() {
+        return delegate.get().getStartDate();
+    }
+
+    @Override
+    public Calendar getEndDate() {
+        return delegate.get().getEndDate();
+    }
+
+    @Override
+    public boolean isExpired() {
+        return delegate.get().isExpired();
+    }
+
+    @Override
+    public boolean isNotValidYet() {
+        return delegate.get().isNotValidYet();
+    }
+}
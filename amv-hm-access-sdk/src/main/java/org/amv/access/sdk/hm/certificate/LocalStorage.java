@@ -3,8 +3,10 @@ package org.amv.access.sdk.hm.certificate;
 import com.google.common.base.Optional;
 
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
 import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.identity.SerialNumber;
 
 import java.util.List;
 
@@ -20,17 +22,69 @@ public interface LocalStorage {
 
     Observable<byte[]> findIssuerPublicKey();
 
+    Observable<Boolean> storeDeviceCertificateWithIssuerKey(DeviceCertificateWithIssuerKey deviceCertificateWithIssuerKey);
+
     Observable<Boolean> storeKeys(Keys keys);
 
     Observable<Keys> findKeys();
 
     Observable<Boolean> storeAccessCertificates(List<AccessCertificatePair> certificates);
 
+    /**
+     * Replace the stored access certificates with the given ones. Only entries that have been
+     * added, changed or removed are written - nothing is written if the stored access
+     * certificates equal the given ones.
+     *
+     * @return an observable emitting the applied changes
+     */
+    Observable<AccessCertificatesChangeEvent> syncAccessCertificates(List<AccessCertificatePair> certificates);
+
+    /**
+     * Add or replace the given access certificates and keep all other stored ones. Only entries
+     * that have been added or changed are written.
+     *
+     * @return an observable emitting the applied changes
+     */
+    Observable<AccessCertificatesChangeEvent> mergeAccessCertificates(List<AccessCertificatePair> certificates);
+
+    Observable<Boolean> storeAccessCertificate(AccessCertificatePair certificate);
+
     Observable<AccessCertificatePair> findAccessCertificates();
 
     Observable<Optional<AccessCertificatePair>> findAccessCertificateById(String id);
 
+    Observable<AccessCertificatePair> findAccessCertificatesByVehicleSerial(SerialNumber vehicleSerial);
+
     Observable<Boolean> removeAccessCertificateById(String accessCertificateId);
 
+    /**
+     * Find the earliest end of validity of a stored device access certificate that lies after
+     * the given time.
+     *
+     * @return an observable emitting the end of validity in milliseconds or absent if no stored
+     * access certificate is valid after the given time
+     */
+    Observable<Optional<Long>> findEarliestValidUntilAfter(long timeInMillis);
+
+    /**
+     * Store the watermark of the last access certificate download - see
+     * {@link Remote#downloadAccessCertificatePages(Keys, DeviceCertificate, Optional)}.
+     */
+    Observable<Boolean> storeAccessCertificatesWatermark(String watermark);
+
+    /**
+     * @return an observable emitting the watermark of the last access certificate download or
+     * empty if none has been stored
+     */
+    Observable<Optional<String>> findAccessCertificatesWatermark();
+
+    /**
+     * Observe changes of stored access certificates. Events are emitted after a change
+     * has been written successfully and never contain a snapshot of unchanged values.
+     *
+     * @return a hot observable emitting every change of the stored access certificates
+     */
+    Observable<AccessCertificatesChangeEvent> observeAccessCertificateChanges();
+
     Observable<Boolean> reset();
 }
\ No newline at end of file
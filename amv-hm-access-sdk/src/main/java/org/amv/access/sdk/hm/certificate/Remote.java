@@ -1,13 +1,26 @@
 package org.amv.access.sdk.hm.certificate;
 
+import com.google.common.base.Optional;
+
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
 import org.amv.access.sdk.spi.crypto.Keys;
 import org.amv.access.sdk.spi.identity.SerialNumber;
 
+import java.util.List;
+
 import io.reactivex.Observable;
 
 public interface Remote {
+    /**
+     * Called once the key pair of this device is known, e.g. to prepare signed requests ahead of
+     * time. Does nothing by default.
+     *
+     * @param keys The key pair associated with this device
+     */
+    default void prepare(Keys keys) {
+    }
+
     /**
      * Request a new device certificate from the remote exchange.
      *
@@ -34,6 +47,39 @@ public interface Remote {
      */
     Observable<AccessCertificatePair> downloadAccessCertificates(Keys keys, DeviceCertificate deviceCertificate);
 
+    /**
+     * Download all access certificates for this device page by page.
+     *
+     * @param keys              The key pair associated with this device
+     * @param deviceCertificate The device certificate associated with this device
+     * @return an observable emitting the access certificates of every page as soon as it arrives
+     */
+    default Observable<List<AccessCertificatePair>> downloadAccessCertificatePages(Keys keys,
+                                                                                   DeviceCertificate deviceCertificate) {
+        return downloadAccessCertificates(keys, deviceCertificate)
+                .toList()
+                .toObservable();
+    }
+
+    /**
+     * Download all access certificates for this device page by page and tell whether they
+     * changed since a previous download.
+     *
+     * @param keys              The key pair associated with this device
+     * @param deviceCertificate The device certificate associated with this device
+     * @param watermark         The watermark of a previous download or empty if unknown
+     * @return an observable emitting an event for every page followed by an event carrying the
+     * watermark of the downloaded access certificates - or a single not modified event if they
+     * still match the given watermark
+     */
+    default Observable<AccessCertificatesDownloadEvent> downloadAccessCertificatePages(Keys keys,
+                                                                                       DeviceCertificate deviceCertificate,
+                                                                                       Optional<String> watermark) {
+        return downloadAccessCertificatePages(keys, deviceCertificate)
+                .map(AccessCertificatesDownloadEvent::page)
+                .concatWith(Observable.just(AccessCertificatesDownloadEvent.completed(Optional.absent())));
+    }
+
     /**
      * Revoke a single access certificate from the remote exchange.
      *
@@ -0,0 +1,37 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.client.android.AccessApiException;
+import org.amv.access.sdk.hm.error.RemoteUnavailableException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decides whether a failed call of a {@link Remote} is transient - i.e. whether it is worth
+ * retrying and must not be mistaken for a rejection by the remote.
+ */
+public interface RemoteErrorClassifier {
+
+    /**
+     * Classifies connection problems and timeouts as transient. Errors reported by the access api
+     * (e.g. a rejected signature) and all other errors are not transient.
+     */
+    static RemoteErrorClassifier defaults() {
+        return error -> {
+            Throwable t = error;
+            for (int depth = 0; t != null && depth < 10; depth++, t = t.getCause()) {
+                if (t instanceof AccessApiException) {
+                    return false;
+                }
+                if (t instanceof IOException ||
+                        t instanceof TimeoutException ||
+                        t instanceof RemoteUnavailableException) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    boolean isTransient(Throwable error);
+}
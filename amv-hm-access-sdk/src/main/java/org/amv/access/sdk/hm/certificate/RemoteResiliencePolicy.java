@@ -0,0 +1,108 @@
+package org.amv.access.sdk.hm.certificate;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Configures how {@link ResilientRemote} retries failed calls and when it stops calling the
+ * remote altogether.
+ * <p>
+ * Transient failures are retried up to {@link #getMaxRetries()} times. The n-th retry is delayed
+ * by {@code initialBackoff * multiplier^(n-1)} (at most {@link #getMaxBackoffInMillis()}) of
+ * which a random share of up to {@link #getJitterFactor()} is subtracted so that devices failing
+ * at the same time do not retry at the same time.
+ * <p>
+ * After {@link #getFailureThreshold()} consecutive transient failures the circuit opens: all calls
+ * fail immediately for {@link #getOpenDurationInMillis()}. Afterwards a single trial call decides
+ * whether the circuit closes again.
+ */
+@Value
+@Builder
+public class RemoteResiliencePolicy {
+
+    public static RemoteResiliencePolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * @return a policy that neither retries nor opens the circuit
+     */
+    public static RemoteResiliencePolicy disabled() {
+        return builder()
+                .maxRetries(0)
+                .failureThreshold(Integer.MAX_VALUE)
+                .build();
+    }
+
+    @Builder.Default
+    private int maxRetries = 3;
+    @Builder.Default
+    private long initialBackoffInMillis = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Never less than the initial backoff.
+     */
+    @Builder.Default
+    private long maxBackoffInMillis = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * At least 1.
+     */
+    @Builder.Default
+    private double backoffMultiplier = 2;
+    /**
+     * The maximum share of the backoff removed at random between 0 and 1 - 0 disables jitter.
+     */
+    @Builder.Default
+    private double jitterFactor = 0.5;
+    @Builder.Default
+    private int failureThreshold = 5;
+    @Builder.Default
+    private long openDurationInMillis = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * Decides which failures are retried and count towards opening the circuit. It also decides
+     * whether local storage is kept if initialization fails.
+     */
+    @NonNull
+    @Builder.Default
+    private RemoteErrorClassifier errorClassifier = RemoteErrorClassifier.defaults();
+
+    public long getMaxBackoffInMillis() {
+        return Math.max(maxBackoffInMillis, initialBackoffInMillis);
+    }
+
+    /**
+     * @param retry  the number of the retry starting with 1
+     * @param random a random value in the range [0, 1)
+     * @return the delay before the given retry in milliseconds
+     */
+    long backoffInMillis(int retry, double random) {
+        checkArgument(retry > 0, "Retry must be positive");
+
+        double backoff = initialBackoffInMillis * Math.pow(Math.max(backoffMultiplier, 1), retry - 1);
+        double cappedBackoff = Math.min(backoff, getMaxBackoffInMillis());
+        double jitter = Math.min(Math.max(jitterFactor, 0), 1) * random;
+        return (long) (cappedBackoff * (1 - jitter));
+    }
+
+    public static class RemoteResiliencePolicyBuilder {
+
+        public RemoteResiliencePolicyBuilder initialBackoff(long initialBackoff, TimeUnit unit) {
+            checkArgument(initialBackoff >= 0, "Backoff must not be negative");
+            return initialBackoffInMillis(unit.toMillis(initialBackoff));
+        }
+
+        public RemoteResiliencePolicyBuilder maxBackoff(long maxBackoff, TimeUnit unit) {
+            checkArgument(maxBackoff >= 0, "Backoff must not be negative");
+            return maxBackoffInMillis(unit.toMillis(maxBackoff));
+        }
+
+        public RemoteResiliencePolicyBuilder openDuration(long openDuration, TimeUnit unit) {
+            checkArgument(openDuration >= 0, "Open duration must not be negative");
+            return openDurationInMillis(unit.toMillis(openDuration));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.amv.access.sdk.hm.certificate;
+
+import android.util.Log;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+
+import org.amv.access.sdk.hm.error.RemoteUnavailableException;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decorates a {@link Remote} with retries and a circuit breaker - see {@link RemoteResiliencePolicy}.
+ * <p>
+ * A call is only retried if it failed transiently before emitting any item so that no item is
+ * emitted twice. While the circuit is open calls fail with a {@link RemoteUnavailableException}.
+ */
+public class ResilientRemote implements Remote {
+    private static final String TAG = "ResilientRemote";
+
+    private final Remote delegate;
+    private final RemoteResiliencePolicy policy;
+    private final Scheduler scheduler;
+    private final CircuitBreaker circuitBreaker;
+    private final Random random = new Random();
+
+    /**
+     * @param scheduler the scheduler to wait for retries on and to take the time from
+     */
+    public ResilientRemote(Remote delegate, RemoteResiliencePolicy policy, Scheduler scheduler) {
+        this.delegate = checkNotNull(delegate);
+        this.policy = checkNotNull(policy);
+        this.scheduler = checkNotNull(scheduler);
+        this.circuitBreaker = new CircuitBreaker(policy.getFailureThreshold(),
+                policy.getOpenDurationInMillis(), scheduler);
+    }
+
+    CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public void prepare(Keys keys) {
+        delegate.prepare(keys);
+    }
+
+    @Override
+    public Observable<DeviceCertificateWithIssuerKey> createDeviceCertificate(Keys keys) {
+        return resilient("createDeviceCertificate", () -> delegate.createDeviceCertificate(keys));
+    }
+
+    @Override
+    public Observable<DeviceCertificateWithIssuerKey> downloadDeviceCertificate(Keys keys, SerialNumber deviceSerial) {
+        return resilient("downloadDeviceCertificate", () -> delegate.downloadDeviceCertificate(keys, deviceSerial));
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> downloadAccessCertificates(Keys keys, DeviceCertificate deviceCertificate) {
+        return resilient("downloadAccessCertificates", () -> delegate
+                .downloadAccessCertificates(keys, deviceCertificate));
+    }
+
+    @Override
+    public Observable<List<AccessCertificatePair>> downloadAccessCertificatePages(Keys keys,
+                                                                                  DeviceCertificate deviceCertificate) {
+        return resilient("downloadAccessCertificatePages", () -> delegate
+                .downloadAccessCertificatePages(keys, deviceCertificate));
+    }
+
+    @Override
+    public Observable<AccessCertificatesDownloadEvent> downloadAccessCertificatePages(Keys keys,
+                                                                                      DeviceCertificate deviceCertificate,
+                                                                                      Optional<String> watermark) {
+        return resilient("downloadAccessCertificatePages", () -> delegate
+                .downloadAccessCertificatePages(keys, deviceCertificate, watermark));
+    }
+
+    @Override
+    public Observable<Boolean> revokeAccessCertificate(Keys keys, DeviceCertificate deviceCertificate, String accessCertificateId) {
+        return resilient("revokeAccessCertificate", () -> delegate
+                .revokeAccessCertificate(keys, deviceCertificate, accessCertificateId));
+    }
+
+    private <T> Observable<T> resilient(String operation, Supplier<Observable<T>> call) {
+        return Observable.defer(() -> {
+            AtomicInteger retries = new AtomicInteger();
+            AtomicBoolean emitted = new AtomicBoolean();
+
+            return attempt(operation, call)
+                    .doOnNext(foo -> emitted.set(true))
+                    .retryWhen(errors -> errors.flatMap(e -> {
+                        int retry = retries.incrementAndGet();
+                        boolean retryable = !emitted.get() &&
+                                retry <= policy.getMaxRetries() &&
+                                !(e instanceof RemoteUnavailableException) &&
+                                policy.getErrorClassifier().isTransient(e);
+                        if (!retryable) {
+                            return Observable.error(e);
+                        }
+
+                        long backoffInMillis = policy.backoffInMillis(retry, random.nextDouble());
+                        Log.d(TAG, operation + " failed - retry " + retry + " in " + backoffInMillis + "ms");
+                        return Observable.timer(backoffInMillis, TimeUnit.MILLISECONDS, scheduler);
+                    }));
+        });
+    }
+
+    private <T> Observable<T> attempt(String operation, Supplier<Observable<T>> call) {
+        return Observable.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Observable.error(new RemoteUnavailableException(
+                        new IllegalStateException("Circuit is open - " + operation + " was not attempted")));
+            }
+
+            // exactly one outcome is reported per acquired attempt
+            AtomicBoolean reported = new AtomicBoolean();
+            return Observable.defer(call::get)
+                    .doOnError(e -> {
+                        if (reported.compareAndSet(false, true)) {
+                            if (policy.getErrorClassifier().isTransient(e)) {
+                                circuitBreaker.onFailure();
+                            } else {
+                                circuitBreaker.onSuccess();
+                            }
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnDispose(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onCancel();
+                        }
+                    });
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package org.amv.access.sdk.hm.certificate;
+
+import android.util.Log;
+
+import com.google.common.base.Objects;
+import com.highmobility.crypto.Crypto;
+import com.highmobility.utils.Base64;
+
+import org.amv.access.sdk.spi.crypto.Keys;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Signs nonces ahead of demand so that signed requests do not wait for the signature.
+ * <p>
+ * Every nonce is handed out once. The pool is filled by {@link #prefill(Keys)} and a single
+ * nonce is signed on the crypto scheduler after each take to replace it. Every nonce is signed in
+ * its own task so that other work on the crypto scheduler is not held up by a refill. The pool
+ * only holds nonces signed with the keys of the last take and discards nonces older than the
+ * given max age. If the pool is empty a nonce is signed on demand.
+ */
+class SignedNoncePool {
+    private static final String TAG = "SignedNoncePool";
+    private static final int NONCE_LENGTH = 64;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final Deque<SignedNonce> signedNonces = new ArrayDeque<>();
+
+    private final int capacity;
+    private final long maxAgeInMillis;
+    private final Scheduler cryptoScheduler;
+    private final Scheduler resultScheduler;
+
+    private Keys keys;
+    private int pendingSignatures;
+
+    /**
+     * @param cryptoScheduler the scheduler nonces are signed on
+     * @param resultScheduler the scheduler nonces are emitted on
+     */
+    SignedNoncePool(int capacity, long maxAgeInMillis, Scheduler cryptoScheduler, Scheduler resultScheduler) {
+        checkArgument(capacity >= 0, "Capacity must not be negative");
+        this.capacity = capacity;
+        this.maxAgeInMillis = maxAgeInMillis;
+        this.cryptoScheduler = checkNotNull(cryptoScheduler);
+        this.resultScheduler = checkNotNull(resultScheduler);
+    }
+
+    /**
+     * @return an observable emitting the base64 encoded nonce and its signature
+     */
+    Observable<String[]> take(Keys keys) {
+        checkNotNull(keys);
+
+        return Observable.defer(() -> {
+            SignedNonce signedNonce = poll(keys);
+            scheduleSignatures(1);
+
+            if (signedNonce != null) {
+                return Observable.just(signedNonce.toStrings())
+                        .subscribeOn(resultScheduler);
+            }
+            return Observable.fromCallable(() -> sign(keys).toStrings())
+                    .subscribeOn(cryptoScheduler)
+                    .observeOn(resultScheduler);
+        });
+    }
+
+    /**
+     * Signs nonces with the given keys until the pool is full.
+     */
+    void prefill(Keys keys) {
+        checkNotNull(keys);
+
+        scheduleSignatures(useKeys(keys));
+    }
+
+    synchronized int size() {
+        return signedNonces.size();
+    }
+
+    private synchronized int useKeys(Keys keys) {
+        if (this.keys == null || !Objects.equal(this.keys.getPublicKeyHex(), keys.getPublicKeyHex())) {
+            this.keys = keys;
+            signedNonces.clear();
+        }
+        return capacity - signedNonces.size() - pendingSignatures;
+    }
+
+    private synchronized SignedNonce poll(Keys keys) {
+        useKeys(keys);
+
+        long now = now();
+        SignedNonce signedNonce;
+        while ((signedNonce = signedNonces.poll()) != null) {
+            if (now - signedNonce.createdAt < maxAgeInMillis) {
+                return signedNonce;
+            }
+        }
+        return null;
+    }
+
+    private void scheduleSignatures(int count) {
+        for (int i = 0; i < count; i++) {
+            Keys keysToSign = reserveSignature();
+            if (keysToSign == null) {
+                return;
+            }
+            cryptoScheduler.scheduleDirect(() -> signAhead(keysToSign));
+        }
+    }
+
+    private synchronized Keys reserveSignature() {
+        if (keys == null || signedNonces.size() + pendingSignatures >= capacity) {
+            return null;
+        }
+        pendingSignatures++;
+        return keys;
+    }
+
+    private void signAhead(Keys keysToSign) {
+        try {
+            add(keysToSign, sign(keysToSign));
+        } catch (Exception e) {
+            Log.w(TAG, "Signing nonce ahead of demand failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                pendingSignatures--;
+            }
+        }
+    }
+
+    private synchronized void add(Keys signedWith, SignedNonce signedNonce) {
+        // the keys might have changed while signing
+        if (signedWith == keys && signedNonces.size() < capacity) {
+            signedNonces.add(signedNonce);
+        }
+    }
+
+    private SignedNonce sign(Keys keys) {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+
+        byte[] signature = Crypto.sign(nonce, keys.getPrivateKey()).getByteArray();
+        return new SignedNonce(nonce, signature, now());
+    }
+
+    private long now() {
+        return cryptoScheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    private static class SignedNonce {
+        private final byte[] nonce;
+        private final byte[] signature;
+        private final long createdAt;
+
+        private SignedNonce(byte[] nonce, byte[] signature, long createdAt) {
+            this.nonce = nonce;
+            this.signature = signature;
+            this.createdAt = createdAt;
+        }
+
+        private String[] toStrings() {
+            return new String[]{Base64.encode(nonce), Base64.encode(signature)};
+        }
+    }
+}
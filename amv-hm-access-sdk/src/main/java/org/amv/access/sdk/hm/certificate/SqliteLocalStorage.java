@@ -0,0 +1,601 @@
+package org.amv.access.sdk.hm.certificate;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
+import org.amv.access.sdk.hm.AmvSdkSchedulers;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link LocalStorage} keeping access certificates in a SQLite database.
+ * <p>
+ * Access certificates are stored as binary records in a table indexed by id, gainer serial
+ * and end of validity, so lookups, paging and expiry queries run in the database instead of
+ * reading all certificates into memory. Keys and the device certificate are delegated to
+ * the given identity storage.
+ * <p>
+ * Access certificates found in the identity storage - e.g. after switching an existing
+ * installation to this storage - are imported into the empty database once and then removed
+ * from the identity storage.
+ */
+public class SqliteLocalStorage implements LocalStorage, Closeable {
+    private static final String TAG = "SqliteLocalStorage";
+
+    public static final String DEFAULT_DATABASE_NAME = "amv-access-sdk-access-certificates.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_ACCESS_CERTIFICATES = "access_certificates";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_GAINER_SERIAL = "gainer_serial";
+    private static final String COLUMN_VALID_UNTIL = "valid_until";
+    private static final String COLUMN_RECORD = "record";
+
+    private static final String SELECT_RECORDS = "SELECT " + COLUMN_RECORD + " FROM " + TABLE_ACCESS_CERTIFICATES;
+    private static final String SELECT_IDS = "SELECT " + COLUMN_ID + " FROM " + TABLE_ACCESS_CERTIFICATES;
+    // rows keep their rowid on update - ordering by it returns certificates in insertion order
+    private static final String ORDER_BY_INSERTION = " ORDER BY rowid";
+
+    private final LocalStorage identityStorage;
+    private final SQLiteOpenHelper openHelper;
+    private final AccessSdkSchedulers schedulers;
+    private final AccessCertificateChangePublisher changePublisher = new AccessCertificateChangePublisher();
+    private final AtomicBoolean accessCertificatesImported = new AtomicBoolean(false);
+
+    public SqliteLocalStorage(Context context, LocalStorage identityStorage) {
+        this(context, DEFAULT_DATABASE_NAME, identityStorage);
+    }
+
+    /**
+     * @param databaseName the name of the database file or null for an in-memory database
+     */
+    public SqliteLocalStorage(Context context, String databaseName, LocalStorage identityStorage) {
+        this(context, databaseName, identityStorage, AmvSdkSchedulers.shared());
+    }
+
+    /**
+     * @param databaseName the name of the database file or null for an in-memory database
+     */
+    public SqliteLocalStorage(Context context, String databaseName, LocalStorage identityStorage,
+                              AccessSdkSchedulers schedulers) {
+        this.openHelper = new AccessCertificateOpenHelper(checkNotNull(context), databaseName);
+        this.identityStorage = checkNotNull(identityStorage);
+        this.schedulers = checkNotNull(schedulers);
+    }
+
+    @Override
+    public Observable<Boolean> storeDeviceCertificate(DeviceCertificate deviceCertificate) {
+        return identityStorage.storeDeviceCertificate(deviceCertificate);
+    }
+
+    @Override
+    public Observable<DeviceCertificate> findDeviceCertificate() {
+        return identityStorage.findDeviceCertificate();
+    }
+
+    @Override
+    public Observable<Boolean> storeIssuerPublicKey(byte[] issuerPublicKey) {
+        return identityStorage.storeIssuerPublicKey(issuerPublicKey);
+    }
+
+    @Override
+    public Observable<byte[]> findIssuerPublicKey() {
+        return identityStorage.findIssuerPublicKey();
+    }
+
+    @Override
+    public Observable<Boolean> storeDeviceCertificateWithIssuerKey(DeviceCertificateWithIssuerKey deviceCertificateWithIssuerKey) {
+        return identityStorage.storeDeviceCertificateWithIssuerKey(deviceCertificateWithIssuerKey);
+    }
+
+    @Override
+    public Observable<Boolean> storeKeys(Keys keys) {
+        return identityStorage.storeKeys(keys);
+    }
+
+    @Override
+    public Observable<Keys> findKeys() {
+        return identityStorage.findKeys();
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificates(List<AccessCertificatePair> certificates) {
+        return syncAccessCertificates(certificates)
+                .map(foo -> true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Already stored access certificates keep their position, new ones are appended.
+     */
+    @Override
+    public Observable<AccessCertificatesChangeEvent> syncAccessCertificates(List<AccessCertificatePair> certificates) {
+        checkNotNull(certificates);
+
+        return writeAccessCertificates("syncAccessCertificates", certificates, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Already stored access certificates keep their position, new ones are appended.
+     */
+    @Override
+    public Observable<AccessCertificatesChangeEvent> mergeAccessCertificates(List<AccessCertificatePair> certificates) {
+        checkNotNull(certificates);
+
+        return writeAccessCertificates("mergeAccessCertificates", certificates, false);
+    }
+
+    /**
+     * @param removeStale whether stored access certificates not contained in the given ones are removed
+     */
+    private Observable<AccessCertificatesChangeEvent> writeAccessCertificates(String operation,
+                                                                              List<AccessCertificatePair> certificates,
+                                                                              boolean removeStale) {
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler(operation))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, operation))
+                .map(foo -> {
+                    Map<String, AccessCertificatePair> certificatesById = new LinkedHashMap<>();
+                    for (AccessCertificatePair certificate : certificates) {
+                        certificatesById.put(certificate.getId(), certificate);
+                    }
+
+                    List<AccessCertificatePair> added = new ArrayList<>();
+                    List<AccessCertificatePair> updated = new ArrayList<>();
+                    Set<String> staleIds = new LinkedHashSet<>();
+
+                    SQLiteDatabase db = openHelper.getWritableDatabase();
+                    db.beginTransaction();
+                    try (SQLiteStatement insert = compileInsert(db);
+                         SQLiteStatement update = compileUpdate(db)) {
+                        Map<String, byte[]> previousRecords = queryRecordsById();
+
+                        for (AccessCertificatePair certificate : certificatesById.values()) {
+                            byte[] record = AccessCertificatePairCodec.encode(certificate);
+                            byte[] previousRecord = previousRecords.get(certificate.getId());
+
+                            if (previousRecord == null) {
+                                bindRow(insert, certificate, record);
+                                insert.executeInsert();
+                                added.add(certificate);
+                            } else if (!Arrays.equals(previousRecord, record)) {
+                                bindRow(update, certificate, record);
+                                update.executeUpdateDelete();
+                                updated.add(certificate);
+                            }
+                        }
+
+                        if (removeStale) {
+                            staleIds.addAll(previousRecords.keySet());
+                            staleIds.removeAll(certificatesById.keySet());
+                        }
+                        for (String staleId : staleIds) {
+                            db.delete(TABLE_ACCESS_CERTIFICATES, COLUMN_ID + " = ?", new String[]{staleId});
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+
+                    return changePublisher.publish(added, updated, staleIds);
+                })
+                .doOnNext(event -> Log.d(TAG, operation + " finished: "
+                        + event.getAddedAccessCertificates().size() + " added, "
+                        + event.getUpdatedAccessCertificates().size() + " updated, "
+                        + event.getRemovedAccessCertificateIds().size() + " removed"));
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificate(AccessCertificatePair certificate) {
+        checkNotNull(certificate);
+
+        return Observable.just(certificate)
+                .subscribeOn(schedulers.storageWriteScheduler("storeAccessCertificate"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificate"))
+                .map(val -> {
+                    boolean isNew;
+
+                    SQLiteDatabase db = openHelper.getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        byte[] record = AccessCertificatePairCodec.encode(val);
+
+                        // update in place to keep the position of an existing certificate
+                        try (SQLiteStatement update = compileUpdate(db)) {
+                            bindRow(update, val, record);
+                            isNew = update.executeUpdateDelete() == 0;
+                        }
+                        if (isNew) {
+                            try (SQLiteStatement insert = compileInsert(db)) {
+                                bindRow(insert, val, record);
+                                insert.executeInsert();
+                            }
+                        }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+
+                    changePublisher.publishStored(val, isNew);
+                    return true;
+                })
+                .doOnNext(foo -> Log.d(TAG, "storeAccessCertificate finished"));
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> findAccessCertificates() {
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificates"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificates"))
+                .map(foo -> queryAccessCertificates(SELECT_RECORDS + ORDER_BY_INSERTION))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificates finished"))
+                .flatMapIterable(certificates -> certificates);
+    }
+
+    /**
+     * Find a page of stored access certificates in the order they have been stored.
+     *
+     * @param offset the number of access certificates to skip
+     * @param limit  the maximum number of access certificates to emit
+     */
+    public Observable<AccessCertificatePair> findAccessCertificates(long offset, int limit) {
+        checkArgument(offset >= 0, "Offset must not be negative");
+        checkArgument(limit > 0, "Limit must be positive");
+
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificates"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificates page"))
+                .map(foo -> queryAccessCertificates(SELECT_RECORDS + ORDER_BY_INSERTION
+                        + " LIMIT " + limit + " OFFSET " + offset))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificates page finished"))
+                .flatMapIterable(certificates -> certificates);
+    }
+
+    @Override
+    public Observable<Optional<AccessCertificatePair>> findAccessCertificateById(String id) {
+        checkNotNull(id);
+
+        return Observable.just(id)
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificateById"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificateById"))
+                .map(val -> queryAccessCertificates(SELECT_RECORDS + " WHERE " + COLUMN_ID + " = ?", val))
+                .map(certificates -> certificates.isEmpty() ?
+                        Optional.<AccessCertificatePair>absent() :
+                        Optional.of(certificates.get(0)))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificateById finished"));
+    }
+
+    @Override
+    public Observable<AccessCertificatePair> findAccessCertificatesByVehicleSerial(SerialNumber vehicleSerial) {
+        checkNotNull(vehicleSerial);
+
+        return Observable.just(HmAccessCertificatePairs.vehicleSerialKey(vehicleSerial))
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificatesByVehicleSerial"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesByVehicleSerial"))
+                .map(vehicleSerialKey -> queryAccessCertificates(SELECT_RECORDS
+                        + " WHERE " + COLUMN_GAINER_SERIAL + " = ?" + ORDER_BY_INSERTION, vehicleSerialKey))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesByVehicleSerial finished"))
+                .flatMapIterable(certificates -> certificates);
+    }
+
+    /**
+     * Find all access certificates whose device access certificate expires before the given date.
+     */
+    public Observable<AccessCertificatePair> findAccessCertificatesExpiringBefore(Calendar date) {
+        checkNotNull(date);
+
+        return Observable.just(date.getTimeInMillis())
+                .subscribeOn(schedulers.storageScheduler("findAccessCertificatesExpiringBefore"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesExpiringBefore"))
+                .map(millis -> queryAccessCertificates(SELECT_RECORDS
+                        + " WHERE " + COLUMN_VALID_UNTIL + " < ?"
+                        + " ORDER BY " + COLUMN_VALID_UNTIL, String.valueOf(millis)))
+                .doOnNext(foo -> Log.d(TAG, "findAccessCertificatesExpiringBefore finished"))
+                .flatMapIterable(certificates -> certificates);
+    }
+
+    /**
+     * Remove all access certificates whose device access certificate expires before the given date.
+     *
+     * @return an observable emitting the number of removed access certificates
+     */
+    public Observable<Integer> removeAccessCertificatesExpiringBefore(Calendar date) {
+        checkNotNull(date);
+
+        return Observable.just(date.getTimeInMillis())
+                .subscribeOn(schedulers.storageWriteScheduler("removeAccessCertificatesExpiringBefore"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "removeAccessCertificatesExpiringBefore"))
+                .map(millis -> {
+                    String[] args = new String[]{String.valueOf(millis)};
+                    List<String> removedIds;
+
+                    SQLiteDatabase db = openHelper.getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        removedIds = queryIds(SELECT_IDS + " WHERE " + COLUMN_VALID_UNTIL + " < ?", args);
+                        db.delete(TABLE_ACCESS_CERTIFICATES, COLUMN_VALID_UNTIL + " < ?", args);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+
+                    changePublisher.publishRemoved(removedIds);
+                    return removedIds.size();
+                })
+                .doOnNext(count -> Log.d(TAG, "removeAccessCertificatesExpiringBefore finished: " + count));
+    }
+
+    @Override
+    public Observable<Boolean> removeAccessCertificateById(String accessCertificateId) {
+        checkNotNull(accessCertificateId);
+
+        return Observable.just(accessCertificateId)
+                .subscribeOn(schedulers.storageWriteScheduler("removeAccessCertificateById"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "removeAccessCertificateById"))
+                .map(id -> {
+                    int removedCount = openHelper.getWritableDatabase().delete(TABLE_ACCESS_CERTIFICATES,
+                            COLUMN_ID + " = ?", new String[]{id});
+                    if (removedCount > 0) {
+                        changePublisher.publishRemoved(Collections.singletonList(id));
+                    }
+                    return true;
+                })
+                .doOnNext(foo -> Log.d(TAG, "removeAccessCertificateById finished"));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answered by the index on the end of validity without decoding any access certificate.
+     */
+    @Override
+    public Observable<Optional<Long>> findEarliestValidUntilAfter(long timeInMillis) {
+        return Observable.just(timeInMillis)
+                .subscribeOn(schedulers.storageScheduler("findEarliestValidUntilAfter"))
+                .flatMap(val -> importAccessCertificatesIfNecessary().map(foo -> val))
+                .doOnNext(foo -> Log.d(TAG, "findEarliestValidUntilAfter"))
+                .map(this::queryEarliestValidUntilAfter)
+                .doOnNext(foo -> Log.d(TAG, "findEarliestValidUntilAfter finished"));
+    }
+
+    @Override
+    public Observable<Boolean> storeAccessCertificatesWatermark(String watermark) {
+        return identityStorage.storeAccessCertificatesWatermark(watermark);
+    }
+
+    @Override
+    public Observable<Optional<String>> findAccessCertificatesWatermark() {
+        return identityStorage.findAccessCertificatesWatermark();
+    }
+
+    @Override
+    public Observable<AccessCertificatesChangeEvent> observeAccessCertificateChanges() {
+        return changePublisher.observe();
+    }
+
+    @Override
+    public Observable<Boolean> reset() {
+        return Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler("reset"))
+                .doOnNext(foo -> Log.d(TAG, "reset"))
+                .doOnNext(foo -> {
+                    List<String> removedIds;
+
+                    SQLiteDatabase db = openHelper.getWritableDatabase();
+                    db.beginTransaction();
+                    try {
+                        removedIds = queryIds(SELECT_IDS);
+                        db.delete(TABLE_ACCESS_CERTIFICATES, null, null);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+
+                    changePublisher.publishRemoved(removedIds);
+                })
+                .flatMap(foo -> identityStorage.reset())
+                .doOnNext(foo -> Log.d(TAG, "reset finished"));
+    }
+
+    @Override
+    public void close() {
+        openHelper.close();
+    }
+
+    private Observable<Boolean> importAccessCertificatesIfNecessary() {
+        return Observable.defer(() -> {
+            if (accessCertificatesImported.get()) {
+                return Observable.just(true);
+            }
+
+            // the import writes and must not run concurrently on a multi-threaded storage scheduler
+            return importAccessCertificates()
+                    .subscribeOn(schedulers.storageWriteScheduler("importAccessCertificatesIfNecessary"));
+        });
+    }
+
+    /**
+     * Moves access certificates from the identity storage to the database. They are only
+     * imported if the database is empty - otherwise it already holds more recent ones.
+     */
+    private Observable<Boolean> importAccessCertificates() {
+        return Observable.defer(() -> {
+            if (accessCertificatesImported.get()) {
+                return Observable.just(true);
+            }
+
+            return identityStorage.findAccessCertificates()
+                    .toList()
+                    .toObservable()
+                    .observeOn(schedulers.storageWriteScheduler("importAccessCertificates"))
+                    .flatMap(certificates -> {
+                        if (certificates.isEmpty()) {
+                            return Observable.just(true);
+                        }
+
+                        SQLiteDatabase db = openHelper.getWritableDatabase();
+                        if (DatabaseUtils.queryNumEntries(db, TABLE_ACCESS_CERTIFICATES) == 0) {
+                            Log.i(TAG, "Importing " + certificates.size() + " access certificates from identity storage");
+                            insertAccessCertificates(db, certificates);
+                        } else {
+                            Log.w(TAG, "Discarding " + certificates.size() + " access certificates of identity storage");
+                        }
+
+                        return identityStorage.syncAccessCertificates(Collections.emptyList())
+                                .map(foo -> true);
+                    })
+                    .doOnNext(foo -> accessCertificatesImported.set(true));
+        });
+    }
+
+    private static void insertAccessCertificates(SQLiteDatabase db, List<AccessCertificatePair> certificates) {
+        db.beginTransaction();
+        try (SQLiteStatement insert = compileInsert(db)) {
+            for (AccessCertificatePair certificate : certificates) {
+                bindRow(insert, certificate, AccessCertificatePairCodec.encode(certificate));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<AccessCertificatePair> queryAccessCertificates(String sql, String... args) {
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(sql, args)) {
+            List<AccessCertificatePair> certificates = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                certificates.add(AccessCertificatePairCodec.decode(cursor.getBlob(0)));
+            }
+            return certificates;
+        }
+    }
+
+    private List<String> queryIds(String sql, String... args) {
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(sql, args)) {
+            List<String> ids = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+            }
+            return ids;
+        }
+    }
+
+    private Optional<Long> queryEarliestValidUntilAfter(long timeInMillis) {
+        String sql = "SELECT " + COLUMN_VALID_UNTIL + " FROM " + TABLE_ACCESS_CERTIFICATES
+                + " WHERE " + COLUMN_VALID_UNTIL + " > ?"
+                + " ORDER BY " + COLUMN_VALID_UNTIL + " LIMIT 1";
+
+        String[] args = new String[]{String.valueOf(timeInMillis)};
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(sql, args)) {
+            return cursor.moveToNext() ? Optional.of(cursor.getLong(0)) : Optional.<Long>absent();
+        }
+    }
+
+    private Map<String, byte[]> queryRecordsById() {
+        String sql = "SELECT " + COLUMN_ID + ", " + COLUMN_RECORD + " FROM " + TABLE_ACCESS_CERTIFICATES
+                + ORDER_BY_INSERTION;
+
+        try (Cursor cursor = openHelper.getReadableDatabase().rawQuery(sql, null)) {
+            Map<String, byte[]> records = new LinkedHashMap<>();
+            while (cursor.moveToNext()) {
+                records.put(cursor.getString(0), cursor.getBlob(1));
+            }
+            return records;
+        }
+    }
+
+    // both statements bind the same values in the same order - see bindRow
+    private static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE_ACCESS_CERTIFICATES + " ("
+                + COLUMN_GAINER_SERIAL + ", "
+                + COLUMN_VALID_UNTIL + ", "
+                + COLUMN_RECORD + ", "
+                + COLUMN_ID + ") VALUES (?, ?, ?, ?)");
+    }
+
+    private static SQLiteStatement compileUpdate(SQLiteDatabase db) {
+        return db.compileStatement("UPDATE " + TABLE_ACCESS_CERTIFICATES + " SET "
+                + COLUMN_GAINER_SERIAL + " = ?, "
+                + COLUMN_VALID_UNTIL + " = ?, "
+                + COLUMN_RECORD + " = ? WHERE "
+                + COLUMN_ID + " = ?");
+    }
+
+    private static void bindRow(SQLiteStatement statement, AccessCertificatePair certificate, byte[] record) {
+        statement.clearBindings();
+        statement.bindString(1, HmAccessCertificatePairs.vehicleSerialKey(certificate));
+        statement.bindLong(2, validUntil(certificate));
+        statement.bindBlob(3, record);
+        statement.bindString(4, certificate.getId());
+    }
+
+    private static long validUntil(AccessCertificatePair certificate) {
+        return certificate.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+    }
+
+    private static class AccessCertificateOpenHelper extends SQLiteOpenHelper {
+
+        AccessCertificateOpenHelper(Context context, String databaseName) {
+            super(context, databaseName, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ACCESS_CERTIFICATES + " ("
+                    + COLUMN_ID + " TEXT PRIMARY KEY NOT NULL, "
+                    + COLUMN_GAINER_SERIAL + " TEXT NOT NULL, "
+                    + COLUMN_VALID_UNTIL + " INTEGER NOT NULL, "
+                    + COLUMN_RECORD + " BLOB NOT NULL)");
+            db.execSQL("CREATE INDEX idx_" + TABLE_ACCESS_CERTIFICATES + "_" + COLUMN_GAINER_SERIAL
+                    + " ON " + TABLE_ACCESS_CERTIFICATES + " (" + COLUMN_GAINER_SERIAL + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_ACCESS_CERTIFICATES + "_" + COLUMN_VALID_UNTIL
+                    + " ON " + TABLE_ACCESS_CERTIFICATES + " (" + COLUMN_VALID_UNTIL + ")");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // there is only one version of the schema so far
+        }
+    }
+}
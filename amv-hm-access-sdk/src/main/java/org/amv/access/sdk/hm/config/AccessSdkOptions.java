@@ -3,7 +3,11 @@ package org.amv.access.sdk.hm.config;
 import com.google.common.base.Optional;
 
 import org.amv.access.sdk.hm.AccessApiContext;
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
+import org.amv.access.sdk.hm.certificate.AccessApiClientFactory;
+import org.amv.access.sdk.hm.certificate.AccessCertificateRefreshPolicy;
 import org.amv.access.sdk.hm.certificate.Remote;
+import org.amv.access.sdk.hm.certificate.RemoteResiliencePolicy;
 import org.amv.access.sdk.spi.identity.Identity;
 
 public interface AccessSdkOptions {
@@ -13,4 +17,56 @@ public interface AccessSdkOptions {
     Optional<Identity> getIdentity();
 
     Optional<Remote> getRemote();
+
+    /**
+     * Writes to local storage issued within this delay are coalesced into a single disk write.
+     * Writes not yet written are lost if the process dies within the delay.
+     *
+     * @return the write delay in milliseconds or empty if every write is committed immediately
+     */
+    Optional<Long> getStorageWriteDelayInMillis();
+
+    /**
+     * @return the backend to store local data in or empty to use shared preferences
+     */
+    Optional<StorageBackend> getStorageBackend();
+
+    /**
+     * Schedulers, executors and pool sizes the sdk runs its work on. The thread pools owned by
+     * the given instance are shut down with the sdk.
+     *
+     * @return the schedulers to use or empty to create single-threaded pools for the sdk instance
+     */
+    Optional<AccessSdkSchedulers> getSchedulers();
+
+    /**
+     * Used to create the http clients of the default remote - e.g. to configure connection
+     * pooling and timeouts. Ignored if a remote is given via {@link #getRemote()}.
+     *
+     * @return the factory to use or empty to create clients with default settings
+     */
+    Optional<AccessApiClientFactory> getAccessApiClientFactory();
+
+    /**
+     * Number of access certificate pages the default remote downloads at the same time after
+     * the first page. Ignored if a remote is given via {@link #getRemote()}.
+     *
+     * @return the number of pages to download concurrently or empty to download one page at a time
+     */
+    Optional<Integer> getAccessCertificateDownloadConcurrency();
+
+    /**
+     * Retries and circuit breaker applied to all calls of the remote - including a remote given
+     * via {@link #getRemote()}. Use {@link RemoteResiliencePolicy#disabled()} to opt out.
+     *
+     * @return the policy to use or empty to use {@link RemoteResiliencePolicy#defaults()}
+     */
+    Optional<RemoteResiliencePolicy> getRemoteResiliencePolicy();
+
+    /**
+     * Enables refreshing access certificates in the background after the sdk has been initialized.
+     *
+     * @return the policy to refresh access certificates with or empty to only refresh on request
+     */
+    Optional<AccessCertificateRefreshPolicy> getAccessCertificateRefreshPolicy();
 }
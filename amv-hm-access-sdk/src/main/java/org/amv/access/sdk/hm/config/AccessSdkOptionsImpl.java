@@ -3,7 +3,11 @@ package org.amv.access.sdk.hm.config;
 import com.google.common.base.Optional;
 
 import org.amv.access.sdk.hm.AccessApiContext;
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
+import org.amv.access.sdk.hm.certificate.AccessApiClientFactory;
+import org.amv.access.sdk.hm.certificate.AccessCertificateRefreshPolicy;
 import org.amv.access.sdk.hm.certificate.Remote;
+import org.amv.access.sdk.hm.certificate.RemoteResiliencePolicy;
 import org.amv.access.sdk.spi.identity.Identity;
 
 import lombok.Builder;
@@ -19,6 +23,13 @@ public class AccessSdkOptionsImpl implements AccessSdkOptions {
 
     private Identity identity;
     private Remote remote;
+    private Long storageWriteDelayInMillis;
+    private StorageBackend storageBackend;
+    private AccessSdkSchedulers schedulers;
+    private AccessApiClientFactory accessApiClientFactory;
+    private Integer accessCertificateDownloadConcurrency;
+    private RemoteResiliencePolicy remoteResiliencePolicy;
+    private AccessCertificateRefreshPolicy accessCertificateRefreshPolicy;
 
     @Override
     public Optional<Identity> getIdentity() {
@@ -29,4 +40,39 @@ public class AccessSdkOptionsImpl implements AccessSdkOptions {
     public Optional<Remote> getRemote() {
         return Optional.fromNullable(remote);
     }
+
+    @Override
+    public Optional<Long> getStorageWriteDelayInMillis() {
+        return Optional.fromNullable(storageWriteDelayInMillis);
+    }
+
+    @Override
+    public Optional<StorageBackend> getStorageBackend() {
+        return Optional.fromNullable(storageBackend);
+    }
+
+    @Override
+    public Optional<AccessSdkSchedulers> getSchedulers() {
+        return Optional.fromNullable(schedulers);
+    }
+
+    @Override
+    public Optional<AccessApiClientFactory> getAccessApiClientFactory() {
+        return Optional.fromNullable(accessApiClientFactory);
+    }
+
+    @Override
+    public Optional<Integer> getAccessCertificateDownloadConcurrency() {
+        return Optional.fromNullable(accessCertificateDownloadConcurrency);
+    }
+
+    @Override
+    public Optional<RemoteResiliencePolicy> getRemoteResiliencePolicy() {
+        return Optional.fromNullable(remoteResiliencePolicy);
+    }
+
+    @Override
+    public Optional<AccessCertificateRefreshPolicy> getAccessCertificateRefreshPolicy() {
+        return Optional.fromNullable(accessCertificateRefreshPolicy);
+    }
 }
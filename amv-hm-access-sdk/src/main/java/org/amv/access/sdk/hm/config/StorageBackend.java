@@ -0,0 +1,27 @@
+package org.amv.access.sdk.hm.config;
+
+/**
+ * The backend local data of the sdk is persisted in.
+ * <p>
+ * Switching an existing installation from {@link #SHARED_PREFERENCES} to {@link #SQLITE}
+ * keeps all data: keys and device certificate stay in the shared preferences and the
+ * access certificates are imported into the database on first access. Any other switch
+ * does not migrate data and requires the sdk to be initialized again.
+ */
+public enum StorageBackend {
+    /**
+     * Store all values in the shared preferences of the application.
+     */
+    SHARED_PREFERENCES,
+    /**
+     * Store all values in an append-only log in the private files directory of the application.
+     * Preferable if a large number of access certificates is stored.
+     */
+    APPEND_ONLY_FILE,
+    /**
+     * Store access certificates in an indexed SQLite database and all other values
+     * in the shared preferences of the application.
+     * Preferable if thousands of access certificates are stored.
+     */
+    SQLITE
+}
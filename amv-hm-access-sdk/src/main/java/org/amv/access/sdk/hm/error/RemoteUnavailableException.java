@@ -0,0 +1,21 @@
+package org.amv.access.sdk.hm.error;
+
+import org.amv.access.sdk.spi.error.AccessSdkException;
+
+public class RemoteUnavailableException extends AccessSdkException {
+    private static Type TYPE = new Type() {
+        @Override
+        public String getName() {
+            return "REMOTE_UNAVAILABLE";
+        }
+
+        @Override
+        public String getDescription() {
+            return "The remote is temporarily unavailable. Please try again later.";
+        }
+    };
+
+    public RemoteUnavailableException(Throwable cause) {
+        super(TYPE, cause);
+    }
+}
@@ -0,0 +1,500 @@
+package org.amv.access.sdk.hm.secure;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.hm.AmvSdkSchedulers;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link Storage} appending every write to a record log in a single file.
+ * <p>
+ * Only the position of each value is kept in memory - values are read from the file on demand.
+ * Every commit appends one checksummed record and is forced to disk, so a batch is either
+ * read back completely or not at all. Once the log holds considerably more superseded than live
+ * data it is compacted in the background by rewriting all live values to a new file.
+ * <p>
+ * Layout of a record (all integers are big-endian):
+ * <pre>
+ * +-----------+-----------+-----------+-------------------------------------------------------+
+ * | length    | crc32     | op count  | ops: op (1 b), key length (2 b), key (utf-8)           |
+ * | 4 bytes   | 4 bytes   | 4 bytes   |      and for puts: value length (4 b), value           |
+ * +-----------+-----------+-----------+-------------------------------------------------------+
+ * </pre>
+ */
+public class AppendOnlyFileStorage implements Storage, Closeable {
+    private static final String TAG = "AppendOnlyFileStorage";
+
+    private static final byte OP_PUT_STRING = 1;
+    private static final byte OP_PUT_BYTES = 2;
+    private static final byte OP_REMOVE_STRING = 3;
+    private static final byte OP_REMOVE_BYTES = 4;
+
+    private static final int RECORD_HEADER_LENGTH = 8;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD_IN_BYTES = 64 * 1024;
+
+    private final File file;
+    private final File compactionFile;
+    private final long compactionThresholdInBytes;
+    private final Scheduler compactionScheduler;
+
+    private final Object lock = new Object();
+    private final Map<String, ValuePointer> strings = new HashMap<>();
+    private final Map<String, ValuePointer> bytes = new HashMap<>();
+    private FileChannel channel;
+    private long liveBytes;
+    private boolean compactionScheduled;
+
+    public AppendOnlyFileStorage(File file) {
+        this(file, DEFAULT_COMPACTION_THRESHOLD_IN_BYTES, AmvSdkSchedulers.shared().storageWriteScheduler());
+    }
+
+    public AppendOnlyFileStorage(File file, long compactionThresholdInBytes, Scheduler compactionScheduler) {
+        checkArgument(compactionThresholdInBytes >= 0L, "Compaction threshold must not be negative");
+
+        this.file = checkNotNull(file);
+        this.compactionFile = new File(file.getPath() + ".compact");
+        this.compactionThresholdInBytes = compactionThresholdInBytes;
+        this.compactionScheduler = checkNotNull(compactionScheduler);
+    }
+
+    @Override
+    public Observable<Optional<String>> findString(String key) {
+        checkNotNull(key);
+
+        return Observable.just(key)
+                .map(k -> find(strings, k).transform(val -> new String(val, Charsets.UTF_8)));
+    }
+
+    @Override
+    public Observable<Boolean> storeString(String key, String value) {
+        checkNotNull(key);
+        checkNotNull(value);
+
+        return batch().putString(key, value).commit();
+    }
+
+    @Override
+    public Observable<Optional<String>> removeString(String key) {
+        return findString(key)
+                .flatMap(val -> !val.isPresent() ? Observable.just(val) : batch()
+                        .removeString(key)
+                        .commit()
+                        .map(foo -> val));
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> findBytes(String key) {
+        checkNotNull(key);
+
+        return Observable.just(key)
+                .map(k -> find(bytes, k));
+    }
+
+    @Override
+    public Observable<Boolean> storeBytes(String key, byte[] value) {
+        checkNotNull(key);
+        checkNotNull(value);
+
+        return batch().putBytes(key, value).commit();
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> removeBytes(String key) {
+        return findBytes(key)
+                .flatMap(val -> !val.isPresent() ? Observable.just(val) : batch()
+                        .removeBytes(key)
+                        .commit()
+                        .map(foo -> val));
+    }
+
+    @Override
+    public Batch batch() {
+        return new RecordBatch();
+    }
+
+    /**
+     * Rewrite all live values to a new file if the log contains superseded values.
+     *
+     * @return an observable emitting true after the log has been compacted
+     */
+    public Observable<Boolean> compact() {
+        return Observable.just(1)
+                .map(foo -> {
+                    synchronized (lock) {
+                        compactInternal();
+                    }
+                    return true;
+                });
+    }
+
+    /**
+     * @return the current size of the log file in bytes
+     */
+    public long size() throws IOException {
+        synchronized (lock) {
+            return openIfNecessary().size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            strings.clear();
+            bytes.clear();
+            liveBytes = 0L;
+        }
+    }
+
+    private Optional<byte[]> find(Map<String, ValuePointer> index, String key) throws IOException {
+        synchronized (lock) {
+            FileChannel fileChannel = openIfNecessary();
+
+            ValuePointer pointer = index.get(key);
+            if (pointer == null) {
+                return Optional.absent();
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(pointer.length);
+            readFully(fileChannel, buffer, pointer.position);
+            return Optional.of(buffer.array());
+        }
+    }
+
+    private boolean write(List<Op> ops) throws IOException {
+        if (ops.isEmpty()) {
+            return true;
+        }
+
+        synchronized (lock) {
+            FileChannel fileChannel = openIfNecessary();
+
+            long sizeBefore = fileChannel.size();
+            long position = sizeBefore;
+            ByteBuffer record = encodeRecord(ops);
+            try {
+                while (record.hasRemaining()) {
+                    position += fileChannel.write(record, position);
+                }
+                fileChannel.force(false);
+            } catch (IOException | RuntimeException e) {
+                discardIncompleteRecord(fileChannel, sizeBefore);
+                throw e;
+            }
+
+            record.rewind();
+            long recordPosition = position - record.limit();
+            applyRecord(record, recordPosition);
+
+            scheduleCompactionIfNecessary(fileChannel.size());
+        }
+        return true;
+    }
+
+    /**
+     * Remove a partially appended record - otherwise subsequent records would be
+     * appended after it and discarded together with it on the next load.
+     */
+    private void discardIncompleteRecord(FileChannel fileChannel, long size) {
+        try {
+            fileChannel.truncate(size);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not truncate " + file + " - reopening: " + e.getMessage());
+            try {
+                fileChannel.close();
+            } catch (IOException ignored) {
+                // the channel is dropped anyway
+            }
+            // loading the file again discards the incomplete record
+            channel = null;
+        }
+    }
+
+    FileChannel openChannel(File file) throws IOException {
+        return new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    private FileChannel openIfNecessary() throws IOException {
+        if (channel != null) {
+            return channel;
+        }
+
+        if (compactionFile.exists() && !compactionFile.delete()) {
+            Log.w(TAG, "Could not delete leftover compaction file " + compactionFile);
+        }
+
+        channel = openChannel(file);
+        load(channel);
+        return channel;
+    }
+
+    private void load(FileChannel fileChannel) throws IOException {
+        strings.clear();
+        bytes.clear();
+        liveBytes = 0L;
+
+        long size = fileChannel.size();
+        long position = 0L;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+
+        while (position + RECORD_HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(fileChannel, header, position);
+
+            int length = header.getInt(0);
+            int crc = header.getInt(4);
+            if (length < 4 || position + RECORD_HEADER_LENGTH + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(fileChannel, payload, position + RECORD_HEADER_LENGTH);
+            if (crc32(payload.array()) != crc) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + length);
+            record.put(header.array()).put(payload.array()).flip();
+            applyRecord(record, position);
+
+            position += RECORD_HEADER_LENGTH + length;
+        }
+
+        if (position < size) {
+            // an incomplete record at the end is the result of an interrupted write
+            Log.w(TAG, "Discarding " + (size - position) + " bytes of incomplete records at end of " + file);
+            fileChannel.truncate(position);
+            fileChannel.force(false);
+        }
+    }
+
+    private void applyRecord(ByteBuffer record, long recordPosition) {
+        record.position(RECORD_HEADER_LENGTH);
+
+        int opCount = record.getInt();
+        for (int i = 0; i < opCount; i++) {
+            int opStart = record.position();
+            byte op = record.get();
+            byte[] keyBytes = new byte[record.getShort() & MAX_KEY_LENGTH];
+            record.get(keyBytes);
+            String key = new String(keyBytes, Charsets.UTF_8);
+
+            Map<String, ValuePointer> index = (op == OP_PUT_STRING || op == OP_REMOVE_STRING) ? strings : bytes;
+
+            ValuePointer previous;
+            if (op == OP_PUT_STRING || op == OP_PUT_BYTES) {
+                int valueLength = record.getInt();
+                long valuePosition = recordPosition + record.position();
+                record.position(record.position() + valueLength);
+
+                int opLength = record.position() - opStart;
+                previous = index.put(key, new ValuePointer(valuePosition, valueLength, opLength));
+                liveBytes += opLength;
+            } else {
+                previous = index.remove(key);
+            }
+
+            if (previous != null) {
+                liveBytes -= previous.opLength;
+            }
+        }
+    }
+
+    private void scheduleCompactionIfNecessary(long size) {
+        if (compactionScheduled || !isCompactionNecessary(size)) {
+            return;
+        }
+
+        compactionScheduled = true;
+        compactionScheduler.scheduleDirect(() -> {
+            synchronized (lock) {
+                compactionScheduled = false;
+                try {
+                    if (channel != null && isCompactionNecessary(channel.size())) {
+                        compactInternal();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Compaction of " + file + " failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private boolean isCompactionNecessary(long size) {
+        return size > compactionThresholdInBytes && size > 2 * liveBytes;
+    }
+
+    private void compactInternal() throws IOException {
+        FileChannel fileChannel = openIfNecessary();
+        long sizeBefore = fileChannel.size();
+
+        try (FileChannel target = new RandomAccessFile(compactionFile, "rw").getChannel()) {
+            target.truncate(0L);
+
+            long position = 0L;
+            position = copyLiveValues(fileChannel, target, strings, OP_PUT_STRING, position);
+            copyLiveValues(fileChannel, target, bytes, OP_PUT_BYTES, position);
+
+            target.force(false);
+        }
+
+        fileChannel.close();
+        channel = null;
+
+        if (!compactionFile.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with compacted log");
+        }
+
+        long sizeAfter = openIfNecessary().size();
+        Log.d(TAG, "Compacted " + file + " from " + sizeBefore + " to " + sizeAfter + " bytes");
+    }
+
+    private static long copyLiveValues(FileChannel source, FileChannel target,
+                                       Map<String, ValuePointer> index, byte op, long position) throws IOException {
+        for (Map.Entry<String, ValuePointer> entry : index.entrySet()) {
+            ValuePointer pointer = entry.getValue();
+            ByteBuffer value = ByteBuffer.allocate(pointer.length);
+            readFully(source, value, pointer.position);
+
+            List<Op> ops = new ArrayList<>(1);
+            ops.add(new Op(op, entry.getKey(), value.array()));
+
+            ByteBuffer record = encodeRecord(ops);
+            while (record.hasRemaining()) {
+                position += target.write(record, position);
+            }
+        }
+        return position;
+    }
+
+    private static ByteBuffer encodeRecord(List<Op> ops) {
+        int payloadLength = 4;
+        for (Op op : ops) {
+            payloadLength += op.length();
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        payload.putInt(ops.size());
+        for (Op op : ops) {
+            payload.put(op.op);
+            payload.putShort((short) op.key.length);
+            payload.put(op.key);
+            if (op.value != null) {
+                payload.putInt(op.value.length);
+                payload.put(op.value);
+            }
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(crc32(payload.array()));
+        record.put(payload.array());
+        record.flip();
+        return record;
+    }
+
+    private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + fileChannel);
+            }
+        }
+    }
+
+    private static int crc32(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        return (int) crc32.getValue();
+    }
+
+    private static final class ValuePointer {
+        private final long position;
+        private final int length;
+        private final int opLength;
+
+        private ValuePointer(long position, int length, int opLength) {
+            this.position = position;
+            this.length = length;
+            this.opLength = opLength;
+        }
+    }
+
+    private static final class Op {
+        private final byte op;
+        private final byte[] key;
+        private final byte[] value;
+
+        private Op(byte op, String key, byte[] value) {
+            this.op = op;
+            this.key = key.getBytes(Charsets.UTF_8);
+            this.value = value;
+
+            checkArgument(this.key.length <= MAX_KEY_LENGTH, "Key is too long");
+        }
+
+        private int length() {
+            return 1 + 2 + key.length + (value != null ? 4 + value.length : 0);
+        }
+    }
+
+    private class RecordBatch implements Batch {
+        private final List<Op> ops = new ArrayList<>();
+
+        @Override
+        public Batch putString(String key, String value) {
+            ops.add(new Op(OP_PUT_STRING, checkNotNull(key), checkNotNull(value).getBytes(Charsets.UTF_8)));
+            return this;
+        }
+
+        @Override
+        public Batch putBytes(String key, byte[] value) {
+            ops.add(new Op(OP_PUT_BYTES, checkNotNull(key), checkNotNull(value).clone()));
+            return this;
+        }
+
+        @Override
+        public Batch removeString(String key) {
+            ops.add(new Op(OP_REMOVE_STRING, checkNotNull(key), null));
+            return this;
+        }
+
+        @Override
+        public Batch removeBytes(String key) {
+            ops.add(new Op(OP_REMOVE_BYTES, checkNotNull(key), null));
+            return this;
+        }
+
+        @Override
+        public Observable<Boolean> commit() {
+            List<Op> opsCopy = new ArrayList<>(ops);
+            return Observable.fromCallable(() -> write(opsCopy));
+        }
+    }
+}
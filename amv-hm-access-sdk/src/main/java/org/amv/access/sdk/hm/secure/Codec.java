@@ -4,4 +4,8 @@ public interface Codec {
     String encryptData(String key, String unencryptedData);
 
     String decryptData(String key, String encryptedData);
-}
\ No newline at end of file
+
+    byte[] encryptBytes(String key, byte[] unencryptedData);
+
+    byte[] decryptBytes(String key, byte[] encryptedData);
+}
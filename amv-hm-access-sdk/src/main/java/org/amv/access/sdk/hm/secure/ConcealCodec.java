@@ -41,4 +41,22 @@ public class ConcealCodec implements Codec {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public byte[] encryptBytes(String key, byte[] value) {
+        try {
+            return crypto.encrypt(value, Entity.create(key));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public byte[] decryptBytes(String key, byte[] value) {
+        try {
+            return crypto.decrypt(value, Entity.create(key));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
\ No newline at end of file
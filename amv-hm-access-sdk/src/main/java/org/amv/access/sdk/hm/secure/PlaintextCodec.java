@@ -10,4 +10,14 @@ public class PlaintextCodec implements Codec {
     public String decryptData(String key, String encryptedData) {
         return encryptedData;
     }
+
+    @Override
+    public byte[] encryptBytes(String key, byte[] unencryptedData) {
+        return unencryptedData;
+    }
+
+    @Override
+    public byte[] decryptBytes(String key, byte[] encryptedData) {
+        return encryptedData;
+    }
 }
@@ -1,25 +1,74 @@
 package org.amv.access.sdk.hm.secure;
 
 import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
 
 import com.google.common.base.Optional;
 
+import org.amv.access.sdk.hm.AmvSdkSchedulers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * A {@link Storage} backed by {@link SharedPreferences}.
+ * <p>
+ * By default every write is committed on its own. If constructed with a write delay,
+ * writes are kept in memory and all writes issued within the delay are applied with a
+ * single {@link SharedPreferences.Editor#apply()}. Writes issued inside {@link #inBatch(Observable)}
+ * are committed together when the batch ends. Use {@link #flush()} when pending writes
+ * must be durable. A {@link Batch} is always committed right away with a single editor.
+ */
 public class SharedPreferencesStorage implements Storage {
+    private static final String TAG = "SharedPreferencesStorage";
 
     private final SharedPreferences sharedPreferences;
+    private final long writeDelay;
+    private final TimeUnit writeDelayUnit;
+    private final Scheduler scheduler;
+
+    private final Object lock = new Object();
+    // keeps commits in the order of the writes - must not be acquired while holding lock
+    private final Object commitLock = new Object();
+    // an absent value marks a pending removal
+    private final Map<String, Optional<String>> pendingWrites = new LinkedHashMap<>();
+    // shared by all threads - see inBatch
+    private int batchDepth = 0;
+    private Disposable scheduledApply;
+    private long scheduledApplyDueInMillis;
 
     public SharedPreferencesStorage(SharedPreferences sharedPreferences) {
+        this(sharedPreferences, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    public SharedPreferencesStorage(SharedPreferences sharedPreferences, long writeDelay, TimeUnit writeDelayUnit) {
+        this(sharedPreferences, writeDelay, writeDelayUnit, AmvSdkSchedulers.shared().storageWriteScheduler());
+    }
+
+    public SharedPreferencesStorage(SharedPreferences sharedPreferences, long writeDelay,
+                                    TimeUnit writeDelayUnit, Scheduler scheduler) {
+        checkArgument(writeDelay >= 0L, "Write delay must not be negative");
+
         this.sharedPreferences = checkNotNull(sharedPreferences);
+        this.writeDelay = writeDelay;
+        this.writeDelayUnit = checkNotNull(writeDelayUnit);
+        this.scheduler = checkNotNull(scheduler);
     }
 
     @Override
     public Observable<Optional<String>> findString(String key) {
-        return Observable.just(key)
-                .map(this::findStringInternal);
+        return Observable.fromCallable(() -> findStringInternal(key));
     }
 
     @Override
@@ -29,33 +78,260 @@ public class SharedPreferencesStorage implements Storage {
 
         return Observable.just(key, value)
                 .buffer(2)
-                .map(list -> {
-                    storeStringInternal(list.get(0), list.get(1));
-                    return true;
-                });
+                .map(list -> write(Collections.singletonMap(list.get(0), Optional.of(list.get(1)))));
     }
 
     @Override
     public Observable<Optional<String>> removeString(String key) {
         return findString(key)
-                .doOnNext(val -> {
-                    sharedPreferences.edit().remove(key).commit();
-                });
+                .doOnNext(val -> write(Collections.singletonMap(key, Optional.absent())));
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> findBytes(String key) {
+        return findString(key)
+                .map(val -> val.transform(SharedPreferencesStorage::decodeBytes));
+    }
+
+    @Override
+    public Observable<Boolean> storeBytes(String key, byte[] value) {
+        checkNotNull(key);
+        checkNotNull(value);
+
+        return storeString(key, encodeBytes(value));
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> removeBytes(String key) {
+        return removeString(key)
+                .map(val -> val.transform(SharedPreferencesStorage::decodeBytes));
+    }
+
+    @Override
+    public Batch batch() {
+        return new SharedPreferencesBatch();
+    }
+
+    /**
+     * Synchronously commit all pending writes.
+     *
+     * @return an observable emitting true if all pending writes have been written to disk
+     */
+    public Observable<Boolean> flush() {
+        return Observable.fromCallable(() -> writePendingWrites(Collections.emptyMap(), true));
+    }
+
+    /**
+     * Run the given operations as a batch: writes issued until the returned observable
+     * terminates or is disposed are committed together.
+     * <p>
+     * The batch applies to this storage as a whole, not to the calling thread: writes of other
+     * threads issued meanwhile are held back until the batch ends as well.
+     */
+    public <T> Observable<T> inBatch(Observable<T> operations) {
+        checkNotNull(operations);
+
+        return Observable.defer(() -> {
+            synchronized (lock) {
+                batchDepth++;
+            }
+            return operations.doFinally(this::endBatch);
+        });
+    }
+
+    /**
+     * @return the number of writes not yet handed over to shared preferences
+     */
+    public int getPendingWriteCount() {
+        synchronized (lock) {
+            return pendingWrites.size();
+        }
+    }
+
+    private void endBatch() {
+        synchronized (lock) {
+            batchDepth--;
+            if (batchDepth > 0) {
+                return;
+            }
+        }
+        writePendingWrites(Collections.emptyMap(), true);
     }
 
     private Optional<String> findStringInternal(String key) {
         checkNotNull(key);
 
+        synchronized (lock) {
+            Optional<String> pendingValue = pendingWrites.get(key);
+            if (pendingValue != null) {
+                return pendingValue;
+            }
+        }
+
         String valueOrNull = sharedPreferences.getString(key, null);
         return Optional.fromNullable(valueOrNull);
     }
 
-    private void storeStringInternal(String key, String value) {
-        checkNotNull(key);
+    private boolean write(Map<String, Optional<String>> writes) {
+        Map<String, Optional<String>> writesToCommit = writes;
+        synchronized (lock) {
+            boolean deferWrite = batchDepth > 0 || writeDelay > 0L;
+            if (deferWrite) {
+                pendingWrites.putAll(writes);
+
+                if (batchDepth > 0 || (scheduledApply != null && !isScheduledApplyLost()) || scheduleApply()) {
+                    return true;
+                }
+                Log.w(TAG, "Scheduling delayed writes failed - committing them right away");
+                writesToCommit = Collections.emptyMap();
+            }
+        }
+        return writePendingWrites(writesToCommit, true);
+    }
+
+    /**
+     * Must be called while holding the lock.
+     *
+     * @return true if the pending writes have been scheduled
+     */
+    private boolean scheduleApply() {
+        if (scheduledApply != null) {
+            scheduledApply.dispose();
+            scheduledApply = null;
+        }
+
+        Disposable scheduled;
+        try {
+            scheduled = scheduler.scheduleDirect(this::applyScheduledWrites, writeDelay, writeDelayUnit);
+        } catch (RejectedExecutionException e) {
+            scheduled = null;
+        }
+
+        // a rejected task is reported as disposed, e.g. if the scheduler has been shut down
+        if (scheduled == null || scheduled.isDisposed()) {
+            return false;
+        }
+
+        scheduledApply = scheduled;
+        scheduledApplyDueInMillis = scheduler.now(TimeUnit.MILLISECONDS) + writeDelayUnit.toMillis(writeDelay);
+        return true;
+    }
+
+    /**
+     * A delayed task can also be rejected when it is due, e.g. if the scheduler has been shut
+     * down in the meantime. It is considered lost once it is overdue by another write delay.
+     */
+    private boolean isScheduledApplyLost() {
+        long overdueInMillis = scheduler.now(TimeUnit.MILLISECONDS) - scheduledApplyDueInMillis;
+        return overdueInMillis > writeDelayUnit.toMillis(writeDelay);
+    }
+
+    private void applyScheduledWrites() {
+        synchronized (lock) {
+            scheduledApply = null;
+
+            // writes issued inside a batch are committed when the batch ends
+            if (batchDepth > 0 || pendingWrites.isEmpty()) {
+                return;
+            }
+        }
+        writePendingWrites(Collections.emptyMap(), false);
+    }
 
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putString(key, value);
+    /**
+     * Hand the given and all pending writes over to shared preferences. Only building the
+     * editor happens under the lock - reads do not wait for the disk io of a commit. The
+     * written values stay pending until shared preferences hold them, so reads never see
+     * an outdated value in between.
+     */
+    private boolean writePendingWrites(Map<String, Optional<String>> writes, boolean commit) {
+        synchronized (commitLock) {
+            Map<String, Optional<String>> snapshot;
+            synchronized (lock) {
+                if (commit && scheduledApply != null) {
+                    scheduledApply.dispose();
+                    scheduledApply = null;
+                }
+
+                pendingWrites.putAll(writes);
+                snapshot = new LinkedHashMap<>(pendingWrites);
+            }
+
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            for (Map.Entry<String, Optional<String>> entry : snapshot.entrySet()) {
+                putOrRemove(editor, entry.getKey(), entry.getValue());
+            }
+
+            boolean success = true;
+            if (commit) {
+                // commit also waits for all previously applied writes to be written to disk
+                success = editor.commit();
+            } else {
+                editor.apply();
+            }
+
+            synchronized (lock) {
+                for (Map.Entry<String, Optional<String>> entry : snapshot.entrySet()) {
+                    // keep values written again in the meantime
+                    if (pendingWrites.get(entry.getKey()) == entry.getValue()) {
+                        pendingWrites.remove(entry.getKey());
+                    }
+                }
+            }
+            return success;
+        }
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, Optional<String> value) {
+        if (value.isPresent()) {
+            editor.putString(key, value.get());
+        } else {
+            editor.remove(key);
+        }
+    }
+
+    private class SharedPreferencesBatch implements Batch {
+        private final Map<String, Optional<String>> writes = new LinkedHashMap<>();
+
+        @Override
+        public Batch putString(String key, String value) {
+            writes.put(checkNotNull(key), Optional.of(value));
+            return this;
+        }
+
+        @Override
+        public Batch putBytes(String key, byte[] value) {
+            return putString(key, encodeBytes(checkNotNull(value)));
+        }
+
+        @Override
+        public Batch removeString(String key) {
+            writes.put(checkNotNull(key), Optional.absent());
+            return this;
+        }
+
+        @Override
+        public Batch removeBytes(String key) {
+            return removeString(key);
+        }
+
+        /**
+         * Bypasses the write delay and {@link #inBatch(Observable)}: the writes of this batch are
+         * committed right away together with all pending writes that were issued before.
+         */
+        @Override
+        public Observable<Boolean> commit() {
+            Map<String, Optional<String>> writesCopy = new LinkedHashMap<>(writes);
+            return Observable.fromCallable(() -> writesCopy.isEmpty() || writePendingWrites(writesCopy, true));
+        }
+    }
+
+    // shared preferences can only hold strings - this is the only place binary values are base64 encoded
+    private static String encodeBytes(byte[] value) {
+        return Base64.encodeToString(value, Base64.NO_WRAP);
+    }
 
-        editor.commit();
+    private static byte[] decodeBytes(String value) {
+        return Base64.decode(value, Base64.DEFAULT);
     }
-}
\ No newline at end of file
+}
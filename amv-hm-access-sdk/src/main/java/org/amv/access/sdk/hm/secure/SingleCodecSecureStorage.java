@@ -11,6 +11,10 @@ public class SingleCodecSecureStorage implements Storage, SecureStorage {
     private final Storage storage;
     private final Codec codec;
 
+    /**
+     * Encryption and decryption run on the calling thread - usually a storage thread - so that
+     * writes keep the order of the storage write scheduler and no pool waits for another one.
+     */
     public SingleCodecSecureStorage(Storage storage, Codec codec) {
         this.storage = checkNotNull(storage);
         this.codec = checkNotNull(codec);
@@ -18,22 +22,73 @@ public class SingleCodecSecureStorage implements Storage, SecureStorage {
 
     @Override
     public Observable<Optional<String>> findString(String key) {
-        return Observable.just(1)
-                .flatMap(foo -> storage.findString(key))
+        return storage.findString(key)
                 .map(val -> val.transform(v -> codec.decryptData(key, v)));
     }
 
     @Override
     public Observable<Boolean> storeString(String key, String value) {
-        return Observable.just(1)
-                .map(foo -> codec.encryptData(key, value))
+        return Observable.fromCallable(() -> codec.encryptData(key, value))
                 .flatMap(encryptedValue -> storage.storeString(key, encryptedValue));
     }
 
     @Override
     public Observable<Optional<String>> removeString(String key) {
-        return Observable.just(1)
-                .flatMap(foo -> storage.removeString(key))
+        return storage.removeString(key)
                 .map(val -> val.transform(v -> codec.decryptData(key, v)));
     }
-}
\ No newline at end of file
+
+    @Override
+    public Observable<Optional<byte[]>> findBytes(String key) {
+        return storage.findBytes(key)
+                .map(val -> val.transform(v -> codec.decryptBytes(key, v)));
+    }
+
+    @Override
+    public Observable<Boolean> storeBytes(String key, byte[] value) {
+        return Observable.fromCallable(() -> codec.encryptBytes(key, value))
+                .flatMap(encryptedValue -> storage.storeBytes(key, encryptedValue));
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> removeBytes(String key) {
+        return storage.removeBytes(key)
+                .map(val -> val.transform(v -> codec.decryptBytes(key, v)));
+    }
+
+    @Override
+    public Batch batch() {
+        Batch batch = storage.batch();
+
+        return new Batch() {
+            @Override
+            public Batch putString(String key, String value) {
+                batch.putString(key, codec.encryptData(key, value));
+                return this;
+            }
+
+            @Override
+            public Batch putBytes(String key, byte[] value) {
+                batch.putBytes(key, codec.encryptBytes(key, value));
+                return this;
+            }
+
+            @Override
+            public Batch removeString(String key) {
+                batch.removeString(key);
+                return this;
+            }
+
+            @Override
+            public Batch removeBytes(String key) {
+                batch.removeBytes(key);
+                return this;
+            }
+
+            @Override
+            public Observable<Boolean> commit() {
+                return batch.commit();
+            }
+        };
+    }
+}
@@ -10,4 +10,36 @@ public interface Storage {
     Observable<Boolean> storeString(String key, String value);
 
     Observable<Optional<String>> removeString(String key);
-}
\ No newline at end of file
+
+    Observable<Optional<byte[]>> findBytes(String key);
+
+    Observable<Boolean> storeBytes(String key, byte[] value);
+
+    Observable<Optional<byte[]>> removeBytes(String key);
+
+    /**
+     * Start a batch of writes. Nothing is written until {@link Batch#commit()} is called.
+     *
+     * @return a new, empty batch
+     */
+    Batch batch();
+
+    /**
+     * A set of writes that is applied as a single unit: either all or none of them are persisted.
+     * If the same key is written more than once, the last write wins.
+     */
+    interface Batch {
+        Batch putString(String key, String value);
+
+        Batch putBytes(String key, byte[] value);
+
+        Batch removeString(String key);
+
+        Batch removeBytes(String key);
+
+        /**
+         * @return an observable emitting true if all writes of this batch have been persisted
+         */
+        Observable<Boolean> commit();
+    }
+}
@@ -0,0 +1,50 @@
+package org.amv.access.sdk.hm.util;
+
+import com.google.common.base.Supplier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Coalesces concurrent executions of the same operation.
+ * <p>
+ * All subscribers that subscribe while an operation with an equal key is in flight share its
+ * single upstream subscription and receive the same items - including items emitted before they
+ * joined. The operation is started again by the first subscriber after it terminated or all of
+ * its subscribers disposed.
+ */
+public final class SingleFlight<K, T> {
+    private final Map<K, Observable<T>> inFlight = new HashMap<>();
+
+    public Observable<T> execute(K key, Supplier<Observable<T>> operation) {
+        checkNotNull(key);
+        checkNotNull(operation);
+
+        return Observable.defer(() -> join(key, operation));
+    }
+
+    private synchronized Observable<T> join(K key, Supplier<Observable<T>> operation) {
+        Observable<T> observable = inFlight.get(key);
+        if (observable == null) {
+            AtomicReference<Observable<T>> flight = new AtomicReference<>();
+            observable = operation.get()
+                    .doFinally(() -> land(key, flight.get()))
+                    .replay()
+                    .refCount();
+            flight.set(observable);
+            inFlight.put(key, observable);
+        }
+        return observable;
+    }
+
+    private synchronized void land(K key, Observable<T> observable) {
+        if (inFlight.get(key) == observable) {
+            inFlight.remove(key);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.amv.access.sdk.hm;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AccessSdkSchedulersTest {
+
+    @Test
+    public void itShouldRunOnNamedSingleThreadPoolsByDefault() throws Exception {
+        AccessSdkSchedulers sut = AccessSdkSchedulers.create();
+
+        assertThat(currentThread(sut.defaultScheduler()).getName(), is("amv-access-sdk-default-0"));
+        assertThat(currentThread(sut.remoteScheduler()).getName(), is("amv-access-sdk-remote-0"));
+        assertThat(currentThread(sut.storageScheduler()).getName(), is("amv-access-sdk-storage-0"));
+        assertThat(currentThread(sut.cryptoScheduler()).getName(), is("amv-access-sdk-crypto-0"));
+        assertThat(sut.storageWriteScheduler(), is(sameInstance(sut.storageScheduler())));
+
+        sut.shutdown();
+    }
+
+    @Test
+    public void itShouldRecreatePoolsAfterShutdown() throws Exception {
+        AccessSdkSchedulers sut = AccessSdkSchedulers.create();
+        Scheduler storageScheduler = sut.storageScheduler();
+
+        Thread threadBeforeShutdown = currentThread(storageScheduler);
+        sut.shutdown();
+        threadBeforeShutdown.join(5000);
+
+        assertThat(threadBeforeShutdown.isAlive(), is(false));
+
+        Thread threadAfterShutdown = currentThread(storageScheduler);
+        assertThat(threadAfterShutdown, is(not(sameInstance(threadBeforeShutdown))));
+        assertThat(threadAfterShutdown.isAlive(), is(true));
+
+        sut.shutdown();
+    }
+
+    @Test
+    public void itShouldUseDedicatedWriteSchedulerForMultiThreadedStoragePool() throws Exception {
+        AccessSdkSchedulers sut = AccessSdkSchedulers.builder()
+                .storagePoolSize(4)
+                .build();
+
+        assertThat(sut.storageWriteScheduler(), is(not(sameInstance(sut.storageScheduler()))));
+        assertThat(currentThread(sut.storageWriteScheduler()).getName(), is("amv-access-sdk-storage-write-0"));
+
+        sut.shutdown();
+    }
+
+    @Test
+    public void itShouldNotShutdownSuppliedSchedulersAndExecutors() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Scheduler scheduler = Schedulers.trampoline();
+
+        AccessSdkSchedulers sut = AccessSdkSchedulers.builder()
+                .defaultScheduler(scheduler)
+                .remoteExecutor(executorService)
+                .build();
+
+        assertThat(sut.defaultScheduler(), is(sameInstance(scheduler)));
+
+        sut.shutdown();
+
+        assertThat(executorService.isShutdown(), is(false));
+        assertThat(currentThread(sut.remoteScheduler()).isAlive(), is(true));
+
+        executorService.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void itShouldFailIfSchedulerAndExecutorAreSupplied() throws Exception {
+        AccessSdkSchedulers.builder()
+                .storageScheduler(Schedulers.trampoline())
+                .storageExecutor(Runnable::run);
+    }
+
+    @Test
+    public void itShouldReportTaskMetricsUnderLabel() throws Exception {
+        List<TaskMetrics> taskMetrics = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+
+        AccessSdkSchedulers sut = AccessSdkSchedulers.builder()
+                .metricsListener(metrics -> {
+                    taskMetrics.add(metrics);
+                    latch.countDown();
+                })
+                .slowTaskThreshold(5, TimeUnit.MILLISECONDS)
+                .build();
+
+        Observable.just(1)
+                .subscribeOn(sut.storageScheduler("findKeys"))
+                .doOnNext(foo -> Thread.sleep(20))
+                .blockingFirst();
+        currentThread(sut.storageScheduler());
+
+        assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(taskMetrics.get(0).getSchedulerName(), is(AccessSdkSchedulers.STORAGE));
+        assertThat(taskMetrics.get(0).getLabel(), is("findKeys"));
+        assertThat(taskMetrics.get(0).getQueueDepth(), is(1));
+        assertThat(taskMetrics.get(0).getExecutionTimeInNanos() >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+        assertThat(taskMetrics.get(1).getLabel(), is(AccessSdkSchedulers.STORAGE));
+
+        SchedulerStatistics statistics = sut.statistics().get(AccessSdkSchedulers.STORAGE);
+        assertThat(statistics.getCompletedTaskCount(), is(2L));
+        assertThat(statistics.getMaxExecutionTimeInNanos() >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+
+        sut.shutdown();
+    }
+
+    @Test
+    public void itShouldProvideStatisticsOfInstrumentedSchedulers() throws Exception {
+        AccessSdkSchedulers sut = AccessSdkSchedulers.builder()
+                .defaultScheduler(Schedulers.trampoline())
+                .build();
+
+        assertThat(sut.statistics().keySet(), is((Set<String>) ImmutableSet.of(AccessSdkSchedulers.REMOTE,
+                AccessSdkSchedulers.STORAGE, AccessSdkSchedulers.CRYPTO)));
+    }
+
+    @Test
+    public void itShouldUseClockOfSuppliedSchedulerForLabeledSchedulers() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        scheduler.advanceTimeBy(1, TimeUnit.DAYS);
+
+        AccessSdkSchedulers sut = AccessSdkSchedulers.builder()
+                .remoteScheduler(scheduler)
+                .build();
+
+        Scheduler labeledScheduler = sut.remoteScheduler("refreshAccessCertificatesInBackground");
+        assertThat(labeledScheduler.now(TimeUnit.DAYS), is(1L));
+        assertThat(labeledScheduler.createWorker().now(TimeUnit.DAYS), is(1L));
+    }
+
+    private static Thread currentThread(Scheduler scheduler) {
+        return Observable.fromCallable(Thread::currentThread)
+                .subscribeOn(scheduler)
+                .blockingFirst();
+    }
+}
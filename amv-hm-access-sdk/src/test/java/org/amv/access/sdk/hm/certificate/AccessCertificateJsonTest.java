@@ -0,0 +1,63 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.sdk.hm.util.Json;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AccessCertificateJsonTest {
+
+    @Test
+    public void itShouldReadAndWriteIds() throws Exception {
+        List<String> ids = Arrays.asList("id1", "id-\u00e4\u00f6\u00fc", "id\"3");
+
+        String json = AccessCertificateJson.writeIds(ids);
+
+        assertThat(AccessCertificateJson.readIds(json), is(ids));
+        assertThat(Json.<List<String>>fromJson(json, List.class), is(ids));
+        assertThat(AccessCertificateJson.readIds("[]"), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void itShouldReadAccessCertificatesWrittenByGson() throws Exception {
+        SerializableAccessCertificatePair accessCertificate1 = createSerializableAccessCertificatePair("id1");
+        SerializableAccessCertificatePair accessCertificate2 = createSerializableAccessCertificatePair("id2");
+
+        String json = Json.toJson(Arrays.asList(accessCertificate1, accessCertificate2));
+
+        List<SerializableAccessCertificatePair> accessCertificates = AccessCertificateJson
+                .readAccessCertificates(json)
+                .toList()
+                .blockingGet();
+
+        assertThat(accessCertificates, is(Arrays.asList(accessCertificate1, accessCertificate2)));
+    }
+
+    @Test
+    public void itShouldStopParsingWhenDisposed() throws Exception {
+        SerializableAccessCertificatePair accessCertificate = createSerializableAccessCertificatePair("id1");
+
+        // everything after the first element is malformed and must never be read
+        String json = "[" + Json.toJson(accessCertificate) + ", {\"id\": ";
+
+        SerializableAccessCertificatePair first = AccessCertificateJson
+                .readAccessCertificates(json)
+                .filter(val -> "id1".equals(val.getId()))
+                .blockingFirst();
+
+        assertThat(first, is(accessCertificate));
+    }
+
+    private static SerializableAccessCertificatePair createSerializableAccessCertificatePair(String id) {
+        SerializableAccessCertificatePair val = new SerializableAccessCertificatePair();
+        val.setId(id);
+        val.setDeviceAccessCertificate("ZGV2aWNl");
+        val.setVehicleAccessCertificate("dmVoaWNsZQ==");
+        return val;
+    }
+}
@@ -0,0 +1,132 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.gson.reflect.TypeToken;
+import com.highmobility.utils.Base64;
+
+import org.amv.access.sdk.hm.util.Json;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares the binary record format with the previous gson based format.
+ * <p>
+ * Only run if enabled - see {@link Benchmarks}. The numbers are only meant as a rough indication
+ * as the test does not control for jit compilation or gc pauses.
+ */
+public class AccessCertificatePairCodecBenchmarkTest {
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURE_ITERATIONS = 50;
+
+    private static final Type JSON_LIST_TYPE = new TypeToken<List<SerializableAccessCertificatePair>>() {
+    }.getType();
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void benchmark10() throws Exception {
+        runBenchmark(10);
+    }
+
+    @Test
+    public void benchmark100() throws Exception {
+        runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark1000() throws Exception {
+        runBenchmark(1000);
+    }
+
+    private void runBenchmark(int certificateCount) throws Exception {
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>(certificateCount);
+        for (int i = 0; i < certificateCount; i++) {
+            accessCertificatePairs.add(AccessCertificatePairCodecTest
+                    .createAccessCertificatePair(UUID.randomUUID().toString()));
+        }
+
+        int jsonSize = encodeJson(accessCertificatePairs).length();
+        int binarySize = 0;
+        int binaryBase64Size = 0;
+        for (AccessCertificatePair accessCertificatePair : accessCertificatePairs) {
+            byte[] record = AccessCertificatePairCodec.encode(accessCertificatePair);
+            binarySize += record.length;
+            binaryBase64Size += Base64.encode(record).length();
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            decodeJson(encodeJson(accessCertificatePairs));
+            decodeBinary(encodeBinary(accessCertificatePairs));
+        }
+
+        long jsonNanos = 0L;
+        long binaryNanos = 0L;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long jsonStart = System.nanoTime();
+            List<AccessCertificatePair> fromJson = decodeJson(encodeJson(accessCertificatePairs));
+            jsonNanos += System.nanoTime() - jsonStart;
+
+            long binaryStart = System.nanoTime();
+            List<AccessCertificatePair> fromBinary = decodeBinary(encodeBinary(accessCertificatePairs));
+            binaryNanos += System.nanoTime() - binaryStart;
+
+            assertThat(fromJson.size(), is(certificateCount));
+            assertThat(fromBinary.size(), is(certificateCount));
+        }
+
+        Benchmarks.report(getClass(), String.format(Locale.US, "access certificates: %d | " +
+                        "json: %d chars, %.3f ms/round-trip | " +
+                        "binary: %d bytes (%d chars as base64), %.3f ms/round-trip",
+                certificateCount,
+                jsonSize, Benchmarks.toMillis(jsonNanos) / MEASURE_ITERATIONS,
+                binarySize, binaryBase64Size, Benchmarks.toMillis(binaryNanos) / MEASURE_ITERATIONS));
+
+        assertThat(binarySize < jsonSize, is(true));
+        assertThat(binaryBase64Size < jsonSize, is(true));
+    }
+
+    private static String encodeJson(List<AccessCertificatePair> accessCertificatePairs) {
+        List<SerializableAccessCertificatePair> serializable = new ArrayList<>(accessCertificatePairs.size());
+        for (AccessCertificatePair accessCertificatePair : accessCertificatePairs) {
+            serializable.add(SerializableAccessCertificatePair.from(accessCertificatePair));
+        }
+        return Json.toJson(serializable);
+    }
+
+    private static List<AccessCertificatePair> decodeJson(String json) {
+        List<SerializableAccessCertificatePair> serializable = Json.fromJson(json, JSON_LIST_TYPE);
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>(serializable.size());
+        for (SerializableAccessCertificatePair serializableAccessCertificatePair : serializable) {
+            accessCertificatePairs.add(HmAccessCertificatePairs.create(serializableAccessCertificatePair));
+        }
+        return accessCertificatePairs;
+    }
+
+    private static List<byte[]> encodeBinary(List<AccessCertificatePair> accessCertificatePairs) {
+        List<byte[]> records = new ArrayList<>(accessCertificatePairs.size());
+        for (AccessCertificatePair accessCertificatePair : accessCertificatePairs) {
+            records.add(AccessCertificatePairCodec.encode(accessCertificatePair));
+        }
+        return records;
+    }
+
+    private static List<AccessCertificatePair> decodeBinary(List<byte[]> records) {
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            accessCertificatePairs.add(AccessCertificatePairCodec.decode(record));
+        }
+        return accessCertificatePairs;
+    }
+}
@@ -0,0 +1,92 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.highmobility.crypto.AccessCertificate;
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AccessCertificatePairCodecTest {
+    private static final String RANDOM_CERT1 = "c3YpQgz+oKNGcgjvxvLsLSacxExcWzYPwTgMTUen3nRl88eXlTU3bA3xbVWBUwFdm5boqmMwy/dJKpm1JoLL+Koj5Kng2/RqDFcQ5K2/cd1XZBELFAwBEgsUDAIHEAAfCAAAQIsAigT04daR0ppfW/X64lT6k+V5VkoV7AqZ5SOvcNfHFlvrUAKO9N2kkg+s7qAmfEHu7XlaATR00+3DTfg0oYc=";
+    private static final String RANDOM_CERT2 = "VxDkrb9x3VdkcdjXEH4Y6lsiOK5s1RlIipJwX1jv45BXmyXI1W4dx3/N3+F1DIE0F3vFltxPfbyCqXRTfULF4hR9vAlSxLe9XnN2KUIM/qCjRhELFAwBEgsUDAIHEAAfCAAAQEwhVV7JMVtHvSYWCLoN1jZXvVi+DTrMZIqSOw6l5nkkHIG6sg+q9trdMl23P6AXWLCF51RfDi7Y7OqUVUxz/x0=";
+
+    @Test
+    public void itShouldEncodeAndDecodeCorrectly() {
+        AccessCertificatePair accessCertificatePair = createAccessCertificatePair(UUID.randomUUID().toString());
+
+        byte[] record = AccessCertificatePairCodec.encode(accessCertificatePair);
+
+        assertThat(record[0], is(AccessCertificatePairCodec.VERSION_1));
+
+        AccessCertificatePair decoded = AccessCertificatePairCodec.decode(record);
+
+        assertThat(decoded.getId(), is(accessCertificatePair.getId()));
+        assertThat(decoded.getDeviceAccessCertificate().toByteArray(),
+                is(accessCertificatePair.getDeviceAccessCertificate().toByteArray()));
+        assertThat(decoded.getVehicleAccessCertificate().toByteArray(),
+                is(accessCertificatePair.getVehicleAccessCertificate().toByteArray()));
+    }
+
+    @Test
+    public void itShouldEncodeNonAsciiIdsCorrectly() {
+        AccessCertificatePair accessCertificatePair = createAccessCertificatePair("zertifikat-\u00e4\u00f6\u00fc-\u20ac");
+
+        AccessCertificatePair decoded = AccessCertificatePairCodec.decode(
+                AccessCertificatePairCodec.encode(accessCertificatePair));
+
+        assertThat(decoded.getId(), is(accessCertificatePair.getId()));
+    }
+
+    @Test
+    public void itShouldBeSmallerThanBase64EncodedCertificates() {
+        AccessCertificatePair accessCertificatePair = createAccessCertificatePair(UUID.randomUUID().toString());
+
+        byte[] record = AccessCertificatePairCodec.encode(accessCertificatePair);
+
+        int base64Length = RANDOM_CERT1.length() + RANDOM_CERT2.length();
+        assertThat(record.length < base64Length, is(true));
+    }
+
+    @Test
+    public void itShouldFailOnUnsupportedVersion() {
+        byte[] record = AccessCertificatePairCodec.encode(createAccessCertificatePair(UUID.randomUUID().toString()));
+        record[0] = (byte) 0x7f;
+
+        try {
+            AccessCertificatePairCodec.decode(record);
+            Assert.fail("Should have thrown exception");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(IllegalArgumentException.class));
+        }
+    }
+
+    @Test
+    public void itShouldFailOnTruncatedRecord() {
+        byte[] record = AccessCertificatePairCodec.encode(createAccessCertificatePair(UUID.randomUUID().toString()));
+
+        try {
+            AccessCertificatePairCodec.decode(Arrays.copyOf(record, record.length - 10));
+            Assert.fail("Should have thrown exception");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(IllegalArgumentException.class));
+        }
+    }
+
+    static AccessCertificatePair createAccessCertificatePair(String id) {
+        return SimpleAccessCertificatePair.builder()
+                .id(id)
+                .deviceAccessCertificate(new HmAccessCertificate(new AccessCertificate(new Bytes(Base64.decode(RANDOM_CERT1)))))
+                .vehicleAccessCertificate(new HmAccessCertificate(new AccessCertificate(new Bytes(Base64.decode(RANDOM_CERT2)))))
+                .build();
+    }
+}
@@ -0,0 +1,194 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificate;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.CertificateManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class AccessCertificateRefreshSchedulerTest {
+
+    private TestScheduler scheduler;
+    private List<AccessCertificatePair> storedAccessCertificates;
+    private List<AccessCertificatePair> renewedAccessCertificates;
+    private AtomicInteger refreshes;
+    private boolean failRefresh;
+    private AccessCertificateRefreshScheduler sut;
+
+    @Before
+    public void setUp() {
+        this.scheduler = new TestScheduler();
+        this.storedAccessCertificates = new ArrayList<>();
+        this.renewedAccessCertificates = null;
+        this.refreshes = new AtomicInteger();
+
+        LocalStorage localStorage = mock(LocalStorage.class);
+        doAnswer(invocation -> Observable.just(earliestValidUntilAfter(invocation.getArgument(0))))
+                .when(localStorage).findEarliestValidUntilAfter(anyLong());
+
+        CertificateManager certificateManager = mock(CertificateManager.class);
+        doReturn(Observable.defer(() -> {
+            refreshes.incrementAndGet();
+            if (failRefresh) {
+                return Observable.error(new IllegalStateException());
+            }
+            if (renewedAccessCertificates != null) {
+                storedAccessCertificates = renewedAccessCertificates;
+            }
+            return Observable.fromIterable(storedAccessCertificates);
+        })).when(certificateManager).refreshAccessCertificates();
+
+        AccessCertificateRefreshPolicy policy = AccessCertificateRefreshPolicy.builder()
+                .refreshInterval(6, TimeUnit.HOURS)
+                .refreshAheadOfExpiry(24, TimeUnit.HOURS)
+                .minRefreshInterval(5, TimeUnit.MINUTES)
+                .build();
+
+        this.sut = new AccessCertificateRefreshScheduler(certificateManager, localStorage, policy, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        sut.stop();
+    }
+
+    @Test
+    public void itShouldRefreshPeriodically() throws Exception {
+        sut.start();
+
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(1));
+
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(2));
+    }
+
+    @Test
+    public void itShouldRefreshAheadOfExpiry() throws Exception {
+        storedAccessCertificates.add(accessCertificateExpiringIn(25, TimeUnit.HOURS));
+        renewedAccessCertificates = Collections.singletonList(accessCertificateExpiringIn(30, TimeUnit.DAYS));
+
+        sut.start();
+
+        scheduler.advanceTimeBy(59, TimeUnit.MINUTES);
+        assertThat(refreshes.get(), is(0));
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        assertThat(refreshes.get(), is(1));
+
+        // the renewed access certificate is refreshed periodically again
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(2));
+    }
+
+    @Test
+    public void itShouldRefreshRightAwayOnStartIfAccessCertificateIsAboutToExpire() throws Exception {
+        storedAccessCertificates.add(accessCertificateExpiringIn(1, TimeUnit.HOURS));
+
+        sut.start();
+        scheduler.triggerActions();
+
+        assertThat(refreshes.get(), is(1));
+
+        // not renewed - refreshed periodically again instead of ahead of the same end date
+        scheduler.advanceTimeBy(5, TimeUnit.MINUTES);
+        assertThat(refreshes.get(), is(1));
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(2));
+    }
+
+    @Test
+    public void itShouldRefreshAheadOfEachEndDateOnlyOnce() throws Exception {
+        storedAccessCertificates.add(accessCertificateExpiringIn(20, TimeUnit.HOURS));
+
+        sut.start();
+        scheduler.triggerActions();
+        assertThat(refreshes.get(), is(1));
+
+        // the remote issued another access certificate that is valid for less than a day
+        renewedAccessCertificates = Collections.singletonList(accessCertificateExpiringIn(22, TimeUnit.HOURS));
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(2));
+
+        // refreshed ahead of the new end date once, periodically afterwards
+        scheduler.advanceTimeBy(5, TimeUnit.MINUTES);
+        assertThat(refreshes.get(), is(3));
+
+        scheduler.advanceTimeBy(1, TimeUnit.DAYS);
+        assertThat(refreshes.get(), is(7));
+    }
+
+    @Test
+    public void itShouldIgnoreExpiredAccessCertificates() throws Exception {
+        storedAccessCertificates.add(accessCertificateExpiringIn(-1, TimeUnit.HOURS));
+
+        sut.start();
+
+        scheduler.advanceTimeBy(6, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(1));
+    }
+
+    @Test
+    public void itShouldKeepRefreshingAfterFailedRefresh() throws Exception {
+        failRefresh = true;
+
+        sut.start();
+
+        scheduler.advanceTimeBy(12, TimeUnit.HOURS);
+        assertThat(refreshes.get(), is(2));
+        assertThat(sut.isStarted(), is(true));
+    }
+
+    @Test
+    public void itShouldNotRefreshAfterStop() throws Exception {
+        sut.start();
+        sut.stop();
+
+        scheduler.advanceTimeBy(1, TimeUnit.DAYS);
+        assertThat(refreshes.get(), is(0));
+        assertThat(sut.isStarted(), is(false));
+    }
+
+    private Optional<Long> earliestValidUntilAfter(long timeInMillis) {
+        Optional<Long> earliest = Optional.absent();
+        for (AccessCertificatePair accessCertificatePair : storedAccessCertificates) {
+            long validUntil = accessCertificatePair.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+            if (validUntil > timeInMillis && (!earliest.isPresent() || validUntil < earliest.get())) {
+                earliest = Optional.of(validUntil);
+            }
+        }
+        return earliest;
+    }
+
+    private AccessCertificatePair accessCertificateExpiringIn(long duration, TimeUnit unit) {
+        Calendar endDate = Calendar.getInstance();
+        endDate.setTimeInMillis(scheduler.now(TimeUnit.MILLISECONDS) + unit.toMillis(duration));
+
+        AccessCertificate accessCertificate = mock(AccessCertificate.class);
+        doReturn(endDate).when(accessCertificate).getEndDate();
+
+        AccessCertificatePair accessCertificatePair = mock(AccessCertificatePair.class);
+        doReturn(accessCertificate).when(accessCertificatePair).getDeviceAccessCertificate();
+        doReturn(accessCertificate).when(accessCertificatePair).getVehicleAccessCertificate();
+        return accessCertificatePair;
+    }
+}
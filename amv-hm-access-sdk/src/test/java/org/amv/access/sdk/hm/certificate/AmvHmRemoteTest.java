@@ -0,0 +1,212 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.client.android.AccessCertClient;
+import org.amv.access.client.android.DeviceCertClient;
+import org.amv.access.client.android.model.AccessCertificateDto;
+import org.amv.access.client.android.model.CreateDeviceCertificateResponseDto;
+import org.amv.access.client.android.model.DeviceCertificateDto;
+import org.amv.access.client.android.model.GetAccessCertificatesResponseDto;
+import org.amv.access.sdk.hm.AccessApiContext;
+import org.amv.access.sdk.hm.AmvSdkSchedulers;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Observable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AmvHmRemoteTest {
+
+    private AccessApiContext accessApiContext;
+    private AccessApiClientFactory clientFactoryMock;
+    private DeviceCertClient deviceCertClientMock;
+    private AccessCertClient accessCertClientMock;
+    private Keys keys;
+    private DeviceCertificate deviceCertificate;
+    private AmvHmRemote sut;
+
+    @Before
+    public void setUp() {
+        this.accessApiContext = AccessApiContext.builder()
+                .baseUrl("http://localhost")
+                .apiKey("apiKey")
+                .appId("appId")
+                .build();
+
+        DeviceCertificateDto deviceCertificateDto = new DeviceCertificateDto();
+        deviceCertificateDto.device_certificate = CachingLocalStorageTest.RANDOM_DEVICE_CERT_BASE64;
+        CreateDeviceCertificateResponseDto response = new CreateDeviceCertificateResponseDto();
+        response.device_certificate = deviceCertificateDto;
+
+        this.deviceCertClientMock = mock(DeviceCertClient.class);
+        doReturn(Observable.just(response))
+                .when(deviceCertClientMock).createDeviceCertificate(any(), any(), any());
+
+        this.accessCertClientMock = mock(AccessCertClient.class);
+
+        this.clientFactoryMock = mock(AccessApiClientFactory.class);
+        doReturn(deviceCertClientMock)
+                .when(clientFactoryMock).createDeviceCertClient(accessApiContext);
+        doReturn(accessCertClientMock)
+                .when(clientFactoryMock).createAccessCertClient(accessApiContext);
+
+        this.keys = KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(64))
+                .privateKey(RandomUtils.nextBytes(32))
+                .build();
+        this.deviceCertificate = new HmDeviceCertificate(new com.highmobility.crypto.DeviceCertificate(
+                new Bytes(Base64.decode(CachingLocalStorageTest.RANDOM_DEVICE_CERT_BASE64))));
+
+        this.sut = new AmvHmRemote(accessApiContext, AmvSdkSchedulers.shared(), clientFactoryMock);
+    }
+
+    @Test
+    public void itShouldCreateClientsOnceAndReuseThem() throws Exception {
+        sut.createDeviceCertificate(keys).blockingFirst();
+        sut.createDeviceCertificate(keys).blockingFirst();
+        sut.createDeviceCertificate(keys).blockingFirst();
+
+        verify(clientFactoryMock, times(1)).createDeviceCertClient(accessApiContext);
+        verify(clientFactoryMock, never()).createAccessCertClient(any());
+        verify(deviceCertClientMock, times(3)).createDeviceCertificate(any(), any(), any());
+    }
+
+    @Test
+    public void itShouldDownloadAllPages() throws Exception {
+        doReturnPage(1, "1", "2");
+        doReturnPage(2, "3");
+        doReturnPage(3);
+
+        List<List<AccessCertificatePair>> pages = sut.downloadAccessCertificatePages(keys, deviceCertificate)
+                .toList()
+                .blockingGet();
+
+        assertThat(pages.size(), is(2));
+        assertThat(ids(pages.get(0)), is(Arrays.asList("1", "2")));
+        assertThat(ids(pages.get(1)), is(Collections.singletonList("3")));
+        verify(accessCertClientMock, never()).fetchAccessCertificates(any(), any(), any(), eq(4));
+    }
+
+    @Test
+    public void itShouldStopOnPageWithoutNewAccessCertificates() throws Exception {
+        // e.g. a server not supporting pagination returns the same list for every page
+        AmvHmRemote sut = new AmvHmRemote(accessApiContext, AmvSdkSchedulers.shared(), clientFactoryMock, 4);
+        doReturn(Observable.fromCallable(() -> page("1", "2")))
+                .when(accessCertClientMock).fetchAccessCertificates(any(), any(), any(), anyInt());
+
+        List<AccessCertificatePair> accessCertificates = sut.downloadAccessCertificates(keys, deviceCertificate)
+                .toList()
+                .blockingGet();
+
+        assertThat(ids(accessCertificates), is(Arrays.asList("1", "2")));
+    }
+
+    @Test
+    public void itShouldEmitPagesInOrderWhenDownloadingConcurrently() throws Exception {
+        AmvHmRemote sut = new AmvHmRemote(accessApiContext, AmvSdkSchedulers.shared(), clientFactoryMock, 3);
+        for (int page = 1; page <= 10; page++) {
+            doReturnPage(page, String.valueOf(page));
+        }
+        doReturnPage(11);
+        doReturnPage(12);
+        doReturnPage(13);
+
+        List<AccessCertificatePair> accessCertificates = sut.downloadAccessCertificates(keys, deviceCertificate)
+                .toList()
+                .blockingGet();
+
+        assertThat(ids(accessCertificates), is(Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10")));
+    }
+
+    @Test
+    public void itShouldNotParseAccessCertificatesIfNotModified() throws Exception {
+        doReturnPage(1, "1", "2");
+        doReturnPage(2);
+
+        List<AccessCertificatesDownloadEvent> download = sut
+                .downloadAccessCertificatePages(keys, deviceCertificate, Optional.absent())
+                .toList()
+                .blockingGet();
+
+        assertThat(download.size(), is(2));
+        assertThat(download.get(0).getType(), is(AccessCertificatesDownloadEvent.Type.PAGE));
+        assertThat(ids(download.get(0).getAccessCertificates()), is(Arrays.asList("1", "2")));
+        assertThat(download.get(1).getType(), is(AccessCertificatesDownloadEvent.Type.COMPLETED));
+        String watermark = download.get(1).getWatermark().get();
+
+        List<AccessCertificatesDownloadEvent> conditionalDownload = sut
+                .downloadAccessCertificatePages(keys, deviceCertificate, Optional.of(watermark))
+                .toList()
+                .blockingGet();
+
+        assertThat(conditionalDownload.size(), is(1));
+        assertThat(conditionalDownload.get(0).getType(), is(AccessCertificatesDownloadEvent.Type.NOT_MODIFIED));
+        assertThat(conditionalDownload.get(0).getAccessCertificates().isEmpty(), is(true));
+        verify(accessCertClientMock, times(2)).fetchAccessCertificates(any(), any(), any(), eq(1));
+        verify(accessCertClientMock, times(2)).fetchAccessCertificates(any(), any(), any(), eq(2));
+
+        doReturnPage(1, "1", "3");
+
+        List<AccessCertificatesDownloadEvent> changedDownload = sut
+                .downloadAccessCertificatePages(keys, deviceCertificate, Optional.of(watermark))
+                .toList()
+                .blockingGet();
+
+        assertThat(changedDownload.size(), is(2));
+        assertThat(ids(changedDownload.get(0).getAccessCertificates()), is(Arrays.asList("1", "3")));
+        assertThat(changedDownload.get(1).getType(), is(AccessCertificatesDownloadEvent.Type.COMPLETED));
+        assertThat(changedDownload.get(1).getWatermark().get(), is(not(watermark)));
+    }
+
+    private void doReturnPage(int page, String... ids) {
+        doReturn(Observable.fromCallable(() -> page(ids)))
+                .when(accessCertClientMock).fetchAccessCertificates(any(), any(), any(), eq(page));
+    }
+
+    private static GetAccessCertificatesResponseDto page(String... ids) {
+        List<AccessCertificateDto> accessCertificates = new ArrayList<>();
+        for (String id : ids) {
+            AccessCertificateDto accessCertificate = new AccessCertificateDto();
+            accessCertificate.id = id;
+            accessCertificate.device_access_certificate = CachingLocalStorageTest.RANDOM_ACCESS_CERT_BASE64;
+            accessCertificate.vehicle_access_certificate = CachingLocalStorageTest.RANDOM_ACCESS_CERT_BASE64;
+            accessCertificates.add(accessCertificate);
+        }
+
+        GetAccessCertificatesResponseDto response = new GetAccessCertificatesResponseDto();
+        response.access_certificates = accessCertificates;
+        return response;
+    }
+
+    private static List<String> ids(List<AccessCertificatePair> accessCertificates) {
+        List<String> ids = new ArrayList<>();
+        for (AccessCertificatePair accessCertificate : accessCertificates) {
+            ids.add(accessCertificate.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,45 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Charsets;
+
+import org.junit.Assume;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks are skipped unless enabled with {@code ./gradlew test -Pbenchmark}.
+ * Their results are appended to {@code build/benchmarks/<test class>.txt} of the module.
+ */
+final class Benchmarks {
+    static final String ENABLED_PROPERTY = "amv.benchmark";
+
+    private static final File REPORT_DIR = new File("build/benchmarks");
+
+    private Benchmarks() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks are disabled - enable with -Pbenchmark",
+                Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    static void report(Class<?> benchmark, String result) throws IOException {
+        if (!REPORT_DIR.isDirectory() && !REPORT_DIR.mkdirs()) {
+            throw new IOException("Cannot create " + REPORT_DIR.getAbsolutePath());
+        }
+
+        File reportFile = new File(REPORT_DIR, benchmark.getSimpleName() + ".txt");
+        try (OutputStream outputStream = new FileOutputStream(reportFile, true)) {
+            outputStream.write((result + "\n").getBytes(Charsets.UTF_8));
+        }
+    }
+
+    static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,241 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatePair;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+public class CachingLocalStorageTest {
+    static final String RANDOM_DEVICE_CERT_BASE64 = "WFhYWAAAEjRWeJq83vAAAK+vdxh+UxMaxHp7V8rqGO0WUrxii1wd9ToGWVFLqztSLrgfdytAjtL89tJRIHZ33ai4D7b154ZTv/xuq+IqW/L/2DeqTlhsp/lsvHuYUp62cTptOwyj7uJ/HXEqw0+ims5z08Zi6XN+7t1Pa3EB4al+IHy7pwuUQPkT0Myr+1dhia0ZBShSQ20x";
+    static final String RANDOM_ACCESS_CERT_BASE64 = "AURFTU+XdapkXy/AslSvr3cYflMTGsR6e1fK6hjtFlK8YotcHfU6BllRS6s7Ui64H3crQI7S/PbSUSB2d92ouA+29eeGU7/8bqviKlvy/9g3qk5YbKf5EwIKDDgVAgwMOAcQAB8IAABA";
+
+    private HmLocalStorage hmLocalStorage;
+    private CachingLocalStorage sut;
+
+    @Before
+    public void setUp() {
+        this.hmLocalStorage = new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage());
+        this.sut = new CachingLocalStorage(hmLocalStorage);
+        this.sut.reset().blockingFirst();
+    }
+
+    @Test
+    public void itShouldServeRepeatedReadsFromMemory() throws Exception {
+        AccessCertificatePair accessCertificatePair = createRandomAccessCertificatePair();
+        hmLocalStorage.storeAccessCertificates(Collections.singletonList(accessCertificatePair))
+                .blockingFirst();
+
+        List<AccessCertificatePair> firstRead = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(sut.getMissCount(), is(1L));
+        assertThat(sut.getHitCount(), is(0L));
+
+        List<AccessCertificatePair> secondRead = sut.findAccessCertificates().toList().blockingGet();
+        Optional<AccessCertificatePair> byId = sut.findAccessCertificateById(accessCertificatePair.getId())
+                .blockingFirst();
+
+        assertThat(sut.getMissCount(), is(1L));
+        assertThat(sut.getHitCount(), is(2L));
+        assertThat(secondRead.size(), is(1));
+        assertThat(secondRead.get(0), is(firstRead.get(0)));
+        assertThat(byId.get(), is(firstRead.get(0)));
+    }
+
+    @Test
+    public void itShouldWriteThroughOnStore() throws Exception {
+        KeysImpl keys = KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(18))
+                .privateKey(RandomUtils.nextBytes(18))
+                .build();
+        Boolean storeKeysSuccess = sut.storeKeys(keys).blockingFirst();
+        assertThat(storeKeysSuccess, is(Boolean.TRUE));
+
+        byte[] issuerPublicKey = RandomUtils.nextBytes(18);
+        Boolean storeIssuerPublicKeySuccess = sut.storeIssuerPublicKey(issuerPublicKey).blockingFirst();
+        assertThat(storeIssuerPublicKeySuccess, is(Boolean.TRUE));
+
+        HmDeviceCertificate hmDeviceCertificate = new HmDeviceCertificate(new com.highmobility.crypto.DeviceCertificate(
+                new Bytes(Base64.decode(RANDOM_DEVICE_CERT_BASE64))));
+        Boolean storeDeviceCertSuccess = sut.storeDeviceCertificate(hmDeviceCertificate).blockingFirst();
+        assertThat(storeDeviceCertSuccess, is(Boolean.TRUE));
+
+        Keys delegateKeys = hmLocalStorage.findKeys().blockingFirst();
+        assertThat(delegateKeys.getPublicKeyHex(), is(keys.getPublicKeyHex()));
+        assertThat(hmLocalStorage.findIssuerPublicKey().blockingFirst(), is(issuerPublicKey));
+        assertThat(hmLocalStorage.findDeviceCertificate().blockingFirst().toByteArray(),
+                is(hmDeviceCertificate.toByteArray()));
+
+        Keys cachedKeys = sut.findKeys().blockingFirst();
+        byte[] cachedIssuerPublicKey = sut.findIssuerPublicKey().blockingFirst();
+        DeviceCertificate cachedDeviceCertificate = sut.findDeviceCertificate().blockingFirst();
+
+        assertThat(sut.getMissCount(), is(0L));
+        assertThat(sut.getHitCount(), is(3L));
+        assertThat(cachedKeys.getPrivateKeyHex(), is(keys.getPrivateKeyHex()));
+        assertThat(cachedIssuerPublicKey, is(issuerPublicKey));
+        assertThat(cachedDeviceCertificate.toByteArray(), is(hmDeviceCertificate.toByteArray()));
+    }
+
+    @Test
+    public void itShouldUpdateCacheOnRemovalOfAccessCertificate() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+
+        Boolean removeSuccess = sut.removeAccessCertificateById(accessCertificatePair1.getId())
+                .blockingFirst();
+        assertThat(removeSuccess, is(Boolean.TRUE));
+
+        List<AccessCertificatePair> cached = sut.findAccessCertificates().toList().blockingGet();
+        List<AccessCertificatePair> stored = hmLocalStorage.findAccessCertificates().toList().blockingGet();
+
+        assertThat(cached.size(), is(1));
+        assertThat(cached.get(0).getId(), is(accessCertificatePair2.getId()));
+        assertThat(stored.size(), is(1));
+        assertThat(stored.get(0).getId(), is(accessCertificatePair2.getId()));
+    }
+
+    @Test
+    public void itShouldNotLoseConcurrentMutationsOfAccessCertificates() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair3 = createRandomAccessCertificatePair();
+        hmLocalStorage.storeAccessCertificate(accessCertificatePair1).blockingFirst();
+
+        LocalStorage delegate = spy(hmLocalStorage);
+        PublishSubject<Boolean> pendingStore = PublishSubject.create();
+        doReturn(pendingStore).when(delegate).storeAccessCertificate(accessCertificatePair2);
+        CachingLocalStorage cachingLocalStorage = new CachingLocalStorage(delegate);
+        assertThat(cachingLocalStorage.findAccessCertificates().toList().blockingGet().size(), is(1));
+
+        TestObserver<Boolean> firstStore = cachingLocalStorage.storeAccessCertificate(accessCertificatePair2).test();
+        Boolean secondStoreSuccess = cachingLocalStorage.storeAccessCertificate(accessCertificatePair3)
+                .blockingFirst();
+        hmLocalStorage.storeAccessCertificate(accessCertificatePair2).blockingFirst();
+        pendingStore.onNext(true);
+        pendingStore.onComplete();
+
+        firstStore.assertValue(true);
+        assertThat(secondStoreSuccess, is(Boolean.TRUE));
+        assertThat(cachingLocalStorage.findAccessCertificates().toList().blockingGet().size(), is(3));
+        assertThat(cachingLocalStorage.findAccessCertificateById(accessCertificatePair2.getId())
+                .blockingFirst()
+                .isPresent(), is(true));
+    }
+
+    @Test
+    public void itShouldFindEarliestValidUntilAfter() throws Exception {
+        AccessCertificatePair expiring2025 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2025);
+        AccessCertificatePair expiring2020 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2020);
+        AccessCertificatePair expiring2030 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        hmLocalStorage.storeAccessCertificates(Arrays.asList(expiring2025, expiring2020, expiring2030))
+                .blockingFirst();
+
+        long validUntil2020 = expiring2020.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2025 = expiring2025.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2030 = expiring2030.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+
+        assertThat(sut.findEarliestValidUntilAfter(0L).blockingFirst(), is(Optional.of(validUntil2020)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2020).blockingFirst(), is(Optional.of(validUntil2025)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2025).blockingFirst(), is(Optional.of(validUntil2030)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2030).blockingFirst(), is(Optional.<Long>absent()));
+        assertThat(sut.getMissCount(), is(1L));
+        assertThat(sut.getHitCount(), is(3L));
+    }
+
+    @Test
+    public void itShouldClearCacheOnReset() throws Exception {
+        sut.storeAccessCertificates(Collections.singletonList(createRandomAccessCertificatePair()))
+                .blockingFirst();
+        sut.storeKeys(KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(18))
+                .privateKey(RandomUtils.nextBytes(18))
+                .build()).blockingFirst();
+
+        Boolean resetSuccess = sut.reset().blockingFirst();
+        assertThat(resetSuccess, is(Boolean.TRUE));
+
+        assertThat(sut.findAccessCertificates().toList().blockingGet().isEmpty(), is(true));
+        assertThat(sut.findKeys()
+                .map(Optional::fromNullable)
+                .onErrorReturnItem(Optional.absent())
+                .blockingFirst(), is(Optional.absent()));
+        assertThat(sut.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void itShouldFindAccessCertificatesByVehicleSerial() throws Exception {
+        byte[] vehicleSerial = RandomUtils.nextBytes(9);
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair(vehicleSerial);
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair3 = createRandomAccessCertificatePair(vehicleSerial);
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2, accessCertificatePair3))
+                .blockingFirst();
+
+        SerialNumber vehicleSerialNumber = accessCertificatePair1.getDeviceAccessCertificate().getGainerSerial();
+
+        List<AccessCertificatePair> found = sut.findAccessCertificatesByVehicleSerial(vehicleSerialNumber)
+                .toList()
+                .blockingGet();
+        List<AccessCertificatePair> foundByDelegate = hmLocalStorage.findAccessCertificatesByVehicleSerial(vehicleSerialNumber)
+                .toList()
+                .blockingGet();
+
+        assertThat(sut.getMissCount(), is(0L));
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(found.get(1).getId(), is(accessCertificatePair3.getId()));
+        assertThat(foundByDelegate.size(), is(2));
+
+        Boolean removeSuccess = sut.removeAccessCertificateById(accessCertificatePair1.getId())
+                .blockingFirst();
+        assertThat(removeSuccess, is(Boolean.TRUE));
+
+        List<AccessCertificatePair> foundAfterRemoval = sut.findAccessCertificatesByVehicleSerial(vehicleSerialNumber)
+                .toList()
+                .blockingGet();
+        assertThat(foundAfterRemoval.size(), is(1));
+        assertThat(foundAfterRemoval.get(0).getId(), is(accessCertificatePair3.getId()));
+    }
+
+    static AccessCertificatePair createRandomAccessCertificatePair() {
+        return createRandomAccessCertificatePair(RandomUtils.nextBytes(9));
+    }
+
+    static AccessCertificatePair createRandomAccessCertificatePair(byte[] gainerSerial) {
+        byte[] accessCertBytes = Base64.decode(RANDOM_ACCESS_CERT_BASE64);
+        // the gainer serial is stored in the first 9 bytes of an access certificate
+        System.arraycopy(gainerSerial, 0, accessCertBytes, 0, gainerSerial.length);
+
+        HmAccessCertificate hmAccessCertificate = new HmAccessCertificate(
+                new com.highmobility.crypto.AccessCertificate(new Bytes(accessCertBytes)));
+
+        return SimpleAccessCertificatePair.builder()
+                .id(UUID.randomUUID().toString())
+                .deviceAccessCertificate(hmAccessCertificate)
+                .vehicleAccessCertificate(hmAccessCertificate)
+                .build();
+    }
+}
@@ -0,0 +1,357 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.hm.AmvSdkSchedulers;
+import org.amv.access.sdk.hm.config.AccessSdkOptions;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.DeviceCertificate;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class HmCertificateManagerTest {
+
+    private LocalStorage localStorage;
+    private Remote remoteMock;
+    private HmCertificateManager sut;
+
+    @Before
+    public void setUp() {
+        this.localStorage = spy(new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage()));
+        this.remoteMock = mock(Remote.class);
+        doCallRealMethod().when(remoteMock).downloadAccessCertificatePages(any(), any());
+        doCallRealMethod().when(remoteMock).downloadAccessCertificatePages(any(), any(), any());
+        this.sut = new HmCertificateManager(localStorage, remoteMock);
+
+        Keys keys = KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(18))
+                .privateKey(RandomUtils.nextBytes(18))
+                .build();
+        DeviceCertificate deviceCertificate = new HmDeviceCertificate(new com.highmobility.crypto.DeviceCertificate(
+                new Bytes(Base64.decode(CachingLocalStorageTest.RANDOM_DEVICE_CERT_BASE64))));
+
+        localStorage.storeKeys(keys).blockingFirst();
+        localStorage.storeDeviceCertificate(deviceCertificate).blockingFirst();
+    }
+
+    @After
+    public void tearDown() {
+        RxJavaPlugins.reset();
+    }
+
+    @Test
+    public void itShouldEmitDownloadedAccessCertificatesWithoutReadingThemAgain() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        doReturn(Observable.just(accessCertificatePair1, accessCertificatePair2))
+                .when(remoteMock).downloadAccessCertificates(any(), any());
+
+        List<AccessCertificatePair> refreshed = sut.refreshAccessCertificates()
+                .toList()
+                .blockingGet();
+
+        assertThat(refreshed, is(Arrays.asList(accessCertificatePair1, accessCertificatePair2)));
+        verify(localStorage).syncAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2));
+        verify(localStorage, never()).findAccessCertificates();
+    }
+
+    @Test
+    public void itShouldStoreEveryPageAndRemoveAccessCertificatesNotDownloaded() throws Exception {
+        AccessCertificatePair staleAccessCertificatePair = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        localStorage.storeAccessCertificate(staleAccessCertificatePair).blockingFirst();
+
+        AccessCertificatePair accessCertificatePair1 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair3 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        doReturn(Observable.just(
+                Arrays.asList(accessCertificatePair1, accessCertificatePair2),
+                Collections.singletonList(accessCertificatePair3)))
+                .when(remoteMock).downloadAccessCertificatePages(any(), any());
+
+        List<AccessCertificatePair> refreshed = sut.refreshAccessCertificates()
+                .toList()
+                .blockingGet();
+
+        assertThat(refreshed, is(Arrays.asList(accessCertificatePair1, accessCertificatePair2, accessCertificatePair3)));
+        verify(localStorage).mergeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2));
+        verify(localStorage).mergeAccessCertificates(Collections.singletonList(accessCertificatePair3));
+
+        List<String> storedIds = new ArrayList<>();
+        for (AccessCertificatePair stored : localStorage.findAccessCertificates().toList().blockingGet()) {
+            storedIds.add(stored.getId());
+        }
+        assertThat(storedIds, is(Arrays.asList(accessCertificatePair1.getId(),
+                accessCertificatePair2.getId(), accessCertificatePair3.getId())));
+    }
+
+    @Test
+    public void itShouldDownloadWithWatermarkOfPreviousRefreshAfterRestart() throws Exception {
+        AccessCertificatePair accessCertificatePair = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        doReturn(Observable.just(
+                AccessCertificatesDownloadEvent.page(Collections.singletonList(accessCertificatePair)),
+                AccessCertificatesDownloadEvent.completed(Optional.of("watermark"))))
+                .when(remoteMock).downloadAccessCertificatePages(any(), any(), eq(Optional.absent()));
+        doReturn(Observable.just(AccessCertificatesDownloadEvent.notModified("watermark")))
+                .when(remoteMock).downloadAccessCertificatePages(any(), any(), eq(Optional.of("watermark")));
+
+        List<AccessCertificatePair> refreshed = sut.refreshAccessCertificates()
+                .toList()
+                .blockingGet();
+
+        HmCertificateManager restarted = new HmCertificateManager(localStorage, remoteMock);
+        List<AccessCertificatePair> refreshedAgain = restarted.refreshAccessCertificates()
+                .toList()
+                .blockingGet();
+
+        assertThat(refreshed, is(Collections.singletonList(accessCertificatePair)));
+        assertThat(refreshedAgain.size(), is(1));
+        assertThat(refreshedAgain.get(0).getId(), is(accessCertificatePair.getId()));
+        verify(remoteMock).downloadAccessCertificatePages(any(), any(), eq(Optional.of("watermark")));
+        verify(localStorage, times(1)).storeAccessCertificatesWatermark("watermark");
+    }
+
+    @Test
+    public void itShouldNotStoreAccessCertificatesIfNotModified() throws Exception {
+        AccessCertificatePair accessCertificatePair = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        localStorage.storeAccessCertificate(accessCertificatePair).blockingFirst();
+        localStorage.storeAccessCertificatesWatermark("watermark").blockingFirst();
+        doReturn(Observable.just(AccessCertificatesDownloadEvent.notModified("watermark")))
+                .when(remoteMock).downloadAccessCertificatePages(any(), any(), eq(Optional.of("watermark")));
+
+        List<AccessCertificatePair> refreshed = sut.refreshAccessCertificates()
+                .toList()
+                .blockingGet();
+
+        assertThat(refreshed.size(), is(1));
+        assertThat(refreshed.get(0).getId(), is(accessCertificatePair.getId()));
+        verify(localStorage, never()).mergeAccessCertificates(any());
+        verify(localStorage, never()).syncAccessCertificates(any());
+        verify(localStorage, times(1)).storeAccessCertificatesWatermark(any());
+    }
+
+    @Test
+    public void itShouldShareConcurrentRefreshes() throws Exception {
+        AccessCertificatePair accessCertificatePair = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        PublishSubject<AccessCertificatesDownloadEvent> download = PublishSubject.create();
+        doReturn(download)
+                .when(remoteMock).downloadAccessCertificatePages(any(), any(), any());
+
+        TestObserver<AccessCertificatePair> first = sut.refreshAccessCertificates().test();
+        TestObserver<AccessCertificatePair> second = sut.refreshAccessCertificates().test();
+
+        while (!download.hasObservers()) {
+            Thread.sleep(1);
+        }
+        download.onNext(AccessCertificatesDownloadEvent.page(Collections.singletonList(accessCertificatePair)));
+        download.onNext(AccessCertificatesDownloadEvent.completed(Optional.absent()));
+        download.onComplete();
+
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        second.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        first.assertResult(accessCertificatePair);
+        second.assertResult(accessCertificatePair);
+        verify(remoteMock, times(1)).downloadAccessCertificatePages(any(), any(), any());
+        verify(localStorage, times(1)).syncAccessCertificates(any());
+    }
+
+    @Test
+    public void itShouldKeepLocalStorageOnTransientErrorDuringInitialize() throws Exception {
+        doReturn(Observable.error(new RuntimeException(new SocketTimeoutException())))
+                .when(remoteMock).createDeviceCertificate(any());
+
+        sut.initialize(null, accessSdkOptionsWithoutIdentity())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertError(RuntimeException.class);
+
+        verify(localStorage, never()).reset();
+        assertThat(localStorage.findKeys().blockingFirst(), is(notNullValue()));
+    }
+
+    @Test
+    public void itShouldResetLocalStorageOnOtherErrorsDuringInitialize() throws Exception {
+        doReturn(Observable.error(new IllegalStateException("Bad signature")))
+                .when(remoteMock).createDeviceCertificate(any());
+
+        sut.initialize(null, accessSdkOptionsWithoutIdentity())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertError(IllegalStateException.class);
+
+        verify(localStorage).reset();
+    }
+
+    @Test
+    public void itShouldPrepareRemoteOnceKeysAreAvailable() throws Exception {
+        doReturn(Observable.error(new RuntimeException(new SocketTimeoutException())))
+                .when(remoteMock).createDeviceCertificate(any());
+        String publicKeyHex = localStorage.findKeys().blockingFirst().getPublicKeyHex();
+
+        sut.initialize(null, accessSdkOptionsWithoutIdentity())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS);
+
+        verify(remoteMock).prepare(argThat(keys -> publicKeyHex.equals(keys.getPublicKeyHex())));
+    }
+
+    @Test
+    public void itShouldUseGivenErrorClassifierToDecideWhetherToResetLocalStorage() throws Exception {
+        doReturn(Observable.error(new IllegalStateException("Service unavailable")))
+                .when(remoteMock).createDeviceCertificate(any());
+
+        HmCertificateManager sut = new HmCertificateManager(localStorage, remoteMock, AmvSdkSchedulers.shared(),
+                error -> error instanceof IllegalStateException);
+
+        sut.initialize(null, accessSdkOptionsWithoutIdentity())
+                .test()
+                .awaitDone(5, TimeUnit.SECONDS)
+                .assertError(IllegalStateException.class);
+
+        verify(localStorage, never()).reset();
+    }
+
+    @Test
+    public void itShouldObserveAccessCertificates() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        localStorage.storeAccessCertificate(accessCertificatePair1).blockingFirst();
+
+        TestObserver<AccessCertificatesChangeEvent> observer = sut.observeAccessCertificates().test();
+        observer.awaitCount(1, TestObserver.TestWaitStrategy.SLEEP_1MS, TimeUnit.SECONDS.toMillis(5));
+
+        localStorage.storeAccessCertificate(accessCertificatePair2).blockingFirst();
+        localStorage.removeAccessCertificateById(accessCertificatePair1.getId()).blockingFirst();
+
+        observer.awaitCount(3, TestObserver.TestWaitStrategy.SLEEP_1MS, TimeUnit.SECONDS.toMillis(5));
+        observer.assertNotComplete();
+        observer.assertValueCount(3);
+
+        AccessCertificatesChangeEvent initial = observer.values().get(0);
+        assertThat(initial.isInitial(), is(true));
+        assertThat(initial.getAddedAccessCertificates().size(), is(1));
+        assertThat(initial.getAddedAccessCertificates().get(0).getId(), is(accessCertificatePair1.getId()));
+
+        AccessCertificatesChangeEvent added = observer.values().get(1);
+        assertThat(added.isInitial(), is(false));
+        assertThat(added.getAddedAccessCertificates(), is(Collections.singletonList(accessCertificatePair2)));
+
+        AccessCertificatesChangeEvent removed = observer.values().get(2);
+        assertThat(removed.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair1.getId())));
+
+        observer.dispose();
+    }
+
+    @Test
+    public void itShouldSwitchThreadsOncePerRead() throws Exception {
+        AccessCertificatePair accessCertificatePair = CachingLocalStorageTest.createRandomAccessCertificatePair();
+        localStorage.storeAccessCertificate(accessCertificatePair).blockingFirst();
+        SerialNumber vehicleSerial = accessCertificatePair.getDeviceAccessCertificate().getGainerSerial();
+
+        CallStatistics getDeviceCertificate = CallStatistics.of(() -> sut.getDeviceCertificate().blockingFirst());
+        CallStatistics getAccessCertificates = CallStatistics.of(() -> sut.getAccessCertificates().toList().blockingGet());
+        CallStatistics getAccessCertificateById = CallStatistics.of(() -> sut
+                .getAccessCertificateById(accessCertificatePair.getId())
+                .blockingFirst());
+        CallStatistics getAccessCertificatesForVehicle = CallStatistics.of(() -> sut
+                .getAccessCertificatesForVehicle(vehicleSerial)
+                .toList()
+                .blockingGet());
+
+        assertThat(getDeviceCertificate.threadSwitches, is(1));
+        assertThat(getAccessCertificates.threadSwitches, is(1));
+        assertThat(getAccessCertificateById.threadSwitches, is(1));
+        assertThat(getAccessCertificatesForVehicle.threadSwitches, is(1));
+
+        // every assembled operator is at least one allocation per call
+        assertThat(getDeviceCertificate.assembledOperators <= 14, is(true));
+        assertThat(getAccessCertificates.assembledOperators <= 21, is(true));
+        assertThat(getAccessCertificateById.assembledOperators <= 13, is(true));
+        assertThat(getAccessCertificatesForVehicle.assembledOperators <= 22, is(true));
+    }
+
+    private static AccessSdkOptions accessSdkOptionsWithoutIdentity() {
+        AccessSdkOptions accessSdkOptions = mock(AccessSdkOptions.class);
+        doReturn(Optional.absent()).when(accessSdkOptions).getIdentity();
+        return accessSdkOptions;
+    }
+
+    private static class CallStatistics {
+        private final int threadSwitches;
+        private final int assembledOperators;
+
+        private CallStatistics(int threadSwitches, int assembledOperators) {
+            this.threadSwitches = threadSwitches;
+            this.assembledOperators = assembledOperators;
+        }
+
+        private static CallStatistics of(Runnable call) {
+            AtomicInteger threadSwitches = new AtomicInteger();
+            AtomicInteger assembledOperators = new AtomicInteger();
+
+            RxJavaPlugins.setScheduleHandler(run -> {
+                Thread schedulingThread = Thread.currentThread();
+                return () -> {
+                    if (Thread.currentThread() != schedulingThread) {
+                        threadSwitches.incrementAndGet();
+                    }
+                    run.run();
+                };
+            });
+            RxJavaPlugins.setOnObservableAssembly(observable -> {
+                assembledOperators.incrementAndGet();
+                return observable;
+            });
+            RxJavaPlugins.setOnSingleAssembly(single -> {
+                assembledOperators.incrementAndGet();
+                return single;
+            });
+            RxJavaPlugins.setOnMaybeAssembly(maybe -> {
+                assembledOperators.incrementAndGet();
+                return maybe;
+            });
+
+            try {
+                call.run();
+            } finally {
+                RxJavaPlugins.reset();
+            }
+
+            return new CallStatistics(threadSwitches.get(), assembledOperators.get());
+        }
+    }
+}
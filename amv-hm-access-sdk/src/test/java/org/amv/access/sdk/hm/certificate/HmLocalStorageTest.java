@@ -7,11 +7,14 @@ import com.highmobility.value.Bytes;
 
 import org.junit.Assert;
 
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
 import org.amv.access.sdk.hm.error.SdkNotInitializedException;
 import org.amv.access.sdk.hm.secure.SecureStorage;
 import org.amv.access.sdk.hm.secure.Storage;
+import org.amv.access.sdk.hm.util.Json;
 import org.amv.access.sdk.spi.certificate.AccessCertificate;
 import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
 import org.amv.access.sdk.spi.certificate.DeviceCertificate;
 import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatePair;
 import org.amv.access.sdk.spi.crypto.Keys;
@@ -20,27 +23,40 @@ import org.apache.commons.lang3.RandomUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class HmLocalStorageTest {
     private static final String RANDOM_DEVICE_CERT_BASE64 = "WFhYWAAAEjRWeJq83vAAAK+vdxh+UxMaxHp7V8rqGO0WUrxii1wd9ToGWVFLqztSLrgfdytAjtL89tJRIHZ33ai4D7b154ZTv/xuq+IqW/L/2DeqTlhsp/lsvHuYUp62cTptOwyj7uJ/HXEqw0+ims5z08Zi6XN+7t1Pa3EB4al+IHy7pwuUQPkT0Myr+1dhia0ZBShSQ20x";
     private static final String RANDOM_ACCESS_CERT_BASE64 = "AURFTU+XdapkXy/AslSvr3cYflMTGsR6e1fK6hjtFlK8YotcHfU6BllRS6s7Ui64H3crQI7S/PbSUSB2d92ouA+29eeGU7/8bqviKlvy/9g3qk5YbKf5EwIKDDgVAgwMOAcQAB8IAABA";
 
+    private Storage storage;
     private HmLocalStorage sut;
 
     @Before
     public void setUp() {
         SecureStorage secureStorage = new SimpleMapStorage();
-        Storage storage = new SimpleMapStorage();
+        this.storage = new SimpleMapStorage();
 
-        this.sut = new HmLocalStorage(secureStorage, storage);
+        this.sut = new HmLocalStorage(secureStorage, this.storage);
         this.sut.reset().blockingFirst();
     }
 
@@ -68,6 +84,21 @@ public class HmLocalStorageTest {
         assertThat(hmDeviceCertificate.toByteArray(), is(deviceCertificate1.toByteArray()));
     }
 
+    @Test
+    public void itShouldSuccessfullyStoreDeviceCertificateWithIssuerKey() throws Exception {
+        Bytes randomDeviceCertBytes = new Bytes(Base64.decode(RANDOM_DEVICE_CERT_BASE64));
+        HmDeviceCertificate hmDeviceCertificate = new HmDeviceCertificate(new com.highmobility.crypto.DeviceCertificate(randomDeviceCertBytes));
+        byte[] randomIssuerPublicKey = RandomUtils.nextBytes(18);
+
+        Boolean storeSuccess = sut.storeDeviceCertificateWithIssuerKey(
+                new HmDeviceCertificateWithIssuerKey(hmDeviceCertificate, randomIssuerPublicKey))
+                .blockingFirst();
+
+        assertThat(storeSuccess, is(Boolean.TRUE));
+        assertThat(sut.findDeviceCertificate().blockingFirst().toByteArray(), is(hmDeviceCertificate.toByteArray()));
+        assertThat(sut.findIssuerPublicKey().blockingFirst(), is(randomIssuerPublicKey));
+    }
+
     @Test
     public void itShouldFailToFindMissingIssuerPublicKey() throws Exception {
         try {
@@ -91,6 +122,20 @@ public class HmLocalStorageTest {
         assertThat(randomIssuerPublicKey, is(randomIssuerPublicKey1));
     }
 
+    @Test
+    public void itShouldSuccessfullyStoreAccessCertificatesWatermark() throws Exception {
+        assertThat(sut.findAccessCertificatesWatermark().blockingFirst(), is(Optional.absent()));
+
+        Boolean storeSuccess = sut.storeAccessCertificatesWatermark("watermark")
+                .blockingFirst();
+
+        assertThat(storeSuccess, is(Boolean.TRUE));
+        assertThat(sut.findAccessCertificatesWatermark().blockingFirst(), is(Optional.of("watermark")));
+
+        sut.reset().blockingFirst();
+        assertThat(sut.findAccessCertificatesWatermark().blockingFirst(), is(Optional.absent()));
+    }
+
     @Test
     public void itShouldFailToFindMissingKeys() throws Exception {
         try {
@@ -213,6 +258,154 @@ public class HmLocalStorageTest {
         assertThat(accessCertificatePairs1.isEmpty(), is(true));
     }
 
+    @Test
+    public void itShouldSuccessfullyStoreSingleAccessCertificate() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+
+        Boolean storeSuccess = sut.storeAccessCertificates(Collections.singletonList(accessCertificatePair1))
+                .blockingFirst();
+        assertThat(storeSuccess, is(Boolean.TRUE));
+
+        Boolean storeSingleSuccess = sut.storeAccessCertificate(accessCertificatePair2)
+                .blockingFirst();
+        assertThat(storeSingleSuccess, is(Boolean.TRUE));
+
+        List<AccessCertificatePair> accessCertificatePairs = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(accessCertificatePairs.size(), is(2));
+        assertThat(accessCertificatePairs.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(accessCertificatePairs.get(1).getId(), is(accessCertificatePair2.getId()));
+    }
+
+    @Test
+    public void itShouldRemoveStaleAccessCertificatesWhenStoringAll() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+        Boolean storeSuccess = sut.storeAccessCertificates(Collections.singletonList(accessCertificatePair2))
+                .blockingFirst();
+        assertThat(storeSuccess, is(Boolean.TRUE));
+
+        List<AccessCertificatePair> accessCertificatePairs = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(accessCertificatePairs.size(), is(1));
+        assertThat(accessCertificatePairs.get(0).getId(), is(accessCertificatePair2.getId()));
+
+        Optional<AccessCertificatePair> removedAccessCertificate = sut
+                .findAccessCertificateById(accessCertificatePair1.getId())
+                .blockingFirst();
+        assertThat(removedAccessCertificate, is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldReadBase64ValuesOfPreviousVersions() throws Exception {
+        byte[] issuerPublicKey = RandomUtils.nextBytes(18);
+        storage.storeString("KEY_ISSUER_PUBLIC_KEY", Base64.encode(issuerPublicKey)).blockingFirst();
+
+        assertThat(sut.findIssuerPublicKey().blockingFirst(), is(issuerPublicKey));
+
+        byte[] newIssuerPublicKey = RandomUtils.nextBytes(18);
+        sut.storeIssuerPublicKey(newIssuerPublicKey).blockingFirst();
+
+        assertThat(sut.findIssuerPublicKey().blockingFirst(), is(newIssuerPublicKey));
+        assertThat(storage.findString("KEY_ISSUER_PUBLIC_KEY").blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldMigrateLegacyAccessCertificates() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+
+        String legacyValue = Json.toJson(Arrays.asList(
+                SerializableAccessCertificatePair.from(accessCertificatePair1),
+                SerializableAccessCertificatePair.from(accessCertificatePair2)));
+        storage.storeString("KEY_ACCESS_CERTIFICATES", legacyValue).blockingFirst();
+
+        AccessCertificatePair accessCertificateByIdOrNull = sut.findAccessCertificateById(accessCertificatePair2.getId())
+                .blockingFirst()
+                .orNull();
+        assertThat(accessCertificateByIdOrNull, is(notNullValue()));
+        assertThat(accessCertificateByIdOrNull.getDeviceAccessCertificate().toByteArray(),
+                is(accessCertificatePair2.getDeviceAccessCertificate().toByteArray()));
+
+        List<AccessCertificatePair> accessCertificatePairs = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(accessCertificatePairs.size(), is(2));
+        assertThat(accessCertificatePairs.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(accessCertificatePairs.get(1).getId(), is(accessCertificatePair2.getId()));
+
+        assertThat(storage.findString("KEY_ACCESS_CERTIFICATES").blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldKeepLegacyAccessCertificatesIfMigrationFails() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+
+        String legacyValue = Json.toJson(Arrays.asList(
+                SerializableAccessCertificatePair.from(accessCertificatePair1),
+                SerializableAccessCertificatePair.from(accessCertificatePair2)));
+        storage.storeString("KEY_ACCESS_CERTIFICATES", legacyValue).blockingFirst();
+
+        Storage storageSpy = spy(storage);
+        doReturn(Observable.just(false))
+                .doCallRealMethod()
+                .when(storageSpy).storeBytes(anyString(), any());
+        HmLocalStorage hmLocalStorage = new HmLocalStorage(new SimpleMapStorage(), storageSpy);
+
+        List<AccessCertificatePair> afterFailedMigration = hmLocalStorage.findAccessCertificates()
+                .toList()
+                .blockingGet();
+        assertThat(afterFailedMigration.isEmpty(), is(true));
+        assertThat(storage.findString("KEY_ACCESS_CERTIFICATES").blockingFirst(), is(Optional.of(legacyValue)));
+
+        List<AccessCertificatePair> afterRetriedMigration = hmLocalStorage.findAccessCertificates()
+                .toList()
+                .blockingGet();
+        assertThat(afterRetriedMigration.size(), is(2));
+        assertThat(storage.findString("KEY_ACCESS_CERTIFICATES").blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldSkipCorruptLegacyAccessCertificatesOnMigration() throws Exception {
+        AccessCertificatePair accessCertificatePair = createRandomAccessCertificatePair();
+
+        SerializableAccessCertificatePair corruptAccessCertificatePair = SerializableAccessCertificatePair
+                .from(createRandomAccessCertificatePair());
+        corruptAccessCertificatePair.setDeviceAccessCertificate(Base64.encode(RandomUtils.nextBytes(8)));
+
+        String legacyValue = Json.toJson(Arrays.asList(
+                corruptAccessCertificatePair,
+                SerializableAccessCertificatePair.from(accessCertificatePair)));
+        storage.storeString("KEY_ACCESS_CERTIFICATES", legacyValue).blockingFirst();
+
+        List<AccessCertificatePair> accessCertificatePairs = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(accessCertificatePairs.size(), is(1));
+        assertThat(accessCertificatePairs.get(0).getId(), is(accessCertificatePair.getId()));
+        assertThat(accessCertificatePairs.get(0).getDeviceAccessCertificate().getGainerSerial(),
+                is(accessCertificatePair.getDeviceAccessCertificate().getGainerSerial()));
+
+        assertThat(storage.findString("KEY_ACCESS_CERTIFICATES").blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldFindEarliestValidUntilAfter() throws Exception {
+        AccessCertificatePair expiring2025 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2025);
+        AccessCertificatePair expiring2020 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2020);
+        AccessCertificatePair expiring2030 = SqliteLocalStorageTest.createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificates(Arrays.asList(expiring2025, expiring2020, expiring2030))
+                .blockingFirst();
+
+        long validUntil2020 = expiring2020.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2025 = expiring2025.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2030 = expiring2030.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+
+        assertThat(sut.findEarliestValidUntilAfter(0L).blockingFirst(), is(Optional.of(validUntil2020)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2020).blockingFirst(), is(Optional.of(validUntil2025)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2025).blockingFirst(), is(Optional.of(validUntil2030)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2030).blockingFirst(), is(Optional.<Long>absent()));
+    }
+
     @Test
     public void itShouldResetStorageSuccessfully() throws Exception {
         Boolean storeKeysSuccessful = sut.storeKeys(KeysImpl.builder()
@@ -268,4 +461,122 @@ public class HmLocalStorageTest {
                 .isEmpty(), is(true));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void itShouldPublishAccessCertificateChanges() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair3 = createRandomAccessCertificatePair();
+        AccessCertificatePair changedAccessCertificatePair2 = createChangedAccessCertificatePair(accessCertificatePair2);
+
+        TestObserver<AccessCertificatesChangeEvent> changes = sut.observeAccessCertificateChanges().test();
+
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2)).blockingFirst();
+        sut.storeAccessCertificates(Arrays.asList(changedAccessCertificatePair2, accessCertificatePair3)).blockingFirst();
+        sut.storeAccessCertificate(accessCertificatePair3).blockingFirst();
+        sut.removeAccessCertificateById(accessCertificatePair2.getId()).blockingFirst();
+        sut.removeAccessCertificateById("any").blockingFirst();
+        sut.reset().blockingFirst();
+
+        changes.assertValueCount(5);
+
+        AccessCertificatesChangeEvent storeAll = changes.values().get(0);
+        assertThat(storeAll.isInitial(), is(false));
+        assertThat(storeAll.getAddedAccessCertificates(), is(Arrays.asList(accessCertificatePair1, accessCertificatePair2)));
+        assertThat(storeAll.getUpdatedAccessCertificates().isEmpty(), is(true));
+        assertThat(storeAll.getRemovedAccessCertificateIds().isEmpty(), is(true));
+
+        AccessCertificatesChangeEvent replaceAll = changes.values().get(1);
+        assertThat(replaceAll.getAddedAccessCertificates(), is(Collections.singletonList(accessCertificatePair3)));
+        assertThat(replaceAll.getUpdatedAccessCertificates(), is(Collections.singletonList(changedAccessCertificatePair2)));
+        assertThat(replaceAll.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair1.getId())));
+
+        AccessCertificatesChangeEvent storeSingle = changes.values().get(2);
+        assertThat(storeSingle.getAddedAccessCertificates().isEmpty(), is(true));
+        assertThat(storeSingle.getUpdatedAccessCertificates(), is(Collections.singletonList(accessCertificatePair3)));
+
+        AccessCertificatesChangeEvent removeSingle = changes.values().get(3);
+        assertThat(removeSingle.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair2.getId())));
+
+        AccessCertificatesChangeEvent reset = changes.values().get(4);
+        assertThat(reset.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair3.getId())));
+    }
+
+    @Test
+    public void itShouldOnlyWriteChangedAccessCertificatesOnSync() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair2 = createRandomAccessCertificatePair();
+        AccessCertificatePair accessCertificatePair3 = createRandomAccessCertificatePair();
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2)).blockingFirst();
+
+        Storage storageSpy = spy(storage);
+        HmLocalStorage sutWithSpy = new HmLocalStorage(new SimpleMapStorage(), storageSpy);
+
+        AccessCertificatesChangeEvent unchanged = sutWithSpy
+                .syncAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+        assertThat(unchanged.isEmpty(), is(true));
+        verify(storageSpy, never()).batch();
+
+        AccessCertificatePair changedAccessCertificatePair2 = createChangedAccessCertificatePair(accessCertificatePair2);
+        AccessCertificatesChangeEvent changed = sutWithSpy
+                .syncAccessCertificates(Arrays.asList(changedAccessCertificatePair2, accessCertificatePair3))
+                .blockingFirst();
+        assertThat(changed.getAddedAccessCertificates(), is(Collections.singletonList(accessCertificatePair3)));
+        assertThat(changed.getUpdatedAccessCertificates(), is(Collections.singletonList(changedAccessCertificatePair2)));
+        assertThat(changed.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair1.getId())));
+        verify(storageSpy, times(1)).batch();
+
+        List<AccessCertificatePair> found = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(changedAccessCertificatePair2.getId()));
+        assertThat(found.get(0).getDeviceAccessCertificate().toByteArray(),
+                is(changedAccessCertificatePair2.getDeviceAccessCertificate().toByteArray()));
+        assertThat(found.get(1).getId(), is(accessCertificatePair3.getId()));
+    }
+
+    @Test
+    public void itShouldNotLoseConcurrentWritesOnMultiThreadedStorageScheduler() throws Exception {
+        AccessSdkSchedulers schedulers = AccessSdkSchedulers.builder()
+                .storagePoolSize(4)
+                .build();
+        HmLocalStorage sut = new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage(), schedulers);
+
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            accessCertificatePairs.add(createRandomAccessCertificatePair());
+        }
+
+        List<Boolean> results = Observable.fromIterable(accessCertificatePairs)
+                .flatMap(sut::storeAccessCertificate)
+                .toList()
+                .blockingGet();
+
+        assertThat(results.size(), is(accessCertificatePairs.size()));
+        assertThat(sut.findAccessCertificates().count().blockingGet(), is((long) accessCertificatePairs.size()));
+
+        schedulers.shutdown();
+    }
+
+    private static AccessCertificatePair createChangedAccessCertificatePair(AccessCertificatePair accessCertificatePair) {
+        AccessCertificatePair otherAccessCertificatePair = CachingLocalStorageTest
+                .createRandomAccessCertificatePair(RandomUtils.nextBytes(9));
+
+        return SimpleAccessCertificatePair.builder()
+                .id(accessCertificatePair.getId())
+                .deviceAccessCertificate(otherAccessCertificatePair.getDeviceAccessCertificate())
+                .vehicleAccessCertificate(otherAccessCertificatePair.getVehicleAccessCertificate())
+                .build();
+    }
+
+    private static AccessCertificatePair createRandomAccessCertificatePair() {
+        Bytes randomAccessCertBytes = new Bytes(Base64.decode(RANDOM_ACCESS_CERT_BASE64));
+        HmAccessCertificate hmAccessCertificate = new HmAccessCertificate(
+                new com.highmobility.crypto.AccessCertificate(randomAccessCertBytes));
+
+        return SimpleAccessCertificatePair.builder()
+                .id(UUID.randomUUID().toString())
+                .deviceAccessCertificate(hmAccessCertificate)
+                .vehicleAccessCertificate(hmAccessCertificate)
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificate;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class LazyAccessCertificateTest {
+    private static final String RANDOM_ACCESS_CERT_BASE64 = "AURFTU+XdapkXy/AslSvr3cYflMTGsR6e1fK6hjtFlK8YotcHfU6BllRS6s7Ui64H3crQI7S/PbSUSB2d92ouA+29eeGU7/8bqviKlvy/9g3qk5YbKf5EwIKDDgVAgwMOAcQAB8IAABA";
+
+    @Test
+    public void itShouldNotParseCertificatesWhenOnlyIdAndBytesAreAccessed() {
+        byte[] malformedAccessCertificate = new byte[]{0x01, 0x02, 0x03};
+
+        AccessCertificatePair accessCertificatePair = HmAccessCertificatePairs.create("id",
+                malformedAccessCertificate, malformedAccessCertificate);
+
+        assertThat(accessCertificatePair.getId(), is("id"));
+        assertThat(accessCertificatePair.getDeviceAccessCertificate().toByteArray(), is(malformedAccessCertificate));
+
+        try {
+            accessCertificatePair.getDeviceAccessCertificate().getGainerSerial();
+            Assert.fail("Should have thrown exception");
+        } catch (Exception e) {
+            // expected - the certificate is parsed on first access of a parsed value
+        }
+    }
+
+    @Test
+    public void itShouldMemoizeParsedValues() {
+        byte[] accessCertificateBytes = Base64.decode(RANDOM_ACCESS_CERT_BASE64);
+
+        AccessCertificate accessCertificate = new LazyAccessCertificate(accessCertificateBytes);
+
+        assertThat(accessCertificate.getGainerSerial(), is(sameInstance(accessCertificate.getGainerSerial())));
+        assertThat(accessCertificate.getProviderSerial(), is(sameInstance(accessCertificate.getProviderSerial())));
+        assertThat(accessCertificate.getGainerSerial().getSerialNumber(),
+                is(new HmAccessCertificate(new com.highmobility.crypto.AccessCertificate(
+                        new Bytes(accessCertificateBytes))).getGainerSerial().getSerialNumber()));
+    }
+}
@@ -0,0 +1,168 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.sdk.hm.error.RemoteUnavailableException;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ResilientRemoteTest {
+
+    private TestScheduler scheduler;
+    private Remote remoteMock;
+    private Keys keys;
+    private AtomicInteger calls;
+
+    @Before
+    public void setUp() {
+        this.scheduler = new TestScheduler();
+        this.remoteMock = mock(Remote.class);
+        this.keys = mock(Keys.class);
+        this.calls = new AtomicInteger();
+    }
+
+    @Test
+    public void itShouldRetryTransientErrorsWithExponentialBackoff() throws Exception {
+        DeviceCertificateWithIssuerKey deviceCertificate = mock(DeviceCertificateWithIssuerKey.class);
+        doReturnAfterFailures(2, deviceCertificate);
+
+        ResilientRemote sut = new ResilientRemote(remoteMock, RemoteResiliencePolicy.builder()
+                .initialBackoff(100, TimeUnit.MILLISECONDS)
+                .backoffMultiplier(2)
+                .jitterFactor(0)
+                .build(), scheduler);
+
+        TestObserver<DeviceCertificateWithIssuerKey> observer = sut.createDeviceCertificate(keys).test();
+        assertThat(calls.get(), is(1));
+
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        assertThat(calls.get(), is(1));
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(calls.get(), is(2));
+
+        scheduler.advanceTimeBy(199, TimeUnit.MILLISECONDS);
+        assertThat(calls.get(), is(2));
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(calls.get(), is(3));
+
+        observer.assertResult(deviceCertificate);
+        assertThat(sut.getCircuitState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void itShouldNotRetryErrorsThatAreNotTransient() throws Exception {
+        doReturn(Observable.defer(() -> {
+            calls.incrementAndGet();
+            return Observable.error(new IllegalArgumentException("Bad signature"));
+        })).when(remoteMock).createDeviceCertificate(any());
+
+        ResilientRemote sut = new ResilientRemote(remoteMock, RemoteResiliencePolicy.defaults(), scheduler);
+
+        TestObserver<DeviceCertificateWithIssuerKey> observer = sut.createDeviceCertificate(keys).test();
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        observer.assertError(IllegalArgumentException.class);
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void itShouldNotRetryAfterItemsHaveBeenEmitted() throws Exception {
+        AccessCertificatePair accessCertificatePair = mock(AccessCertificatePair.class);
+        doReturn(Observable.defer(() -> {
+            calls.incrementAndGet();
+            return Observable.just(accessCertificatePair)
+                    .concatWith(Observable.error(new SocketTimeoutException()));
+        })).when(remoteMock).downloadAccessCertificates(any(), any());
+
+        ResilientRemote sut = new ResilientRemote(remoteMock, RemoteResiliencePolicy.defaults(), scheduler);
+
+        TestObserver<AccessCertificatePair> observer = sut.downloadAccessCertificates(keys, null).test();
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        observer.assertFailure(SocketTimeoutException.class, accessCertificatePair);
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void itShouldOpenCircuitAfterConsecutiveTransientFailures() throws Exception {
+        DeviceCertificateWithIssuerKey deviceCertificate = mock(DeviceCertificateWithIssuerKey.class);
+        doReturnAfterFailures(3, deviceCertificate);
+
+        ResilientRemote sut = new ResilientRemote(remoteMock, RemoteResiliencePolicy.builder()
+                .maxRetries(0)
+                .failureThreshold(3)
+                .openDuration(1, TimeUnit.MINUTES)
+                .build(), scheduler);
+
+        for (int i = 0; i < 3; i++) {
+            sut.createDeviceCertificate(keys).test().assertError(RuntimeException.class);
+        }
+        assertThat(sut.getCircuitState(), is(CircuitBreaker.State.OPEN));
+
+        sut.createDeviceCertificate(keys).test().assertError(RemoteUnavailableException.class);
+        assertThat(calls.get(), is(3));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        sut.createDeviceCertificate(keys).test().assertResult(deviceCertificate);
+        assertThat(calls.get(), is(4));
+        assertThat(sut.getCircuitState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void itShouldReopenCircuitIfTrialCallFails() throws Exception {
+        doReturnAfterFailures(Integer.MAX_VALUE, null);
+
+        ResilientRemote sut = new ResilientRemote(remoteMock, RemoteResiliencePolicy.builder()
+                .maxRetries(0)
+                .failureThreshold(1)
+                .openDuration(1, TimeUnit.MINUTES)
+                .build(), scheduler);
+
+        sut.createDeviceCertificate(keys).test().assertError(RuntimeException.class);
+        scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        sut.createDeviceCertificate(keys).test().assertError(RuntimeException.class);
+
+        assertThat(calls.get(), is(2));
+        assertThat(sut.getCircuitState(), is(CircuitBreaker.State.OPEN));
+        sut.createDeviceCertificate(keys).test().assertError(RemoteUnavailableException.class);
+    }
+
+    @Test
+    public void itShouldComputeBackoffWithJitter() throws Exception {
+        RemoteResiliencePolicy policy = RemoteResiliencePolicy.builder()
+                .initialBackoff(1, TimeUnit.SECONDS)
+                .maxBackoff(10, TimeUnit.SECONDS)
+                .backoffMultiplier(2)
+                .jitterFactor(0.5)
+                .build();
+
+        assertThat(policy.backoffInMillis(1, 0), is(1000L));
+        assertThat(policy.backoffInMillis(3, 0), is(4000L));
+        assertThat(policy.backoffInMillis(3, 0.5), is(3000L));
+        assertThat(policy.backoffInMillis(10, 0), is(10000L));
+    }
+
+    private void doReturnAfterFailures(int failures, DeviceCertificateWithIssuerKey deviceCertificate) {
+        doReturn(Observable.defer(() -> {
+            if (calls.incrementAndGet() <= failures) {
+                return Observable.error(new RuntimeException(new SocketTimeoutException()));
+            }
+            return Observable.just(deviceCertificate);
+        })).when(remoteMock).createDeviceCertificate(any());
+    }
+}
@@ -0,0 +1,144 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SignedNoncePoolTest {
+
+    private TestScheduler cryptoScheduler;
+    private Keys keys;
+    private SignedNoncePool sut;
+
+    @Before
+    public void setUp() {
+        this.cryptoScheduler = new TestScheduler();
+        this.keys = randomKeys();
+        this.sut = new SignedNoncePool(4, TimeUnit.MINUTES.toMillis(5), cryptoScheduler, Schedulers.trampoline());
+    }
+
+    @Test
+    public void itShouldPrefillPool() throws Exception {
+        sut.prefill(keys);
+        assertThat(sut.size(), is(0));
+
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(4));
+
+        // taken from the pool without waiting for the crypto scheduler
+        sut.take(keys).test().assertValueCount(1);
+        assertThat(sut.size(), is(3));
+
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(4));
+    }
+
+    @Test
+    public void itShouldSignOnDemandAndReplaceOneNonceAfterEachTake() throws Exception {
+        TestObserver<String[]> observer = sut.take(keys).test();
+        observer.assertNoValues();
+
+        cryptoScheduler.triggerActions();
+
+        observer.assertValueCount(1);
+        assertThat(sut.size(), is(1));
+
+        sut.take(keys).test().assertValueCount(1);
+        assertThat(sut.size(), is(0));
+
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(1));
+    }
+
+    @Test
+    public void itShouldNotScheduleMoreSignaturesThanCapacity() throws Exception {
+        sut.prefill(keys);
+        sut.prefill(keys);
+        sut.take(keys).test();
+
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(4));
+    }
+
+    @Test
+    public void itShouldHandOutEachNonceOnce() throws Exception {
+        sut.prefill(keys);
+
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            TestObserver<String[]> observer = sut.take(keys).test();
+            cryptoScheduler.triggerActions();
+            nonces.add(observer.values().get(0)[0]);
+        }
+
+        assertThat(nonces.size(), is(20));
+        assertThat(sut.size(), is(4));
+    }
+
+    @Test
+    public void itShouldDiscardNoncesOfOtherKeys() throws Exception {
+        sut.prefill(keys);
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(4));
+
+        TestObserver<String[]> observer = sut.take(randomKeys()).test();
+        assertThat(sut.size(), is(0));
+        observer.assertNoValues();
+
+        cryptoScheduler.triggerActions();
+        observer.assertValueCount(1);
+        assertThat(sut.size(), is(1));
+    }
+
+    @Test
+    public void itShouldDiscardExpiredNonces() throws Exception {
+        sut.prefill(keys);
+        cryptoScheduler.triggerActions();
+
+        cryptoScheduler.advanceTimeBy(5, TimeUnit.MINUTES);
+
+        TestObserver<String[]> observer = sut.take(keys).test();
+        observer.assertNoValues();
+
+        cryptoScheduler.triggerActions();
+        observer.assertValueCount(1);
+        assertThat(sut.size(), is(1));
+    }
+
+    @Test
+    public void itShouldKeepWorkingIfSigningAheadFails() throws Exception {
+        Keys brokenKeys = mock(Keys.class);
+        when(brokenKeys.getPublicKeyHex()).thenReturn("broken");
+        when(brokenKeys.getPrivateKey()).thenThrow(new IllegalStateException("broken"));
+
+        sut.prefill(brokenKeys);
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(0));
+
+        sut.prefill(keys);
+        cryptoScheduler.triggerActions();
+        assertThat(sut.size(), is(4));
+    }
+
+    private static Keys randomKeys() {
+        return KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(64))
+                .privateKey(RandomUtils.nextBytes(32))
+                .build();
+    }
+}
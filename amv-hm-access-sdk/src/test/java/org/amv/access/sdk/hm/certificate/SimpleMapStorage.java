@@ -6,6 +6,7 @@ import com.google.common.collect.Maps;
 import org.amv.access.sdk.hm.secure.SecureStorage;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import io.reactivex.Observable;
@@ -13,6 +14,7 @@ import io.reactivex.Observable;
 public class SimpleMapStorage implements SecureStorage {
 
     private Map<String, String> map = Maps.newConcurrentMap();
+    private Map<String, byte[]> bytesMap = Maps.newConcurrentMap();
 
     @Override
     public Observable<Optional<String>> findString(String key) {
@@ -32,4 +34,77 @@ public class SimpleMapStorage implements SecureStorage {
         return Observable.just(1)
                 .map(foo -> Optional.fromNullable(map.remove(key)));
     }
+
+    @Override
+    public Observable<Optional<byte[]>> findBytes(String key) {
+        return Observable.just(1)
+                .map(foo -> Optional.fromNullable(bytesMap.get(key)));
+    }
+
+    @Override
+    public Observable<Boolean> storeBytes(String key, byte[] value) {
+        return Observable.just(Pair.of(key, value))
+                .doOnNext(keyValPair -> bytesMap.put(keyValPair.getKey(), keyValPair.getValue()))
+                .map(foo -> true);
+    }
+
+    @Override
+    public Observable<Optional<byte[]>> removeBytes(String key) {
+        return Observable.just(1)
+                .map(foo -> Optional.fromNullable(bytesMap.remove(key)));
+    }
+
+    @Override
+    public Batch batch() {
+        Map<String, Optional<String>> strings = new LinkedHashMap<>();
+        Map<String, Optional<byte[]>> bytes = new LinkedHashMap<>();
+
+        return new Batch() {
+            @Override
+            public Batch putString(String key, String value) {
+                strings.put(key, Optional.of(value));
+                return this;
+            }
+
+            @Override
+            public Batch putBytes(String key, byte[] value) {
+                bytes.put(key, Optional.of(value));
+                return this;
+            }
+
+            @Override
+            public Batch removeString(String key) {
+                strings.put(key, Optional.absent());
+                return this;
+            }
+
+            @Override
+            public Batch removeBytes(String key) {
+                bytes.put(key, Optional.absent());
+                return this;
+            }
+
+            @Override
+            public Observable<Boolean> commit() {
+                return Observable.just(1)
+                        .doOnNext(foo -> {
+                            strings.forEach((key, value) -> {
+                                if (value.isPresent()) {
+                                    map.put(key, value.get());
+                                } else {
+                                    map.remove(key);
+                                }
+                            });
+                            bytes.forEach((key, value) -> {
+                                if (value.isPresent()) {
+                                    bytesMap.put(key, value.get());
+                                } else {
+                                    bytesMap.remove(key);
+                                }
+                            });
+                        })
+                        .map(foo -> true);
+            }
+        };
+    }
 }
@@ -0,0 +1,101 @@
+package org.amv.access.sdk.hm.certificate;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares {@link SqliteLocalStorage} with {@link HmLocalStorage} on top of an in-memory storage
+ * for large numbers of access certificates. Only run if enabled - see {@link Benchmarks}. The numbers
+ * are only meant as a rough indication as the test does not control for jit compilation, gc pauses
+ * or the file system.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class SqliteLocalStorageBenchmarkTest {
+    private static final int ACCESS_CERTIFICATES_PER_VEHICLE = 10;
+    private static final int LOOKUPS = 100;
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void benchmark100() throws Exception {
+        runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark1000() throws Exception {
+        runBenchmark(1000);
+    }
+
+    @Test
+    public void benchmark5000() throws Exception {
+        runBenchmark(5000);
+    }
+
+    private void runBenchmark(int certificateCount) throws Exception {
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>(certificateCount);
+        byte[] vehicleSerial = RandomUtils.nextBytes(9);
+        for (int i = 0; i < certificateCount; i++) {
+            if (i % ACCESS_CERTIFICATES_PER_VEHICLE == 0) {
+                vehicleSerial = RandomUtils.nextBytes(9);
+            }
+            accessCertificatePairs.add(SqliteLocalStorageTest.createAccessCertificatePair(vehicleSerial, 2030));
+        }
+
+        HmLocalStorage hmLocalStorage = new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage());
+        String hm = runBenchmark(hmLocalStorage, accessCertificatePairs);
+
+        SqliteLocalStorage sqliteLocalStorage = new SqliteLocalStorage(RuntimeEnvironment.application,
+                new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage()));
+        sqliteLocalStorage.reset().blockingFirst();
+        String sqlite = runBenchmark(sqliteLocalStorage, accessCertificatePairs);
+        sqliteLocalStorage.close();
+
+        Benchmarks.report(getClass(), String.format(Locale.US, "access certificates: %d | hm: %s | sqlite: %s",
+                certificateCount, hm, sqlite));
+    }
+
+    private static String runBenchmark(LocalStorage localStorage, List<AccessCertificatePair> accessCertificatePairs) {
+        long storeStart = System.nanoTime();
+        localStorage.storeAccessCertificates(accessCertificatePairs).blockingFirst();
+        long storeNanos = System.nanoTime() - storeStart;
+
+        long findAllStart = System.nanoTime();
+        long foundCount = localStorage.findAccessCertificates().count().blockingGet();
+        long findAllNanos = System.nanoTime() - findAllStart;
+
+        assertThat(foundCount, is((long) accessCertificatePairs.size()));
+
+        long lookupStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            AccessCertificatePair accessCertificatePair = accessCertificatePairs
+                    .get(RandomUtils.nextInt(0, accessCertificatePairs.size()));
+            SerialNumber vehicleSerial = accessCertificatePair.getDeviceAccessCertificate().getGainerSerial();
+
+            localStorage.findAccessCertificateById(accessCertificatePair.getId()).blockingFirst();
+            localStorage.findAccessCertificatesByVehicleSerial(vehicleSerial).count().blockingGet();
+        }
+        long lookupNanos = System.nanoTime() - lookupStart;
+
+        return String.format(Locale.US, "store all %.1f ms, find all %.1f ms, %d lookups by id and vehicle %.1f ms",
+                Benchmarks.toMillis(storeNanos), Benchmarks.toMillis(findAllNanos), LOOKUPS,
+                Benchmarks.toMillis(lookupNanos));
+    }
+}
@@ -0,0 +1,290 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Optional;
+import com.highmobility.utils.Base64;
+import com.highmobility.value.Bytes;
+
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.amv.access.sdk.spi.certificate.AccessCertificatesChangeEvent;
+import org.amv.access.sdk.spi.certificate.impl.SimpleAccessCertificatePair;
+import org.amv.access.sdk.spi.crypto.Keys;
+import org.amv.access.sdk.spi.crypto.impl.KeysImpl;
+import org.amv.access.sdk.spi.identity.SerialNumber;
+import org.amv.access.sdk.spi.identity.impl.SerialNumberImpl;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class SqliteLocalStorageTest {
+
+    private HmLocalStorage identityStorage;
+    private SqliteLocalStorage sut;
+
+    @Before
+    public void setUp() {
+        this.identityStorage = new HmLocalStorage(new SimpleMapStorage(), new SimpleMapStorage());
+        this.sut = new SqliteLocalStorage(RuntimeEnvironment.application, null, identityStorage);
+    }
+
+    @After
+    public void tearDown() {
+        this.sut.close();
+    }
+
+    @Test
+    public void itShouldStoreAndFindAccessCertificates() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+
+        Boolean storeSuccess = sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+        assertThat(storeSuccess, is(Boolean.TRUE));
+
+        List<AccessCertificatePair> found = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(found.get(1).getId(), is(accessCertificatePair2.getId()));
+
+        Optional<AccessCertificatePair> foundById = sut.findAccessCertificateById(accessCertificatePair2.getId())
+                .blockingFirst();
+        assertThat(foundById.isPresent(), is(true));
+        assertThat(foundById.get().getVehicleAccessCertificate().toByteArray(),
+                is(accessCertificatePair2.getVehicleAccessCertificate().toByteArray()));
+
+        Boolean removeSuccess = sut.removeAccessCertificateById(accessCertificatePair1.getId()).blockingFirst();
+        assertThat(removeSuccess, is(Boolean.TRUE));
+        assertThat(sut.findAccessCertificateById(accessCertificatePair1.getId()).blockingFirst().isPresent(), is(false));
+        assertThat(sut.findAccessCertificates().count().blockingGet(), is(1L));
+    }
+
+    @Test
+    public void itShouldReplaceAccessCertificateInPlace() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificate(accessCertificatePair1).blockingFirst();
+        sut.storeAccessCertificate(accessCertificatePair2).blockingFirst();
+
+        AccessCertificatePair updatedAccessCertificatePair1 = SimpleAccessCertificatePair.builder()
+                .id(accessCertificatePair1.getId())
+                .deviceAccessCertificate(accessCertificatePair2.getDeviceAccessCertificate())
+                .vehicleAccessCertificate(accessCertificatePair2.getVehicleAccessCertificate())
+                .build();
+        sut.storeAccessCertificate(updatedAccessCertificatePair1).blockingFirst();
+
+        List<AccessCertificatePair> found = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(found.get(0).getDeviceAccessCertificate().toByteArray(),
+                is(accessCertificatePair2.getDeviceAccessCertificate().toByteArray()));
+    }
+
+    @Test
+    public void itShouldFindAccessCertificatesByVehicleSerial() throws Exception {
+        byte[] vehicleSerial = RandomUtils.nextBytes(9);
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(vehicleSerial, 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair3 = createAccessCertificatePair(vehicleSerial, 2030);
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2, accessCertificatePair3))
+                .blockingFirst();
+
+        SerialNumber vehicleSerialNumber = new SerialNumberImpl(vehicleSerial);
+        List<AccessCertificatePair> found = sut.findAccessCertificatesByVehicleSerial(vehicleSerialNumber)
+                .toList()
+                .blockingGet();
+
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(found.get(1).getId(), is(accessCertificatePair3.getId()));
+    }
+
+    @Test
+    public void itShouldPageThroughAccessCertificates() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair3 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2, accessCertificatePair3))
+                .blockingFirst();
+
+        List<AccessCertificatePair> firstPage = sut.findAccessCertificates(0, 2).toList().blockingGet();
+        List<AccessCertificatePair> secondPage = sut.findAccessCertificates(2, 2).toList().blockingGet();
+
+        assertThat(firstPage.size(), is(2));
+        assertThat(firstPage.get(1).getId(), is(accessCertificatePair2.getId()));
+        assertThat(secondPage.size(), is(1));
+        assertThat(secondPage.get(0).getId(), is(accessCertificatePair3.getId()));
+    }
+
+    @Test
+    public void itShouldFindAndRemoveExpiringAccessCertificates() throws Exception {
+        AccessCertificatePair expiring2025 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2025);
+        AccessCertificatePair expiring2020 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2020);
+        AccessCertificatePair expiring2030 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificates(Arrays.asList(expiring2025, expiring2020, expiring2030))
+                .blockingFirst();
+
+        Calendar date = new GregorianCalendar(2026, Calendar.JANUARY, 1);
+
+        List<AccessCertificatePair> expiring = sut.findAccessCertificatesExpiringBefore(date)
+                .toList()
+                .blockingGet();
+        assertThat(expiring.size(), is(2));
+        assertThat(expiring.get(0).getId(), is(expiring2020.getId()));
+        assertThat(expiring.get(1).getId(), is(expiring2025.getId()));
+
+        Integer removedCount = sut.removeAccessCertificatesExpiringBefore(date).blockingFirst();
+        assertThat(removedCount, is(2));
+
+        List<AccessCertificatePair> remaining = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(remaining.size(), is(1));
+        assertThat(remaining.get(0).getId(), is(expiring2030.getId()));
+    }
+
+    @Test
+    public void itShouldFindEarliestValidUntilAfter() throws Exception {
+        AccessCertificatePair expiring2025 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2025);
+        AccessCertificatePair expiring2020 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2020);
+        AccessCertificatePair expiring2030 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificates(Arrays.asList(expiring2025, expiring2020, expiring2030))
+                .blockingFirst();
+
+        long validUntil2020 = expiring2020.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2025 = expiring2025.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+        long validUntil2030 = expiring2030.getDeviceAccessCertificate().getEndDate().getTimeInMillis();
+
+        assertThat(sut.findEarliestValidUntilAfter(0L).blockingFirst(), is(Optional.of(validUntil2020)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2020).blockingFirst(), is(Optional.of(validUntil2025)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2025).blockingFirst(), is(Optional.of(validUntil2030)));
+        assertThat(sut.findEarliestValidUntilAfter(validUntil2030).blockingFirst(), is(Optional.<Long>absent()));
+    }
+
+    @Test
+    public void itShouldPublishAccessCertificateChanges() throws Exception {
+        AccessCertificatePair expiring2020 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2020);
+        AccessCertificatePair expiring2030 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+
+        TestObserver<AccessCertificatesChangeEvent> changes = sut.observeAccessCertificateChanges().test();
+
+        sut.storeAccessCertificates(Arrays.asList(expiring2020, expiring2030)).blockingFirst();
+        sut.storeAccessCertificate(expiring2030).blockingFirst();
+        sut.removeAccessCertificatesExpiringBefore(new GregorianCalendar(2026, Calendar.JANUARY, 1)).blockingFirst();
+
+        changes.assertValueCount(3);
+        assertThat(changes.values().get(0).getAddedAccessCertificates(), is(Arrays.asList(expiring2020, expiring2030)));
+        assertThat(changes.values().get(1).getUpdatedAccessCertificates(), is(Collections.singletonList(expiring2030)));
+        assertThat(changes.values().get(2).getRemovedAccessCertificateIds(), is(Collections.singleton(expiring2020.getId())));
+    }
+
+    @Test
+    public void itShouldOnlyWriteChangedAccessCertificatesOnSync() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        sut.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2)).blockingFirst();
+
+        AccessCertificatesChangeEvent unchanged = sut
+                .syncAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+        assertThat(unchanged.isEmpty(), is(true));
+
+        AccessCertificatePair changedAccessCertificatePair2 = SimpleAccessCertificatePair.builder()
+                .id(accessCertificatePair2.getId())
+                .deviceAccessCertificate(accessCertificatePair1.getDeviceAccessCertificate())
+                .vehicleAccessCertificate(accessCertificatePair1.getVehicleAccessCertificate())
+                .build();
+        AccessCertificatesChangeEvent changed = sut
+                .syncAccessCertificates(Collections.singletonList(changedAccessCertificatePair2))
+                .blockingFirst();
+        assertThat(changed.getAddedAccessCertificates().isEmpty(), is(true));
+        assertThat(changed.getUpdatedAccessCertificates(), is(Collections.singletonList(changedAccessCertificatePair2)));
+        assertThat(changed.getRemovedAccessCertificateIds(), is(Collections.singleton(accessCertificatePair1.getId())));
+    }
+
+    @Test
+    public void itShouldResetAccessCertificatesAndIdentity() throws Exception {
+        Keys keys = KeysImpl.builder()
+                .publicKey(RandomUtils.nextBytes(18))
+                .privateKey(RandomUtils.nextBytes(18))
+                .build();
+        sut.storeKeys(keys).blockingFirst();
+        sut.storeAccessCertificate(createAccessCertificatePair(RandomUtils.nextBytes(9), 2030)).blockingFirst();
+
+        Boolean resetSuccess = sut.reset().blockingFirst();
+        assertThat(resetSuccess, is(Boolean.TRUE));
+
+        assertThat(sut.findAccessCertificates().toList().blockingGet().isEmpty(), is(true));
+        assertThat(sut.findKeys()
+                .map(Optional::fromNullable)
+                .onErrorReturnItem(Optional.absent())
+                .blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldImportAccessCertificatesOfIdentityStorageOnce() throws Exception {
+        AccessCertificatePair accessCertificatePair1 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        AccessCertificatePair accessCertificatePair2 = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+        identityStorage.storeAccessCertificates(Arrays.asList(accessCertificatePair1, accessCertificatePair2))
+                .blockingFirst();
+
+        List<AccessCertificatePair> found = sut.findAccessCertificates().toList().blockingGet();
+        assertThat(found.size(), is(2));
+        assertThat(found.get(0).getId(), is(accessCertificatePair1.getId()));
+        assertThat(found.get(1).getId(), is(accessCertificatePair2.getId()));
+
+        assertThat(identityStorage.findAccessCertificates().count().blockingGet(), is(0L));
+        assertThat(sut.findAccessCertificates().count().blockingGet(), is(2L));
+    }
+
+    @Test
+    public void itShouldDiscardAccessCertificatesOfIdentityStorageIfDatabaseIsNotEmpty() throws Exception {
+        AccessCertificatePair accessCertificatePair = createAccessCertificatePair(RandomUtils.nextBytes(9), 2030);
+
+        SqliteLocalStorage previous = new SqliteLocalStorage(RuntimeEnvironment.application, "import.db", identityStorage);
+        previous.storeAccessCertificate(accessCertificatePair).blockingFirst();
+        previous.close();
+
+        identityStorage.storeAccessCertificate(createAccessCertificatePair(RandomUtils.nextBytes(9), 2030))
+                .blockingFirst();
+
+        SqliteLocalStorage reopened = new SqliteLocalStorage(RuntimeEnvironment.application, "import.db", identityStorage);
+        List<AccessCertificatePair> found = reopened.findAccessCertificates().toList().blockingGet();
+        reopened.close();
+
+        assertThat(found.size(), is(1));
+        assertThat(found.get(0).getId(), is(accessCertificatePair.getId()));
+        assertThat(identityStorage.findAccessCertificates().count().blockingGet(), is(0L));
+    }
+
+    static AccessCertificatePair createAccessCertificatePair(byte[] gainerSerial, int endYear) {
+        byte[] accessCertBytes = Base64.decode(CachingLocalStorageTest.RANDOM_ACCESS_CERT_BASE64);
+        // the gainer serial is stored in the first 9 bytes, the end date as yy MM dd HH mm at offset 92
+        System.arraycopy(gainerSerial, 0, accessCertBytes, 0, gainerSerial.length);
+        accessCertBytes[92] = (byte) (endYear - 2000);
+
+        HmAccessCertificate hmAccessCertificate = new HmAccessCertificate(
+                new com.highmobility.crypto.AccessCertificate(new Bytes(accessCertBytes)));
+
+        return SimpleAccessCertificatePair.builder()
+                .id(UUID.randomUUID().toString())
+                .deviceAccessCertificate(hmAccessCertificate)
+                .vehicleAccessCertificate(hmAccessCertificate)
+                .build();
+    }
+}
@@ -0,0 +1,214 @@
+package org.amv.access.sdk.hm.certificate;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.highmobility.utils.Base64;
+
+import org.amv.access.sdk.hm.secure.AppendOnlyFileStorage;
+import org.amv.access.sdk.hm.secure.Storage;
+import org.amv.access.sdk.spi.certificate.AccessCertificatePair;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import io.reactivex.Observable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares storing and reading access certificates with different {@link Storage} backends:
+ * <ul>
+ * <li>{@link SimpleMapStorage} as in-memory baseline</li>
+ * <li>a storage mimicking shared preferences by rewriting all values to a file on every commit</li>
+ * <li>{@link AppendOnlyFileStorage}</li>
+ * </ul>
+ * Only run if enabled - see {@link Benchmarks}. The numbers are only meant as a rough indication
+ * as the test does not control for jit compilation, gc pauses or the file system.
+ */
+public class StorageBackendBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void benchmark10() throws Exception {
+        runBenchmark(10);
+    }
+
+    @Test
+    public void benchmark100() throws Exception {
+        runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark500() throws Exception {
+        runBenchmark(500);
+    }
+
+    private void runBenchmark(int certificateCount) throws Exception {
+        List<AccessCertificatePair> accessCertificatePairs = new ArrayList<>(certificateCount);
+        for (int i = 0; i < certificateCount; i++) {
+            accessCertificatePairs.add(AccessCertificatePairCodecTest
+                    .createAccessCertificatePair(UUID.randomUUID().toString()));
+        }
+
+        String baseline = runBenchmark(new SimpleMapStorage(), accessCertificatePairs);
+
+        File rewriteFile = temporaryFolder.newFile();
+        String rewriteOnCommit = runBenchmark(new RewriteOnCommitStorage(rewriteFile), accessCertificatePairs);
+
+        File appendOnlyFile = new File(temporaryFolder.getRoot(), UUID.randomUUID().toString());
+        AppendOnlyFileStorage appendOnlyFileStorage = new AppendOnlyFileStorage(appendOnlyFile);
+        String appendOnly = runBenchmark(appendOnlyFileStorage, accessCertificatePairs);
+        appendOnlyFileStorage.close();
+
+        Benchmarks.report(getClass(), String.format(Locale.US, "access certificates: %d | " +
+                        "in-memory: %s | rewrite on commit: %s (%d bytes) | append-only: %s (%d bytes)",
+                certificateCount,
+                baseline,
+                rewriteOnCommit, rewriteFile.length(),
+                appendOnly, appendOnlyFile.length()));
+    }
+
+    private static String runBenchmark(Storage storage, List<AccessCertificatePair> accessCertificatePairs) {
+        HmLocalStorage localStorage = new HmLocalStorage(new SimpleMapStorage(), storage);
+
+        long storeStart = System.nanoTime();
+        for (AccessCertificatePair accessCertificatePair : accessCertificatePairs) {
+            localStorage.storeAccessCertificate(accessCertificatePair).blockingFirst();
+        }
+        long storeNanos = System.nanoTime() - storeStart;
+
+        long findStart = System.nanoTime();
+        List<AccessCertificatePair> found = localStorage.findAccessCertificates().toList().blockingGet();
+        long findNanos = System.nanoTime() - findStart;
+
+        assertThat(found.size(), is(accessCertificatePairs.size()));
+
+        return String.format(Locale.US, "store %.1f ms, find all %.1f ms",
+                Benchmarks.toMillis(storeNanos), Benchmarks.toMillis(findNanos));
+    }
+
+    /**
+     * Mimics the write behaviour of shared preferences: all values are held in memory and
+     * the complete content is written and synced to a file on every commit.
+     */
+    private static class RewriteOnCommitStorage implements Storage {
+        private final File file;
+        private final SimpleMapStorage delegate = new SimpleMapStorage();
+        private final Map<String, String> content = new LinkedHashMap<>();
+
+        private RewriteOnCommitStorage(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public Observable<Optional<String>> findString(String key) {
+            return delegate.findString(key);
+        }
+
+        @Override
+        public Observable<Boolean> storeString(String key, String value) {
+            return batch().putString(key, value).commit();
+        }
+
+        @Override
+        public Observable<Optional<String>> removeString(String key) {
+            return findString(key)
+                    .flatMap(val -> batch().removeString(key).commit().map(foo -> val));
+        }
+
+        @Override
+        public Observable<Optional<byte[]>> findBytes(String key) {
+            return delegate.findBytes(key);
+        }
+
+        @Override
+        public Observable<Boolean> storeBytes(String key, byte[] value) {
+            return batch().putBytes(key, value).commit();
+        }
+
+        @Override
+        public Observable<Optional<byte[]>> removeBytes(String key) {
+            return findBytes(key)
+                    .flatMap(val -> batch().removeBytes(key).commit().map(foo -> val));
+        }
+
+        @Override
+        public Batch batch() {
+            Batch batch = delegate.batch();
+            Map<String, String> changes = new LinkedHashMap<>();
+
+            return new Batch() {
+                @Override
+                public Batch putString(String key, String value) {
+                    batch.putString(key, value);
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Batch putBytes(String key, byte[] value) {
+                    batch.putBytes(key, value);
+                    changes.put(key, Base64.encode(value));
+                    return this;
+                }
+
+                @Override
+                public Batch removeString(String key) {
+                    batch.removeString(key);
+                    changes.put(key, null);
+                    return this;
+                }
+
+                @Override
+                public Batch removeBytes(String key) {
+                    batch.removeBytes(key);
+                    changes.put(key, null);
+                    return this;
+                }
+
+                @Override
+                public Observable<Boolean> commit() {
+                    return batch.commit()
+                            .doOnNext(foo -> rewrite(changes));
+                }
+            };
+        }
+
+        private synchronized void rewrite(Map<String, String> changes) throws IOException {
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                if (change.getValue() != null) {
+                    content.put(change.getKey(), change.getValue());
+                } else {
+                    content.remove(change.getKey());
+                }
+            }
+
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                for (Map.Entry<String, String> entry : content.entrySet()) {
+                    outputStream.write(entry.getKey().getBytes(Charsets.UTF_8));
+                    outputStream.write(entry.getValue().getBytes(Charsets.UTF_8));
+                }
+                outputStream.getFD().sync();
+            }
+        }
+    }
+}
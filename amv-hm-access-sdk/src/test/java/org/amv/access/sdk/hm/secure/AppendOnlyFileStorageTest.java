@@ -0,0 +1,285 @@
+package org.amv.access.sdk.hm.secure;
+
+import com.google.common.base.Optional;
+
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AppendOnlyFileStorageTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private TestScheduler compactionScheduler;
+    private AppendOnlyFileStorage sut;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = new File(temporaryFolder.getRoot(), "storage.log");
+        this.compactionScheduler = new TestScheduler();
+        this.sut = new AppendOnlyFileStorage(file, 1024, compactionScheduler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.sut.close();
+    }
+
+    @Test
+    public void itShouldStoreAndRemoveValues() throws Exception {
+        byte[] value = RandomUtils.nextBytes(42);
+
+        assertThat(sut.storeString("key", "value").blockingFirst(), is(Boolean.TRUE));
+        assertThat(sut.storeBytes("key", value).blockingFirst(), is(Boolean.TRUE));
+
+        assertThat(sut.findString("key").blockingFirst(), is(Optional.of("value")));
+        assertThat(sut.findBytes("key").blockingFirst().get(), is(value));
+
+        assertThat(sut.removeString("key").blockingFirst(), is(Optional.of("value")));
+        assertThat(sut.findString("key").blockingFirst(), is(Optional.absent()));
+        assertThat(sut.findBytes("key").blockingFirst().get(), is(value));
+        assertThat(sut.removeString("key").blockingFirst(), is(Optional.absent()));
+    }
+
+    @Test
+    public void itShouldReadValuesAfterReopening() throws Exception {
+        byte[] value = RandomUtils.nextBytes(42);
+
+        sut.batch()
+                .putString("key1", "value1")
+                .putString("key2", "value2")
+                .putBytes("key3", value)
+                .removeString("key2")
+                .commit()
+                .blockingFirst();
+        sut.close();
+
+        AppendOnlyFileStorage reopened = new AppendOnlyFileStorage(file);
+
+        assertThat(reopened.findString("key1").blockingFirst(), is(Optional.of("value1")));
+        assertThat(reopened.findString("key2").blockingFirst(), is(Optional.absent()));
+        assertThat(reopened.findBytes("key3").blockingFirst().get(), is(value));
+
+        reopened.close();
+    }
+
+    @Test
+    public void itShouldDiscardIncompleteRecordsAtEndOfFile() throws Exception {
+        sut.storeString("key1", "value1").blockingFirst();
+        long sizeOfCompleteRecords = sut.size();
+        sut.storeString("key2", "value2").blockingFirst();
+        sut.close();
+
+        // simulate an interrupted write of the last record
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+
+        AppendOnlyFileStorage reopened = new AppendOnlyFileStorage(file);
+
+        assertThat(reopened.findString("key1").blockingFirst(), is(Optional.of("value1")));
+        assertThat(reopened.findString("key2").blockingFirst(), is(Optional.absent()));
+        assertThat(reopened.size(), is(sizeOfCompleteRecords));
+
+        reopened.close();
+    }
+
+    @Test
+    public void itShouldCompactInBackground() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            sut.storeString("key", "value" + i).blockingFirst();
+        }
+        sut.storeBytes("bytes", RandomUtils.nextBytes(16)).blockingFirst();
+        long sizeBeforeCompaction = sut.size();
+
+        compactionScheduler.triggerActions();
+
+        long sizeAfterCompaction = sut.size();
+        assertThat(sizeAfterCompaction < sizeBeforeCompaction / 10, is(true));
+        assertThat(sut.findString("key").blockingFirst(), is(Optional.of("value99")));
+
+        sut.close();
+        AppendOnlyFileStorage reopened = new AppendOnlyFileStorage(file);
+        assertThat(reopened.findString("key").blockingFirst(), is(Optional.of("value99")));
+        assertThat(reopened.findBytes("bytes").blockingFirst().isPresent(), is(true));
+        reopened.close();
+    }
+
+    @Test
+    public void itShouldRemoveIncompleteRecordOfFailedWrite() throws Exception {
+        itShouldKeepSubsequentWritesAfterFailedWrite(false);
+    }
+
+    @Test
+    public void itShouldReopenIfIncompleteRecordOfFailedWriteCannotBeRemoved() throws Exception {
+        itShouldKeepSubsequentWritesAfterFailedWrite(true);
+    }
+
+    private void itShouldKeepSubsequentWritesAfterFailedWrite(boolean failTruncate) throws Exception {
+        AtomicBoolean failWrite = new AtomicBoolean();
+        AtomicBoolean failTruncateOnce = new AtomicBoolean(failTruncate);
+        AppendOnlyFileStorage storage = new AppendOnlyFileStorage(file, 1024, compactionScheduler) {
+            @Override
+            FileChannel openChannel(File file) throws IOException {
+                return new FailingFileChannel(super.openChannel(file), failWrite, failTruncateOnce);
+            }
+        };
+
+        storage.storeString("key1", "value1").blockingFirst();
+
+        failWrite.set(true);
+        Boolean failedWriteSuccess = storage.storeString("key2", "value2")
+                .onErrorReturnItem(false)
+                .blockingFirst();
+        failWrite.set(false);
+
+        storage.storeString("key3", "value3").blockingFirst();
+        storage.close();
+
+        AppendOnlyFileStorage reopened = new AppendOnlyFileStorage(file);
+
+        assertThat(failedWriteSuccess, is(Boolean.FALSE));
+        assertThat(failTruncateOnce.get(), is(false));
+        assertThat(reopened.findString("key1").blockingFirst(), is(Optional.of("value1")));
+        assertThat(reopened.findString("key2").blockingFirst(), is(Optional.absent()));
+        assertThat(reopened.findString("key3").blockingFirst(), is(Optional.of("value3")));
+
+        reopened.close();
+    }
+
+    /**
+     * Writes only half of a buffer before failing and optionally fails to truncate once.
+     */
+    private static final class FailingFileChannel extends FileChannel {
+        private final FileChannel delegate;
+        private final AtomicBoolean failWrite;
+        private final AtomicBoolean failTruncateOnce;
+
+        private FailingFileChannel(FileChannel delegate, AtomicBoolean failWrite, AtomicBoolean failTruncateOnce) {
+            this.delegate = delegate;
+            this.failWrite = failWrite;
+            this.failTruncateOnce = failTruncateOnce;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            if (!failWrite.get()) {
+                return delegate.write(src, position);
+            }
+            if (src.remaining() < 2) {
+                throw new IOException("No space left on device");
+            }
+            ByteBuffer half = src.duplicate();
+            half.limit(half.position() + half.remaining() / 2);
+            int written = delegate.write(half, position);
+            src.position(src.position() + written);
+            return written;
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncateOnce.compareAndSet(true, false)) {
+                throw new IOException("Input/output error");
+            }
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
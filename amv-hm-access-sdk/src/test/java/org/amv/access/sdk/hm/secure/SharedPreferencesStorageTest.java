@@ -0,0 +1,214 @@
+package org.amv.access.sdk.hm.secure;
+
+import android.content.SharedPreferences;
+
+import com.google.common.base.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.TestScheduler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SharedPreferencesStorageTest {
+
+    private SharedPreferences sharedPreferencesMock;
+    private SharedPreferences.Editor editorMock;
+
+    @Before
+    public void setUp() {
+        this.sharedPreferencesMock = mock(SharedPreferences.class);
+        this.editorMock = mock(SharedPreferences.Editor.class, RETURNS_SELF);
+
+        doReturn(editorMock).when(sharedPreferencesMock).edit();
+        doReturn(true).when(editorMock).commit();
+    }
+
+    @Test
+    public void itShouldCommitEveryWriteByDefault() throws Exception {
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock);
+
+        sut.storeString("key1", "value1").blockingFirst();
+        sut.storeString("key2", "value2").blockingFirst();
+        sut.removeString("key1").blockingFirst();
+
+        verify(editorMock, times(3)).commit();
+        verify(editorMock, never()).apply();
+    }
+
+    @Test
+    public void itShouldNotBlockReadsWhileCommitting() throws Exception {
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicReference<Optional<String>> readWhileCommitting = new AtomicReference<>();
+        doAnswer(invocation -> {
+            readWhileCommitting.set(executor.submit(() -> sut.findString("key1").blockingFirst())
+                    .get(1, TimeUnit.SECONDS));
+            return true;
+        }).when(editorMock).commit();
+
+        Boolean success = sut.storeString("key1", "value1").blockingFirst();
+        executor.shutdown();
+
+        assertThat(success, is(Boolean.TRUE));
+        assertThat(readWhileCommitting.get(), is(Optional.of("value1")));
+        assertThat(sut.getPendingWriteCount(), is(0));
+    }
+
+    @Test
+    public void itShouldCoalesceWritesWithinDelay() throws Exception {
+        TestScheduler testScheduler = new TestScheduler();
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock,
+                100, TimeUnit.MILLISECONDS, testScheduler);
+
+        sut.storeString("key1", "value1").blockingFirst();
+        sut.storeString("key2", "value2").blockingFirst();
+        sut.removeString("key1").blockingFirst();
+
+        assertThat(sut.getPendingWriteCount(), is(2));
+        assertThat(sut.findString("key1").blockingFirst(), is(Optional.absent()));
+        assertThat(sut.findString("key2").blockingFirst(), is(Optional.of("value2")));
+        verify(sharedPreferencesMock, never()).edit();
+
+        testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertThat(sut.getPendingWriteCount(), is(0));
+        verify(sharedPreferencesMock, times(1)).edit();
+        verify(editorMock).putString("key2", "value2");
+        verify(editorMock).remove("key1");
+        verify(editorMock, times(1)).apply();
+        verify(editorMock, never()).commit();
+    }
+
+    @Test
+    public void itShouldCommitPendingWritesOnFlush() throws Exception {
+        TestScheduler testScheduler = new TestScheduler();
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock,
+                1, TimeUnit.MINUTES, testScheduler);
+
+        sut.storeString("key1", "value1").blockingFirst();
+        sut.storeString("key2", "value2").blockingFirst();
+
+        Boolean flushSuccess = sut.flush().blockingFirst();
+        assertThat(flushSuccess, is(Boolean.TRUE));
+
+        testScheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+
+        verify(sharedPreferencesMock, times(1)).edit();
+        verify(editorMock, times(1)).commit();
+        verify(editorMock, never()).apply();
+    }
+
+    @Test
+    public void itShouldRescheduleLostWritesAndCommitThemIfSchedulingFails() throws Exception {
+        AtomicLong now = new AtomicLong();
+        Scheduler schedulerMock = mock(Scheduler.class);
+        doAnswer(invocation -> now.get()).when(schedulerMock).now(TimeUnit.MILLISECONDS);
+        // the first task is never run, scheduling the second one is rejected
+        doReturn(Disposables.empty(), Disposables.disposed())
+                .when(schedulerMock).scheduleDirect(any(), anyLong(), any());
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock,
+                1, TimeUnit.MINUTES, schedulerMock);
+
+        sut.storeString("key1", "value1").blockingFirst();
+        now.set(TimeUnit.MINUTES.toMillis(1));
+        sut.storeString("key2", "value2").blockingFirst();
+
+        assertThat(sut.getPendingWriteCount(), is(2));
+        verify(schedulerMock, times(1)).scheduleDirect(any(), anyLong(), any());
+
+        now.set(TimeUnit.MINUTES.toMillis(3));
+        Boolean success = sut.storeString("key3", "value3").blockingFirst();
+
+        assertThat(success, is(Boolean.TRUE));
+        assertThat(sut.getPendingWriteCount(), is(0));
+        verify(schedulerMock, times(2)).scheduleDirect(any(), anyLong(), any());
+        verify(editorMock).putString("key1", "value1");
+        verify(editorMock).putString("key2", "value2");
+        verify(editorMock).putString("key3", "value3");
+        verify(editorMock, times(1)).commit();
+    }
+
+    @Test
+    public void itShouldCommitWritesInsideBatchTogether() throws Exception {
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock);
+
+        Boolean success = sut.inBatch(Observable.concat(
+                sut.storeString("key1", "value1"),
+                sut.storeString("key2", "value2"),
+                sut.removeString("key3").map(foo -> true))
+                .reduce(true, (s1, s2) -> s1 && s2)
+                .toObservable())
+                .blockingFirst();
+
+        assertThat(success, is(Boolean.TRUE));
+        assertThat(sut.getPendingWriteCount(), is(0));
+        verify(sharedPreferencesMock, times(1)).edit();
+        verify(editorMock, times(1)).commit();
+    }
+
+    @Test
+    public void itShouldWriteBatchWithSingleCommit() throws Exception {
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock);
+
+        Boolean success = sut.batch()
+                .putString("key1", "value1")
+                .putString("key2", "value2")
+                .removeString("key3")
+                .putString("key1", "value1-updated")
+                .commit()
+                .blockingFirst();
+
+        assertThat(success, is(Boolean.TRUE));
+        verify(sharedPreferencesMock, times(1)).edit();
+        verify(editorMock).putString("key1", "value1-updated");
+        verify(editorMock).putString("key2", "value2");
+        verify(editorMock).remove("key3");
+        verify(editorMock, never()).putString("key1", "value1");
+        verify(editorMock, times(1)).commit();
+    }
+
+    @Test
+    public void itShouldCommitBatchRightAwayDespiteWriteDelay() throws Exception {
+        TestScheduler testScheduler = new TestScheduler();
+        SharedPreferencesStorage sut = new SharedPreferencesStorage(sharedPreferencesMock,
+                1, TimeUnit.MINUTES, testScheduler);
+
+        sut.storeString("key1", "value1").blockingFirst();
+
+        Boolean success = sut.batch()
+                .putString("key2", "value2")
+                .commit()
+                .blockingFirst();
+
+        assertThat(success, is(Boolean.TRUE));
+        assertThat(sut.getPendingWriteCount(), is(0));
+        verify(sharedPreferencesMock, times(1)).edit();
+        verify(editorMock).putString("key1", "value1");
+        verify(editorMock).putString("key2", "value2");
+        verify(editorMock, times(1)).commit();
+
+        testScheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+        verify(editorMock, never()).apply();
+    }
+}
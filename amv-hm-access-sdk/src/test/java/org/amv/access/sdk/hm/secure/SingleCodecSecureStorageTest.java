@@ -0,0 +1,115 @@
+package org.amv.access.sdk.hm.secure;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.amv.access.sdk.hm.AccessSdkSchedulers;
+import org.amv.access.sdk.hm.certificate.SimpleMapStorage;
+import org.apache.commons.lang3.RandomUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SingleCodecSecureStorageTest {
+
+    private ExecutorService executorService;
+    private AccessSdkSchedulers schedulers;
+    private ThreadRecordingCodec codec;
+    private SingleCodecSecureStorage sut;
+
+    @Before
+    public void setUp() {
+        // storage and crypto share one thread: waiting for another pool would deadlock
+        this.executorService = Executors.newFixedThreadPool(1, new ThreadFactoryBuilder()
+                .setNameFormat("storage-test-%d")
+                .build());
+        this.schedulers = AccessSdkSchedulers.builder()
+                .storageExecutor(executorService)
+                .storageWriteScheduler(Schedulers.from(executorService))
+                .cryptoExecutor(executorService)
+                .build();
+        this.codec = new ThreadRecordingCodec(new PlaintextCodec());
+        this.sut = new SingleCodecSecureStorage(new SimpleMapStorage(), codec);
+    }
+
+    @After
+    public void tearDown() {
+        this.schedulers.shutdown();
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void itShouldRunCodecOnStorageThread() throws Exception {
+        byte[] value = RandomUtils.nextBytes(42);
+
+        Observable.just(1)
+                .subscribeOn(schedulers.storageWriteScheduler())
+                .flatMap(foo -> sut.storeString("key1", "value1"))
+                .flatMap(foo -> sut.batch()
+                        .putBytes("key2", value)
+                        .commit())
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingFirst();
+
+        assertThat(Observable.just(1)
+                .subscribeOn(schedulers.storageScheduler())
+                .flatMap(foo -> sut.findString("key1"))
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingFirst(), is(Optional.of("value1")));
+        assertThat(Observable.just(1)
+                .subscribeOn(schedulers.storageScheduler())
+                .flatMap(foo -> sut.findBytes("key2"))
+                .timeout(5, TimeUnit.SECONDS)
+                .blockingFirst().get(), is(value));
+
+        assertThat(codec.threadNames.size(), is(4));
+        for (String threadName : codec.threadNames) {
+            assertThat(threadName.startsWith("storage-test-"), is(true));
+        }
+    }
+
+    private static class ThreadRecordingCodec implements Codec {
+        private final Codec delegate;
+        private final List<String> threadNames = new CopyOnWriteArrayList<>();
+
+        private ThreadRecordingCodec(Codec delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String encryptData(String key, String unencryptedData) {
+            threadNames.add(Thread.currentThread().getName());
+            return delegate.encryptData(key, unencryptedData);
+        }
+
+        @Override
+        public String decryptData(String key, String encryptedData) {
+            threadNames.add(Thread.currentThread().getName());
+            return delegate.decryptData(key, encryptedData);
+        }
+
+        @Override
+        public byte[] encryptBytes(String key, byte[] unencryptedData) {
+            threadNames.add(Thread.currentThread().getName());
+            return delegate.encryptBytes(key, unencryptedData);
+        }
+
+        @Override
+        public byte[] decryptBytes(String key, byte[] encryptedData) {
+            threadNames.add(Thread.currentThread().getName());
+            return delegate.decryptBytes(key, encryptedData);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.amv.access.sdk.hm.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SingleFlightTest {
+
+    private PublishSubject<Integer> upstream;
+    private AtomicInteger subscriptions;
+    private SingleFlight<String, Integer> sut;
+
+    @Before
+    public void setUp() {
+        this.upstream = PublishSubject.create();
+        this.subscriptions = new AtomicInteger();
+        this.sut = new SingleFlight<>();
+    }
+
+    @Test
+    public void itShouldShareOperationInFlight() throws Exception {
+        TestObserver<Integer> first = sut.execute("key", this::operation).test();
+        upstream.onNext(1);
+        TestObserver<Integer> second = sut.execute("key", this::operation).test();
+        upstream.onNext(2);
+        upstream.onComplete();
+
+        assertThat(subscriptions.get(), is(1));
+        first.assertResult(1, 2);
+        second.assertResult(1, 2);
+    }
+
+    @Test
+    public void itShouldShareErrors() throws Exception {
+        TestObserver<Integer> first = sut.execute("key", this::operation).test();
+        TestObserver<Integer> second = sut.execute("key", this::operation).test();
+        upstream.onError(new IllegalStateException());
+
+        assertThat(subscriptions.get(), is(1));
+        first.assertError(IllegalStateException.class);
+        second.assertError(IllegalStateException.class);
+    }
+
+    @Test
+    public void itShouldNotShareOperationsWithDifferentKeys() throws Exception {
+        sut.execute("key1", this::operation).test();
+        sut.execute("key2", this::operation).test();
+
+        assertThat(subscriptions.get(), is(2));
+    }
+
+    @Test
+    public void itShouldStartOperationAgainAfterItTerminated() throws Exception {
+        sut.execute("key", () -> Observable.just(1).doOnSubscribe(foo -> subscriptions.incrementAndGet()))
+                .test()
+                .assertResult(1);
+        sut.execute("key", () -> Observable.just(2).doOnSubscribe(foo -> subscriptions.incrementAndGet()))
+                .test()
+                .assertResult(2);
+
+        assertThat(subscriptions.get(), is(2));
+    }
+
+    @Test
+    public void itShouldStartOperationAgainAfterAllSubscribersDisposed() throws Exception {
+        sut.execute("key", this::operation).test().dispose();
+        TestObserver<Integer> observer = sut.execute("key", this::operation).test();
+        upstream.onNext(1);
+
+        assertThat(subscriptions.get(), is(2));
+        observer.assertValue(1);
+    }
+
+    private Observable<Integer> operation() {
+        return upstream.doOnSubscribe(foo -> subscriptions.incrementAndGet());
+    }
+}
@@ -77,9 +77,9 @@ public class BluetoothController implements IBluetoothController {
 
         this.accessCertificatePair = this.accessSdk
                 .certificateManager()
-                .getAccessCertificates()
-                .filter(pair -> accessCertificateId.equals(pair.getId()))
-                .blockingFirst();
+                .getAccessCertificateById(accessCertificateId)
+                .blockingFirst()
+                .get();
 
         view.setVehicleSerial(this.accessCertificatePair
                 .getDeviceAccessCertificate()